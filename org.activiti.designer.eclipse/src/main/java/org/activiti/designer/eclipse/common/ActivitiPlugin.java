@@ -15,6 +15,7 @@ package org.activiti.designer.eclipse.common;
 
 import java.net.URL;
 
+import org.activiti.designer.eclipse.util.ExtensionPointUtil;
 import org.activiti.designer.eclipse.util.PaletteExtensionUtil;
 import org.eclipse.core.resources.IWorkspace;
 import org.eclipse.core.resources.ResourcesPlugin;
@@ -87,6 +88,9 @@ public class ActivitiPlugin extends AbstractUIPlugin {
     // Allow the image cache to destroy itself so image references are cleaned
     // up
     imageCache.dispose();
+
+    // Release the shared extension point contributions
+    ExtensionPointUtil.shutdown();
   }
 
   // ======================== static access methods ==========================
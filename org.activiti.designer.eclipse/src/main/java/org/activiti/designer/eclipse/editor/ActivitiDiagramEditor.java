@@ -14,24 +14,19 @@
 package org.activiti.designer.eclipse.editor;
 
 import java.awt.Point;
-import java.io.ByteArrayOutputStream;
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.lang.reflect.Field;
-import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
-import javax.xml.stream.XMLInputFactory;
-import javax.xml.stream.XMLStreamReader;
-
-import org.activiti.bpmn.BpmnAutoLayout;
 import org.activiti.bpmn.converter.BpmnXMLConverter;
+import org.activiti.bpmn.model.Activity;
 import org.activiti.bpmn.model.Artifact;
 import org.activiti.bpmn.model.Association;
 import org.activiti.bpmn.model.BaseElement;
@@ -39,8 +34,6 @@ import org.activiti.bpmn.model.BoundaryEvent;
 import org.activiti.bpmn.model.BpmnModel;
 import org.activiti.bpmn.model.CustomProperty;
 import org.activiti.bpmn.model.DataObject;
-import org.activiti.bpmn.model.ExtensionAttribute;
-import org.activiti.bpmn.model.ExtensionElement;
 import org.activiti.bpmn.model.FieldExtension;
 import org.activiti.bpmn.model.FlowElement;
 import org.activiti.bpmn.model.FlowElementsContainer;
@@ -53,68 +46,64 @@ import org.activiti.bpmn.model.SequenceFlow;
 import org.activiti.bpmn.model.ServiceTask;
 import org.activiti.bpmn.model.SubProcess;
 import org.activiti.bpmn.model.UserTask;
+import org.activiti.designer.eclipse.Logger;
 import org.activiti.designer.eclipse.common.ActivitiPlugin;
 import org.activiti.designer.eclipse.extension.export.ExportMarshaller;
-import org.activiti.designer.eclipse.ui.ExportMarshallerRunnable;
+import org.activiti.designer.eclipse.ui.ExportMarshallerJob;
 import org.activiti.designer.eclipse.util.ExtensionPointUtil;
 import org.activiti.designer.eclipse.util.FileService;
-import org.activiti.designer.integration.annotation.Property;
 import org.activiti.designer.integration.servicetask.CustomServiceTask;
 import org.activiti.designer.integration.usertask.CustomUserTask;
-import org.activiti.designer.util.bpmn.BpmnExtensions;
 import org.activiti.designer.util.eclipse.ActivitiUiUtil;
 import org.activiti.designer.util.editor.BpmnMemoryModel;
 import org.activiti.designer.util.editor.ModelHandler;
 import org.activiti.designer.util.extension.ExtensionUtil;
 import org.activiti.designer.util.preferences.Preferences;
 import org.activiti.designer.util.preferences.PreferencesUtil;
-import org.activiti.image.ProcessDiagramGenerator;
-import org.activiti.image.impl.DefaultProcessDiagramGenerator;
-import org.apache.commons.io.IOUtils;
+import org.activiti.designer.util.workspace.SaveOutputTracker;
 import org.apache.commons.lang.StringUtils;
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IFolder;
+import org.eclipse.core.resources.IProject;
 import org.eclipse.core.resources.IResource;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IPath;
 import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.draw2d.FigureCanvas;
 import org.eclipse.draw2d.IFigure;
-import org.eclipse.draw2d.SWTGraphics;
+import org.eclipse.draw2d.Viewport;
 import org.eclipse.draw2d.geometry.Rectangle;
 import org.eclipse.emf.common.command.BasicCommandStack;
-import org.eclipse.emf.common.util.EList;
 import org.eclipse.emf.ecore.util.EcoreUtil;
-import org.eclipse.emf.transaction.RecordingCommand;
+import org.eclipse.emf.transaction.RollbackException;
+import org.eclipse.emf.transaction.Transaction;
 import org.eclipse.emf.transaction.TransactionalEditingDomain;
+import org.eclipse.emf.transaction.impl.InternalTransactionalEditingDomain;
 import org.eclipse.gef.GraphicalViewer;
 import org.eclipse.gef.LayerConstants;
 import org.eclipse.gef.editparts.LayerManager;
 import org.eclipse.gef.editparts.ScalableFreeformRootEditPart;
+import org.eclipse.gef.ui.palette.PaletteViewer;
 import org.eclipse.graphiti.features.IAddFeature;
 import org.eclipse.graphiti.features.IFeatureProvider;
 import org.eclipse.graphiti.features.context.impl.AddConnectionContext;
 import org.eclipse.graphiti.features.context.impl.AddContext;
 import org.eclipse.graphiti.features.context.impl.AreaContext;
 import org.eclipse.graphiti.mm.pictograms.Anchor;
-import org.eclipse.graphiti.mm.pictograms.ChopboxAnchor;
 import org.eclipse.graphiti.mm.pictograms.ContainerShape;
 import org.eclipse.graphiti.mm.pictograms.Diagram;
 import org.eclipse.graphiti.mm.pictograms.PictogramElement;
+import org.eclipse.graphiti.ui.editor.DiagramBehavior;
 import org.eclipse.graphiti.ui.editor.DiagramEditor;
 import org.eclipse.graphiti.ui.editor.DiagramEditorInput;
 import org.eclipse.swt.SWT;
 import org.eclipse.swt.graphics.GC;
-import org.eclipse.swt.graphics.Image;
-import org.eclipse.swt.graphics.ImageData;
-import org.eclipse.swt.graphics.ImageLoader;
 import org.eclipse.swt.widgets.Composite;
 import org.eclipse.swt.widgets.Display;
 import org.eclipse.swt.widgets.MessageBox;
 import org.eclipse.ui.IEditorInput;
 import org.eclipse.ui.IEditorSite;
 import org.eclipse.ui.PartInitException;
-import org.eclipse.ui.PlatformUI;
-import org.eclipse.ui.progress.IProgressService;
 
 public class ActivitiDiagramEditor extends DiagramEditor {
 
@@ -122,10 +111,37 @@ public class ActivitiDiagramEditor extends DiagramEditor {
 
   private TransactionalEditingDomain transactionalEditingDomain;
 
+  private DiagramImportJob importJob;
+
+  private final DiagramChangeTracker changeTracker = new DiagramChangeTracker();
+
+  private GraphitiToBpmnDI graphitiToBpmnDI;
+
+  private final DiagramImageJob imageJob = new DiagramImageJob();
+
+  private boolean disposed;
+
+  // custom task ID -> custom task, only while importing
+  private Map<String, CustomServiceTask> customServiceTasks;
+  private Map<String, CustomUserTask> customUserTasks;
+
+  // lookups for the model while shapes are being created for it, only while importing or while
+  // creating deferred shapes
+  private DiagramElementIndex elementIndex;
+
+  // the elements whose shapes are only created once they come into view, in large diagrams
+  private DeferredShapes deferredShapes;
+  private boolean materializeScheduled;
+
   public ActivitiDiagramEditor() {
     super();
   }
 
+  @Override
+  protected DiagramBehavior createDiagramBehavior() {
+    return new ActivitiDiagramBehavior(this);
+  }
+
   @Override
   public TransactionalEditingDomain getEditingDomain() {
     TransactionalEditingDomain ted = super.getEditingDomain();
@@ -175,6 +191,11 @@ public class ActivitiDiagramEditor extends DiagramEditor {
 
   @Override
   public void doSave(IProgressMonitor monitor) {
+    if (importJob != null && !importJob.completeImport()) {
+      // the data file is still being parsed, so there is nothing to save yet
+      return;
+    }
+
     super.doSave(monitor);
 
     final ActivitiDiagramEditorInput adei = (ActivitiDiagramEditorInput) getEditorInput();
@@ -184,18 +205,21 @@ public class ActivitiDiagramEditor extends DiagramEditor {
       final String diagramFileString = dataFile.getLocationURI().getPath();
       BpmnMemoryModel model = ModelHandler.getModel(EcoreUtil.getURI(getDiagramTypeProvider().getDiagram()));
 
+      final SaveOutputTracker saveOutput = new SaveOutputTracker();
+
       // Save the bpmn diagram file
-      doSaveToBpmn(model, diagramFileString);
+      final byte[] xmlBytes = doSaveToBpmn(model, diagramFileString);
+      saveOutput.fileWritten(new File(diagramFileString));
 
       // Save an image of the diagram
-      doSaveImage(diagramFileString, model);
+      saveOutput.fileWritten(doSaveImage(dataFile, xmlBytes, model));
 
-      // Refresh the resources in the workspace before invoking export
+      // Refresh the written files in the workspace before invoking export
       // marshallers, as they may need access to resources
-      dataFile.getProject().refreshLocal(IResource.DEPTH_INFINITE, null);
+      saveOutput.refresh(null);
 
       // Invoke export marshallers to produce additional output
-      doInvokeExportMarshallers(model);
+      doInvokeExportMarshallers(model, xmlBytes);
 
     } catch (Exception e) {
       // TODO Auto-generated catch block
@@ -206,20 +230,27 @@ public class ActivitiDiagramEditor extends DiagramEditor {
     updateDirtyState();
   }
 
-  protected void doSaveToBpmn(final BpmnMemoryModel model, final String diagramFileString) throws Exception {
+  protected byte[] doSaveToBpmn(final BpmnMemoryModel model, final String diagramFileString) throws Exception {
 
-    // add sequence flow bend-points to the model
-    final IFeatureProvider featureProvider = getDiagramTypeProvider().getFeatureProvider();
-    new GraphitiToBpmnDI(model, featureProvider).processGraphitiElements();
+    // add sequence flow bend-points to the model, only recalculating the
+    // elements that changed since the last save if possible
+    if (graphitiToBpmnDI == null) {
+      final IFeatureProvider featureProvider = getDiagramTypeProvider().getFeatureProvider();
+      graphitiToBpmnDI = new GraphitiToBpmnDI(model, featureProvider);
+    }
+    graphitiToBpmnDI.setDeferredShapes(deferredShapes);
+
+    final Set<PictogramElement> changedElements = changeTracker.takeChangedElements();
+    if (changedElements == null || graphitiToBpmnDI.processChangedElements(changedElements) == false) {
+      graphitiToBpmnDI.processGraphitiElements();
+    }
 
     BpmnXMLConverter converter = new BpmnXMLConverter();
     byte[] xmlBytes = converter.convertToXML(model.getBpmnModel());
 
     File objectsFile = new File(diagramFileString);
     try {
-      FileOutputStream fos = new FileOutputStream(objectsFile);
-      fos.write(xmlBytes);
-      fos.close();
+      FileService.writeFileAtomically(objectsFile, xmlBytes);
     } catch (Exception e) {
       MessageBox messageBox = new MessageBox(Display.getCurrent().getActiveShell(), SWT.ICON_WARNING | SWT.OK);
       messageBox.setText("Warning");
@@ -227,157 +258,89 @@ public class ActivitiDiagramEditor extends DiagramEditor {
       messageBox.open();
     }
 
+    return xmlBytes;
   }
 
-  private void doSaveImage(final String diagramFileString, BpmnMemoryModel model) {
+  /**
+   * @return the image file that was written or null if the image is not saved, or saved in the
+   *         background
+   */
+  private File doSaveImage(final IFile dataFile, final byte[] xmlBytes, final BpmnMemoryModel model) {
     boolean saveImage = PreferencesUtil.getBooleanPreference(Preferences.SAVE_IMAGE, ActivitiPlugin.getDefault());
     if (saveImage) {
       List<String> languages = PreferencesUtil.getStringArray(Preferences.ACTIVITI_LANGUAGES, ActivitiPlugin.getDefault());
       if (languages != null && languages.size() > 0) {
-        
-        for (String language : languages) {
-          for (Process process : model.getBpmnModel().getProcesses()) {
-            fillContainerWithLanguage(process, language);
-          }
-          
-          ProcessDiagramGenerator processDiagramGenerator = new DefaultProcessDiagramGenerator();
-          InputStream imageStream = processDiagramGenerator.generatePngDiagram(model.getBpmnModel());
-          
-          if (imageStream != null) {
-            String imageFileName = null;
-            if (diagramFileString.endsWith(".bpmn20.xml")) {
-              imageFileName = diagramFileString.substring(0, diagramFileString.length() - 11) + 
-                  "_" + language + ".png";
-            } else {
-              imageFileName = diagramFileString.substring(0, diagramFileString.lastIndexOf(".")) + 
-                  "_" + language + ".png";
-            }
-            File imageFile = new File(imageFileName);
-            FileOutputStream outStream = null;
-            ByteArrayOutputStream baos = null;
-            try {
-              outStream = new FileOutputStream(imageFile);
-              baos = new ByteArrayOutputStream();
-              IOUtils.copy(imageStream, baos);
-              baos.writeTo(outStream);
-              
-            } catch (Exception e) {
-              e.printStackTrace();
-            } finally {
-              if (outStream != null) {
-                IOUtils.closeQuietly(outStream);
-              }
-              if (baos != null) {
-                IOUtils.closeQuietly(baos);
-              }
-            }
-          }
-        }
- 
+        // the language images are rendered from the saved XML, so they don't hold up the save
+        imageJob.schedule(dataFile, xmlBytes, languages);
+
       } else {
-        marshallImage(model, diagramFileString);
-      }
-    }
-  }
-  
-  protected void fillContainerWithLanguage(FlowElementsContainer container, String language) {
-    for (FlowElement flowElement : container.getFlowElements()) {
-      
-      List<ExtensionElement> languageElements = flowElement.getExtensionElements().get(BpmnExtensions.LANGUAGE_EXTENSION);
-      
-      if (languageElements != null && languageElements.size() > 0) {
-        for (ExtensionElement extensionElement : languageElements) {
-          List<ExtensionAttribute> languageAttributes = extensionElement.getAttributes().get("language");
-          if (languageAttributes != null && languageAttributes.size() == 1) {
-            String languageValue = languageAttributes.get(0).getValue();
-            if (language.equals(languageValue)) {
-              flowElement.setName(extensionElement.getElementText());
-            }
-          }
-        }
-      }
-      
-      if (flowElement instanceof SubProcess) {
-        fillContainerWithLanguage((SubProcess) flowElement, language);
+        return marshallImage(model, dataFile.getLocationURI().getPath());
       }
     }
+    return null;
   }
 
-  private void marshallImage(BpmnMemoryModel model, String modelFileName) {
+  private File marshallImage(BpmnMemoryModel model, String modelFileName) {
     try {
+      // the image is painted from the figures, so all shapes have to exist
+      materializeAllShapes();
+
       final GraphicalViewer graphicalViewer = (GraphicalViewer) ((DiagramEditor) model.getFeatureProvider().getDiagramTypeProvider().getDiagramEditor())
               .getAdapter(GraphicalViewer.class);
 
       if (graphicalViewer == null || graphicalViewer.getEditPartRegistry() == null) {
-        return;
+        return null;
       }
       final ScalableFreeformRootEditPart rootEditPart = (ScalableFreeformRootEditPart) graphicalViewer.getEditPartRegistry().get(LayerManager.ID);
       final IFigure rootFigure = ((LayerManager) rootEditPart).getLayer(LayerConstants.PRINTABLE_LAYERS);
       final IFigure gridFigure = ((LayerManager) rootEditPart).getLayer(LayerConstants.GRID_LAYER);
-      final Rectangle rootFigureBounds = rootFigure.getBounds();
 
       final boolean toggleRequired = gridFigure.isShowing();
 
-      final Display display = Display.getDefault();
-
-      final Image img = new Image(display, rootFigureBounds.width, rootFigureBounds.height);
-      final GC imageGC = new GC(img);
-
-      // Add overlay
-      addOverlay(imageGC, modelFileName, model);
-
-      final SWTGraphics grap = new SWTGraphics(imageGC);
-
-      // Access UI thread from runnable to print the canvas to the image
-      display.syncExec(new Runnable() {
-
-        @Override
-        public void run() {
-          if (toggleRequired) {
-            // Disable any grids temporarily
-            gridFigure.setVisible(false);
-          }
-          // Deselect any selections
-          graphicalViewer.deselectAll();
-          rootFigure.paint(grap);
-        }
-      });
-
-      ImageLoader imgLoader = new ImageLoader();
-      imgLoader.data = new ImageData[] { img.getImageData() };
-
-      ByteArrayOutputStream baos = new ByteArrayOutputStream(imgLoader.data.length);
-
-      imgLoader.save(baos, SWT.IMAGE_PNG);
-
-      imageGC.dispose();
-      img.dispose();
-
-      // Access UI thread from runnable
-      display.syncExec(new Runnable() {
-
-        @Override
-        public void run() {
-          if (toggleRequired) {
-            // Re-enable any grids
-            gridFigure.setVisible(true);
-          }
-        }
-      });
-
       String imageFileName = null;
       if (modelFileName.endsWith(".bpmn20.xml")) {
         imageFileName = modelFileName.substring(0, modelFileName.length() - 11) + ".png";
       } else {
         imageFileName = modelFileName.substring(0, modelFileName.lastIndexOf(".")) + ".png";
       }
-      File imageFile = new File(imageFileName);
-      FileOutputStream outStream = new FileOutputStream(imageFile);
-      baos.writeTo(outStream);
+
+      // paint the image in tiles, so huge diagrams don't need a single huge image
+      final TiledImageRenderer renderer = new TiledImageRenderer(rootFigure, getMaxImageSize());
+      if (PreferencesUtil.getBooleanPreference(Preferences.SAVE_IMAGE_ADD_OVERLAY, ActivitiPlugin.getDefault())) {
+        renderer.setOverlay(modelFileName, model);
+      }
+
+      if (toggleRequired) {
+        // Disable any grids temporarily
+        gridFigure.setVisible(false);
+      }
+      // Deselect any selections
+      graphicalViewer.deselectAll();
+
+      final File imageFile = new File(imageFileName);
+      try {
+        renderer.render(imageFile);
+      } finally {
+        if (toggleRequired) {
+          // Re-enable any grids
+          gridFigure.setVisible(true);
+        }
+      }
+      return imageFile;
 
     } catch (Exception e) {
       e.printStackTrace();
     }
+    return null;
+  }
+
+  private int getMaxImageSize() {
+    final String maxSize = PreferencesUtil.getStringPreference(Preferences.SAVE_IMAGE_MAX_SIZE, ActivitiPlugin.getDefault());
+    try {
+      return StringUtils.isNotEmpty(maxSize) ? Integer.parseInt(maxSize.trim()) : 0;
+    } catch (NumberFormatException e) {
+      return 0;
+    }
   }
 
   public void addOverlay(final GC imageGC, String modelFileName, BpmnMemoryModel model) {
@@ -387,11 +350,10 @@ public class ActivitiDiagramEditor extends DiagramEditor {
     }
   }
 
-  private void doInvokeExportMarshallers(final BpmnMemoryModel model) throws InvocationTargetException, InterruptedException {
+  private void doInvokeExportMarshallers(final BpmnMemoryModel model, final byte[] xmlBytes) {
+    // the marshallers run in the background against the saved XML, so they don't hold up the save
     final Collection<ExportMarshaller> marshallers = ExtensionPointUtil.getExportMarshallers();
-    final ExportMarshallerRunnable runnable = new ExportMarshallerRunnable(model, marshallers);
-    final IProgressService progressService = PlatformUI.getWorkbench().getProgressService();
-    progressService.busyCursorWhile(runnable);
+    ExportMarshallerJob.scheduleEnabled(model, xmlBytes, marshallers);
   }
 
   @Override
@@ -411,11 +373,18 @@ public class ActivitiDiagramEditor extends DiagramEditor {
     final ActivitiDiagramEditorInput adei = (ActivitiDiagramEditorInput) input;
     final IFile dataFile = adei.getDataFile();
 
+    String filePath = dataFile.getLocationURI().getPath();
+    File bpmnFile = new File(filePath);
+
     final BpmnMemoryModel model = new BpmnMemoryModel(getDiagramTypeProvider().getFeatureProvider(), dataFile);
+    if (bpmnFile.exists()) {
+      // readers must not see the empty model that is used until the import is finished
+      BpmnModelCache.importStarted(model);
+    }
     ModelHandler.addModel(EcoreUtil.getURI(getDiagramTypeProvider().getDiagram()), model);
 
-    String filePath = dataFile.getLocationURI().getPath();
-    File bpmnFile = new File(filePath);
+    getEditingDomain().addResourceSetListener(changeTracker);
+
     try {
       if (bpmnFile.exists() == false) {
         model.setBpmnModel(new BpmnModel());
@@ -423,122 +392,466 @@ public class ActivitiDiagramEditor extends DiagramEditor {
         bpmnFile.createNewFile();
         dataFile.refreshLocal(IResource.DEPTH_INFINITE, null);
       } else {
-        FileInputStream fileStream = new FileInputStream(bpmnFile);
-        XMLInputFactory xif = XMLInputFactory.newInstance();
-        InputStreamReader in = new InputStreamReader(fileStream, "UTF-8");
-        XMLStreamReader xtr = xif.createXMLStreamReader(in);
-        BpmnXMLConverter bpmnConverter = new BpmnXMLConverter();
-        bpmnConverter.setUserTaskFormTypes(PreferencesUtil.getStringArray(Preferences.ALFRESCO_FORMTYPES_USERTASK, ActivitiPlugin.getDefault()));
-        bpmnConverter.setStartEventFormTypes(PreferencesUtil.getStringArray(Preferences.ALFRESCO_FORMTYPES_STARTEVENT, ActivitiPlugin.getDefault()));
-        BpmnModel bpmnModel = null;
-        try {
-          bpmnModel = bpmnConverter.convertToBpmnModel(xtr);
-        } catch (Exception e) {
-          bpmnModel = new BpmnModel();
+        // use an empty model until the import job has parsed the data file
+        model.setBpmnModel(new BpmnModel());
+
+        importJob = new DiagramImportJob(this, model, bpmnFile, input instanceof DiagramEditorInput);
+        importJob.schedule();
+      }
+
+    } catch (Exception e) {
+      e.printStackTrace();
+    }
+  }
+
+  /**
+   * Creates the steps that add the pictograms for the provided model to the diagram, in the order in
+   * which they have to be executed. Steps only capture what to draw, so they can be prepared in the
+   * background while the model is not yet in use; they have to be executed in a write transaction on
+   * the UI thread using {@link #executeImportSteps(List)}.
+   */
+  protected List<Runnable> createImportSteps(final BpmnMemoryModel model, final BpmnModel bpmnModel) {
+    final List<Runnable> steps = new ArrayList<Runnable>();
+    final Map<String, GraphicInfo> locationMap = bpmnModel.getLocationMap();
+    elementIndex = new DiagramElementIndex(bpmnModel, getDiagramTypeProvider().getFeatureProvider());
+
+    steps.add(new Runnable() {
+
+      @Override
+      public void run() {
+        getDiagramTypeProvider().getDiagram().setActive(true);
+      }
+    });
+
+    final int lazyShapesThreshold = getLazyShapesThreshold();
+    if (lazyShapesThreshold > 0 && elementIndex.getFlowElementCount() >= lazyShapesThreshold) {
+      deferredShapes = new DeferredShapes(bpmnModel);
+    } else {
+      deferredShapes = null;
+    }
+
+    for (final Pool pool : bpmnModel.getPools()) {
+      if (getOrCreatePoolGraphicInfo(pool, bpmnModel) != null) {
+        steps.add(new Runnable() {
+
+          @Override
+          public void run() {
+            drawPool(pool, model);
+          }
+        });
+      }
+    }
+
+    for (final Process process : bpmnModel.getProcesses()) {
+      if (deferredShapes != null) {
+        for (final FlowElement flowElement : process.getFlowElements()) {
+          if (flowElement instanceof SequenceFlow == false && flowElement instanceof BoundaryEvent == false
+                  && flowElement instanceof DataObject == false && locationMap.containsKey(flowElement.getId())) {
+            deferredShapes.add(flowElement, process);
+          }
         }
-        model.setBpmnModel(bpmnModel);
+      }
 
-        if (bpmnModel.getLocationMap().size() == 0) {
-          BpmnAutoLayout layout = new BpmnAutoLayout(bpmnModel);
-          layout.execute();
+      final List<FlowElement> noDIList = new ArrayList<FlowElement>();
+      for (final FlowElement flowElement : new ArrayList<FlowElement>(process.getFlowElements())) {
+        if (flowElement instanceof SequenceFlow || isDeferred(flowElement)) {
+          continue;
         }
 
-        BasicCommandStack basicCommandStack = (BasicCommandStack) getEditingDomain().getCommandStack();
+        steps.add(new Runnable() {
 
-        if (input instanceof DiagramEditorInput) {
+          @Override
+          public void run() {
+            drawFlowElement(flowElement, locationMap, getDiagramTypeProvider().getDiagram(), process, noDIList);
+          }
+        });
+      }
 
-          basicCommandStack.execute(new RecordingCommand(getEditingDomain()) {
+      steps.add(new Runnable() {
+
+        @Override
+        public void run() {
+          removeFlowElementsWithoutDI(process.getFlowElements(), noDIList);
+          drawArtifacts(process, locationMap, getDiagramTypeProvider().getDiagram(), process);
+        }
+      });
+    }
+
+    for (final Process process : bpmnModel.getProcesses()) {
+      for (final FlowElement flowElement : new ArrayList<FlowElement>(process.getFlowElements())) {
+        if ((flowElement instanceof SubProcess || flowElement instanceof SequenceFlow) && !isDeferred(flowElement)) {
+          steps.add(new Runnable() {
 
             @Override
-            protected void doExecute() {
-              importDiagram(model);
+            public void run() {
+              drawSequenceFlowsInList(Collections.singletonList(flowElement), model);
             }
           });
         }
-        basicCommandStack.saveIsDone();
-        basicCommandStack.flush();
       }
 
-    } catch (Exception e) {
-      e.printStackTrace();
+      steps.add(new Runnable() {
+
+        @Override
+        public void run() {
+          drawAssociationsInList(process.getArtifacts(), model);
+        }
+      });
+    }
+
+    for (final MessageFlow messageFlow : bpmnModel.getMessageFlows().values()) {
+      steps.add(new Runnable() {
+
+        @Override
+        public void run() {
+          drawMessageFlows(Collections.singletonList(messageFlow), model);
+        }
+      });
+    }
+
+    return steps;
+  }
+
+  /**
+   * Executes the provided import steps in a single write transaction. The transaction bypasses the
+   * command stack, so the imported shapes can't be undone and the stack only ever holds the commands
+   * of the user. Must be called from the UI thread.
+   */
+  protected void executeImportSteps(final List<Runnable> steps) {
+    final InternalTransactionalEditingDomain editingDomain = (InternalTransactionalEditingDomain) getEditingDomain();
+
+    Transaction transaction = null;
+    try {
+      transaction = editingDomain.startTransaction(false, Collections.singletonMap(Transaction.OPTION_NO_UNDO, Boolean.TRUE));
+      for (final Runnable step : steps) {
+        step.run();
+      }
+      transaction.commit();
+
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (RollbackException e) {
+      Logger.logError("Error while importing " + getTitle(), e);
+    } catch (RuntimeException e) {
+      Logger.logError("Error while importing " + getTitle(), e);
+    } finally {
+      if (transaction != null && transaction.isActive()) {
+        transaction.rollback();
+      }
     }
   }
 
-  private void importDiagram(final BpmnMemoryModel model) {
-    final Diagram diagram = getDiagramTypeProvider().getDiagram();
-    diagram.setActive(true);
+  /**
+   * Invoked on the UI thread once all import steps have been executed.
+   */
+  protected void importFinished() {
+    importJob = null;
+    customServiceTasks = null;
+    customUserTasks = null;
+    elementIndex = null;
+
+    changeTracker.reset();
+    setEditable(true);
+    updateDirtyState();
 
-    getEditingDomain().getCommandStack().execute(new RecordingCommand(getEditingDomain()) {
+    final BpmnMemoryModel model = ModelHandler.getModel(EcoreUtil.getURI(getDiagramTypeProvider().getDiagram()));
+    if (model != null) {
+      BpmnModelCache.importFinished(model);
+    }
+
+    scheduleMaterialization();
+  }
+
+  /**
+   * Enables or disables the diagram and the palette. The diagram can't be edited while it is being
+   * imported, as the model is only replaced by the imported one once the data file has been parsed.
+   */
+  private void setEditable(final boolean editable) {
+    if (getGraphicalViewer() != null && getGraphicalViewer().getControl() != null && !getGraphicalViewer().getControl().isDisposed()) {
+      if (!editable) {
+        getGraphicalViewer().deselectAll();
+      }
+      getGraphicalViewer().getControl().setEnabled(editable);
+    }
+    final PaletteViewer paletteViewer = getEditDomain() != null ? getEditDomain().getPaletteViewer() : null;
+    if (paletteViewer != null && paletteViewer.getControl() != null && !paletteViewer.getControl().isDisposed()) {
+      paletteViewer.getControl().setEnabled(editable);
+    }
+  }
+
+  /**
+   * Invoked on the UI thread if the import was cancelled. The partially imported diagram is closed,
+   * as saving it would drop all elements that were not imported yet.
+   */
+  protected void importCancelled() {
+    importJob = null;
+    customServiceTasks = null;
+    customUserTasks = null;
+    elementIndex = null;
+    deferredShapes = null;
+
+    getSite().getPage().closeEditor(this, false);
+  }
+
+  public boolean isDisposed() {
+    return disposed;
+  }
+
+  private int getLazyShapesThreshold() {
+    final String threshold = PreferencesUtil.getStringPreference(Preferences.EDITOR_LAZY_SHAPES_THRESHOLD, ActivitiPlugin.getDefault());
+    try {
+      return StringUtils.isNotEmpty(threshold) ? Integer.parseInt(threshold.trim()) : 0;
+    } catch (NumberFormatException e) {
+      return 0;
+    }
+  }
+
+  /**
+   * @return true if the shape of the element has not been created yet, because it has not been in
+   *         view yet
+   */
+  protected boolean isDeferred(final BaseElement element) {
+    return deferredShapes != null && deferredShapes.isDeferred(element.getId());
+  }
+
+  /**
+   * Keeps a connection that can't be drawn because the shape of one of its ends has not been
+   * created yet, so it can be drawn once both shapes exist.
+   */
+  protected void deferConnection(final BaseElement connection, final String sourceRef, final String targetRef) {
+    if (deferredShapes != null && (deferredShapes.isDeferred(sourceRef) || deferredShapes.isDeferred(targetRef))) {
+      deferredShapes.addConnection(connection, sourceRef, targetRef);
+    }
+  }
+
+  /**
+   * Creates the deferred shapes that are in view, or nearly so, after the UI events that are being
+   * processed, such as scrolling the diagram.
+   */
+  protected void scheduleMaterialization() {
+    if (deferredShapes == null || materializeScheduled) {
+      return;
+    }
+    materializeScheduled = true;
+    Display.getDefault().asyncExec(new Runnable() {
 
       @Override
-      protected void doExecute() {
-        if (model.getBpmnModel().getPools().size() > 0) {
-          for (Pool pool : model.getBpmnModel().getPools()) {
-            GraphicInfo graphicInfo = model.getBpmnModel().getGraphicInfo(pool.getId());
-
-            // if no graphic info is present we can try to calculate it from the
-            // lane DI info
-            if (graphicInfo == null && StringUtils.isNotEmpty(pool.getProcessRef())) {
-              Process process = model.getBpmnModel().getProcess(pool.getId());
-
-              if (process != null && process.getLanes().size() > 0) {
-                Double minX = null, minY = null, width = null, height = null;
-                for (Lane lane : process.getLanes()) {
-                  GraphicInfo laneInfo = model.getBpmnModel().getGraphicInfo(lane.getId());
-                  if (laneInfo != null) {
-                    if (minX == null || laneInfo.getX() < minX) {
-                      minX = laneInfo.getX();
-                    }
-                    if (minY == null || laneInfo.getY() < minY) {
-                      minY = laneInfo.getY();
-                    }
-
-                    if (width == null || laneInfo.getWidth() > width) {
-                      width = laneInfo.getWidth();
-                    }
-                    if (height == null) {
-                      height = laneInfo.getHeight();
-                    } else {
-                      height += laneInfo.getHeight();
-                    }
-                  }
-                }
-
-                if (width != null && width > 0) {
-                  graphicInfo = new GraphicInfo();
-                  graphicInfo.setX(minX);
-                  graphicInfo.setY(minY);
-                  graphicInfo.setWidth(width);
-                  graphicInfo.setHeight(height);
-                  model.getBpmnModel().addGraphicInfo(pool.getId(), graphicInfo);
-                }
-              }
-            }
+      public void run() {
+        materializeScheduled = false;
+        materializeVisibleShapes();
+      }
+    });
+  }
 
-            if (graphicInfo != null) {
-              PictogramElement poolElement = addContainerElement(pool, model, diagram);
-              if (poolElement == null) {
-                continue;
-              }
+  protected void materializeVisibleShapes() {
+    if (deferredShapes == null || importJob != null || disposed || getGraphicalViewer() == null
+            || getGraphicalViewer().getControl() instanceof FigureCanvas == false) {
+      return;
+    }
 
-              Process process = model.getBpmnModel().getProcess(pool.getId());
-              if (process != null) {
-                for (Lane lane : process.getLanes()) {
-                  addContainerElement(lane, model, (ContainerShape) poolElement);
-                }
-              }
+    if (isTransactionActive()) {
+      // a command is being executed, try again when it's done
+      Display.getDefault().timerExec(250, new Runnable() {
+
+        @Override
+        public void run() {
+          scheduleMaterialization();
+        }
+      });
+      return;
+    }
+
+    final Viewport viewport = ((FigureCanvas) getGraphicalViewer().getControl()).getViewport();
+    final ScalableFreeformRootEditPart rootEditPart = (ScalableFreeformRootEditPart) getGraphicalViewer().getRootEditPart();
+    final double zoom = rootEditPart.getZoomManager().getZoom();
+    final Rectangle clientArea = viewport.getClientArea();
+
+    // include half a page around the visible area, so the shapes are there before they're scrolled
+    // into view
+    materialize(deferredShapes.getElements((clientArea.x - clientArea.width / 2) / zoom, (clientArea.y - clientArea.height / 2) / zoom,
+            clientArea.width * 2 / zoom, clientArea.height * 2 / zoom));
+  }
+
+  /**
+   * Creates all shapes that have not been created yet.
+   */
+  protected void materializeAllShapes() {
+    if (deferredShapes != null && importJob == null && !isTransactionActive()) {
+      materialize(deferredShapes.getAllElements());
+    }
+  }
+
+  private boolean isTransactionActive() {
+    return ((InternalTransactionalEditingDomain) getEditingDomain()).getActiveTransaction() != null;
+  }
+
+  /**
+   * Creates the shapes of the deferred elements and draws the deferred connections that can be drawn
+   * now. The shapes are created outside of the command stack, as they don't change the diagram.
+   * They are only ever appended to the diagram and its containers, so the commands on the stack can
+   * still be undone and redone. Elements that have been removed from the model, for example along
+   * with their lane, are skipped but stay deferred, as undoing the removal brings them back.
+   */
+  private void materialize(final List<DeferredShapes.DeferredElement> candidates) {
+    if (candidates.isEmpty()) {
+      return;
+    }
+
+    final BpmnMemoryModel model = ModelHandler.getModel(EcoreUtil.getURI(getDiagramTypeProvider().getDiagram()));
+
+    // elements may have been deleted along with their lane or pool since they were deferred
+    final List<DeferredShapes.DeferredElement> elements = new ArrayList<DeferredShapes.DeferredElement>();
+    for (final DeferredShapes.DeferredElement element : candidates) {
+      if (deferredShapes.isDeferred(element) && element.isPartOf(model.getBpmnModel())) {
+        elements.add(element);
+      }
+    }
+
+    if (elements.isEmpty()) {
+      if (deferredShapes.isEmpty()) {
+        deferredShapes = null;
+      }
+      return;
+    }
+
+    final InternalTransactionalEditingDomain editingDomain = (InternalTransactionalEditingDomain) getEditingDomain();
+
+    final IFeatureProvider featureProvider = getDiagramTypeProvider().getFeatureProvider();
+    final Diagram diagram = getDiagramTypeProvider().getDiagram();
+
+    Transaction transaction = null;
+    try {
+      transaction = editingDomain.startTransaction(false, Collections.singletonMap(Transaction.OPTION_NO_UNDO, Boolean.TRUE));
+      elementIndex = new DiagramElementIndex(model.getBpmnModel(), featureProvider);
+
+      final List<String> ids = new ArrayList<String>();
+      for (final DeferredShapes.DeferredElement element : elements) {
+        final FlowElement flowElement = element.getFlowElement();
+        final Process process = element.getProcess();
+        final Map<String, GraphicInfo> locations = element.getLocations();
+        final List<FlowElement> noDIList = new ArrayList<FlowElement>();
+
+        drawFlowElement(flowElement, locations, diagram, process, noDIList);
+        if (flowElement instanceof Activity) {
+          for (final BoundaryEvent boundaryEvent : ((Activity) flowElement).getBoundaryEvents()) {
+            drawFlowElement(boundaryEvent, locations, diagram, process, noDIList);
+          }
+        }
+        if (flowElement instanceof SubProcess) {
+          final ContainerShape subProcessShape = (ContainerShape) featureProvider.getPictogramElementForBusinessObject(flowElement);
+          if (subProcessShape != null) {
+            drawArtifacts((SubProcess) flowElement, locations, subProcessShape, process);
+          }
+          drawSequenceFlowsInList(Collections.singletonList(flowElement), model);
+        }
+        ids.addAll(element.getIds());
+      }
+
+      final List<BaseElement> connections = deferredShapes.getConnections(ids);
+      for (final BaseElement connection : connections) {
+        if (featureProvider.getPictogramElementForBusinessObject(connection) != null
+                || !DeferredShapes.isPartOf(connection, model.getBpmnModel())) {
+          continue;
+        }
+        if (connection instanceof SequenceFlow) {
+          drawSequenceFlow((SequenceFlow) connection, model);
+        } else if (connection instanceof MessageFlow) {
+          drawMessageFlows(Collections.singletonList((MessageFlow) connection), model);
+        } else if (connection instanceof Association) {
+          drawAssociation((Association) connection, model);
+        }
+      }
+
+      transaction.commit();
+
+      deferredShapes.created(elements);
+      for (final BaseElement connection : connections) {
+        if (featureProvider.getPictogramElementForBusinessObject(connection) != null) {
+          deferredShapes.connectionDrawn(connection);
+        }
+      }
+
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (RollbackException e) {
+      Logger.logError("Error while creating the shapes of " + getTitle(), e);
+    } catch (RuntimeException e) {
+      Logger.logError("Error while creating the shapes of " + getTitle(), e);
+    } finally {
+      if (transaction != null && transaction.isActive()) {
+        transaction.rollback();
+      }
+      elementIndex = null;
+      customServiceTasks = null;
+      customUserTasks = null;
+    }
+
+    if (deferredShapes.isEmpty()) {
+      deferredShapes = null;
+    }
+  }
+
+  /**
+   * Returns the graphic info of the pool. If there is none, it is calculated from the lane DI info
+   * and added to the model.
+   */
+  protected GraphicInfo getOrCreatePoolGraphicInfo(final Pool pool, final BpmnModel bpmnModel) {
+    GraphicInfo graphicInfo = bpmnModel.getGraphicInfo(pool.getId());
+
+    // if no graphic info is present we can try to calculate it from the
+    // lane DI info
+    if (graphicInfo == null && StringUtils.isNotEmpty(pool.getProcessRef())) {
+      Process process = bpmnModel.getProcess(pool.getId());
+
+      if (process != null && process.getLanes().size() > 0) {
+        Double minX = null, minY = null, width = null, height = null;
+        for (Lane lane : process.getLanes()) {
+          GraphicInfo laneInfo = bpmnModel.getGraphicInfo(lane.getId());
+          if (laneInfo != null) {
+            if (minX == null || laneInfo.getX() < minX) {
+              minX = laneInfo.getX();
+            }
+            if (minY == null || laneInfo.getY() < minY) {
+              minY = laneInfo.getY();
+            }
+
+            if (width == null || laneInfo.getWidth() > width) {
+              width = laneInfo.getWidth();
+            }
+            if (height == null) {
+              height = laneInfo.getHeight();
+            } else {
+              height += laneInfo.getHeight();
             }
           }
         }
-        
-        for (Process process : model.getBpmnModel().getProcesses()) {
-          drawFlowElements(process.getFlowElements(), model.getBpmnModel().getLocationMap(), diagram, process);
-          drawArtifacts(process, model.getBpmnModel().getLocationMap(), diagram, process);
+
+        if (width != null && width > 0) {
+          graphicInfo = new GraphicInfo();
+          graphicInfo.setX(minX);
+          graphicInfo.setY(minY);
+          graphicInfo.setWidth(width);
+          graphicInfo.setHeight(height);
+          bpmnModel.addGraphicInfo(pool.getId(), graphicInfo);
         }
-        drawAllFlows(model);
-        drawMessageFlows(model.getBpmnModel().getMessageFlows().values(), model);
       }
-    });
+    }
+
+    return graphicInfo;
+  }
+
+  protected void drawPool(final Pool pool, final BpmnMemoryModel model) {
+    PictogramElement poolElement = addContainerElement(pool, model, getDiagramTypeProvider().getDiagram());
+    if (poolElement == null) {
+      return;
+    }
+
+    Process process = model.getBpmnModel().getProcess(pool.getId());
+    if (process != null) {
+      for (Lane lane : process.getLanes()) {
+        addContainerElement(lane, model, (ContainerShape) poolElement);
+      }
+    }
   }
 
   private PictogramElement addContainerElement(BaseElement element, BpmnMemoryModel model, ContainerShape parent) {
@@ -574,11 +887,8 @@ public class ActivitiDiagramEditor extends DiagramEditor {
     return pictElement;
   }
 
-  @SuppressWarnings({ "rawtypes", "unchecked" })
   protected void drawFlowElements(Collection<FlowElement> elementList, Map<String, GraphicInfo> locationMap, ContainerShape parentShape, Process process) {
 
-    final IFeatureProvider featureProvider = getDiagramTypeProvider().getFeatureProvider();
-
     List<FlowElement> noDIList = new ArrayList<FlowElement>();
     for (FlowElement flowElement : elementList) {
 
@@ -586,140 +896,140 @@ public class ActivitiDiagramEditor extends DiagramEditor {
         continue;
       }
 
-      AddContext context = new AddContext(new AreaContext(), flowElement);
-      IAddFeature addFeature = featureProvider.getAddFeature(context);
-
-      if (addFeature == null) {
-        System.out.println("Element not supported: " + flowElement);
+      if (drawFlowElement(flowElement, locationMap, parentShape, process, noDIList) == false) {
         return;
       }
+    }
 
-      GraphicInfo graphicInfo = locationMap.get(flowElement.getId());
-      if (graphicInfo == null) {
-
-        noDIList.add(flowElement);
-
-      } else {
-
-        context.setNewObject(flowElement);
-        context.setSize((int) graphicInfo.getWidth(), (int) graphicInfo.getHeight());
-        ContainerShape parentContainer = null;
-        if (parentShape instanceof Diagram) {
-          parentContainer = getParentContainer(flowElement.getId(), process, (Diagram) parentShape);
-        } else {
-          parentContainer = parentShape;
-        }
+    removeFlowElementsWithoutDI(elementList, noDIList);
+  }
 
-        context.setTargetContainer(parentContainer);
-        if (parentContainer instanceof Diagram == false) {
-          Point location = getLocation(parentContainer);
-          context.setLocation((int) graphicInfo.getX() - location.x, (int) graphicInfo.getY() - location.y);
-        } else {
-          context.setLocation((int) graphicInfo.getX(), (int) graphicInfo.getY());
-        }
+  /**
+   * Adds the pictogram for a single flow element, including the contents of sub processes. Elements
+   * without DI information are added to the noDIList instead.
+   *
+   * @return false if the element is not supported
+   */
+  @SuppressWarnings({ "rawtypes", "unchecked" })
+  protected boolean drawFlowElement(FlowElement flowElement, Map<String, GraphicInfo> locationMap, ContainerShape parentShape, Process process,
+      List<FlowElement> noDIList) {
 
-        if (flowElement instanceof ServiceTask) {
+    final IFeatureProvider featureProvider = getDiagramTypeProvider().getFeatureProvider();
 
-          ServiceTask serviceTask = (ServiceTask) flowElement;
+    AddContext context = new AddContext(new AreaContext(), flowElement);
+    IAddFeature addFeature = featureProvider.getAddFeature(context);
 
-          if (serviceTask.isExtended()) {
+    if (addFeature == null) {
+      System.out.println("Element not supported: " + flowElement);
+      return false;
+    }
 
-            CustomServiceTask targetTask = findCustomServiceTask(serviceTask);
+    GraphicInfo graphicInfo = locationMap.get(flowElement.getId());
+    if (graphicInfo == null) {
 
-            if (targetTask != null) {
+      noDIList.add(flowElement);
 
-              for (FieldExtension field : serviceTask.getFieldExtensions()) {
-                CustomProperty customFieldProperty = new CustomProperty();
-                customFieldProperty.setName(field.getFieldName());
-                if (StringUtils.isNotEmpty(field.getExpression())) {
-                  customFieldProperty.setSimpleValue(field.getExpression());
-                } else {
-                  customFieldProperty.setSimpleValue(field.getStringValue());
-                }
-                serviceTask.getCustomProperties().add(customFieldProperty);
-              }
+    } else {
+      context.setNewObject(flowElement);
+      context.setSize((int) graphicInfo.getWidth(), (int) graphicInfo.getHeight());
+      ContainerShape parentContainer = null;
+      if (parentShape instanceof Diagram) {
+        parentContainer = getParentContainer(flowElement.getId(), process, (Diagram) parentShape);
+      } else {
+        parentContainer = parentShape;
+      }
 
-              serviceTask.getFieldExtensions().clear();
-            }
-          }
-          
-        } else if (flowElement instanceof UserTask) {
+      context.setTargetContainer(parentContainer);
+      if (parentContainer instanceof Diagram == false) {
+        Point location = getLocation(parentContainer);
+        context.setLocation((int) graphicInfo.getX() - location.x, (int) graphicInfo.getY() - location.y);
+      } else {
+        context.setLocation((int) graphicInfo.getX(), (int) graphicInfo.getY());
+      }
 
-          UserTask userTask = (UserTask) flowElement;
+      if (flowElement instanceof ServiceTask) {
 
-          if (userTask.isExtended()) {
+        ServiceTask serviceTask = (ServiceTask) flowElement;
 
-            CustomUserTask targetTask = findCustomUserTask(userTask);
+        if (serviceTask.isExtended()) {
 
-            if (targetTask != null) {
-              
-              final List<Class<CustomUserTask>> classHierarchy = new ArrayList<Class<CustomUserTask>>();
-              final List<String> fieldInfoObjects = new ArrayList<String>();
+          CustomServiceTask targetTask = findCustomServiceTask(serviceTask);
 
-              Class clazz = targetTask.getClass();
-              classHierarchy.add(clazz);
+          if (targetTask != null) {
 
-              boolean hierarchyOpen = true;
-              while (hierarchyOpen) {
-                clazz = clazz.getSuperclass();
-                if (CustomUserTask.class.isAssignableFrom(clazz)) {
-                  classHierarchy.add(clazz);
-                } else {
-                  hierarchyOpen = false;
-                }
-              }
-              
-              for (final Class<CustomUserTask> currentClass : classHierarchy) {
-                for (final Field field : currentClass.getDeclaredFields()) {
-                  if (field.isAnnotationPresent(Property.class)) {
-                    fieldInfoObjects.add(field.getName());
-                  }
-                }
-              }
-              
-              for (String fieldName : userTask.getExtensionElements().keySet()) {
-                if (fieldInfoObjects.contains(fieldName)) {
-                  CustomProperty customFieldProperty = new CustomProperty();
-                  customFieldProperty.setName(fieldName);
-                  customFieldProperty.setSimpleValue(userTask.getExtensionElements().get(fieldName).get(0).getElementText());
-                  userTask.getCustomProperties().add(customFieldProperty);
-                }
-              }
-              
-              for (String fieldName : fieldInfoObjects) {
-                userTask.getExtensionElements().remove(fieldName);
+            for (FieldExtension field : serviceTask.getFieldExtensions()) {
+              CustomProperty customFieldProperty = new CustomProperty();
+              customFieldProperty.setName(field.getFieldName());
+              if (StringUtils.isNotEmpty(field.getExpression())) {
+                customFieldProperty.setSimpleValue(field.getExpression());
+              } else {
+                customFieldProperty.setSimpleValue(field.getStringValue());
               }
+              serviceTask.getCustomProperties().add(customFieldProperty);
             }
+
+            serviceTask.getFieldExtensions().clear();
           }
         }
+        
+      } else if (flowElement instanceof UserTask) {
+
+        UserTask userTask = (UserTask) flowElement;
+
+        if (userTask.isExtended()) {
 
-        if (flowElement instanceof BoundaryEvent) {
-          BoundaryEvent boundaryEvent = (BoundaryEvent) flowElement;
-          if (boundaryEvent.getAttachedToRef() != null) {
-            ContainerShape container = (ContainerShape) featureProvider.getPictogramElementForBusinessObject(boundaryEvent.getAttachedToRef());
+          CustomUserTask targetTask = findCustomUserTask(userTask);
 
-            if (container != null) {
-              AddContext boundaryContext = new AddContext(new AreaContext(), boundaryEvent);
-              boundaryContext.setTargetContainer(container);
-              Point location = getLocation(container);
-              boundaryContext.setLocation((int) graphicInfo.getX() - location.x, (int) graphicInfo.getY() - location.y);
+          if (targetTask != null) {
+            
+            final Set<String> fieldInfoObjects = ExtensionUtil.getPropertyFieldNames(targetTask.getClass(), CustomUserTask.class);
 
-              if (addFeature.canAdd(boundaryContext)) {
-                addFeature.add(boundaryContext);
+            for (String fieldName : userTask.getExtensionElements().keySet()) {
+              if (fieldInfoObjects.contains(fieldName)) {
+                CustomProperty customFieldProperty = new CustomProperty();
+                customFieldProperty.setName(fieldName);
+                customFieldProperty.setSimpleValue(userTask.getExtensionElements().get(fieldName).get(0).getElementText());
+                userTask.getCustomProperties().add(customFieldProperty);
               }
             }
+            
+            for (String fieldName : fieldInfoObjects) {
+              userTask.getExtensionElements().remove(fieldName);
+            }
           }
-        } else if (addFeature.canAdd(context)) {
-          PictogramElement newContainer = addFeature.add(context);
-          featureProvider.link(newContainer, new Object[] { flowElement });
+        }
+      }
 
-          if (flowElement instanceof SubProcess) {
-            drawFlowElements(((SubProcess) flowElement).getFlowElements(), locationMap, (ContainerShape) newContainer, process);
+      if (flowElement instanceof BoundaryEvent) {
+        BoundaryEvent boundaryEvent = (BoundaryEvent) flowElement;
+        if (boundaryEvent.getAttachedToRef() != null) {
+          ContainerShape container = (ContainerShape) featureProvider.getPictogramElementForBusinessObject(boundaryEvent.getAttachedToRef());
+
+          if (container != null) {
+            AddContext boundaryContext = new AddContext(new AreaContext(), boundaryEvent);
+            boundaryContext.setTargetContainer(container);
+            Point location = getLocation(container);
+            boundaryContext.setLocation((int) graphicInfo.getX() - location.x, (int) graphicInfo.getY() - location.y);
+
+            if (addFeature.canAdd(boundaryContext)) {
+              addFeature.add(boundaryContext);
+            }
           }
         }
+      } else if (addFeature.canAdd(context)) {
+        PictogramElement newContainer = addFeature.add(context);
+        featureProvider.link(newContainer, new Object[] { flowElement });
+
+        if (flowElement instanceof SubProcess) {
+          drawFlowElements(((SubProcess) flowElement).getFlowElements(), locationMap, (ContainerShape) newContainer, process);
+        }
       }
     }
 
+    return true;
+  }
+
+  protected void removeFlowElementsWithoutDI(Collection<FlowElement> elementList, List<FlowElement> noDIList) {
     for (FlowElement flowElement : noDIList) {
       if (flowElement instanceof BoundaryEvent) {
         ((BoundaryEvent) flowElement).getAttachedToRef().getBoundaryEvents().remove(flowElement);
@@ -735,16 +1045,8 @@ public class ActivitiDiagramEditor extends DiagramEditor {
   protected CustomServiceTask findCustomServiceTask(ServiceTask serviceTask) {
     CustomServiceTask result = null;
     if (serviceTask.isExtended()) {
-
-      final List<CustomServiceTask> customServiceTasks = ExtensionUtil.getCustomServiceTasks(
-          ActivitiUiUtil.getProjectFromDiagram(getDiagramTypeProvider().getDiagram()));
-
-      for (final CustomServiceTask customServiceTask : customServiceTasks) {
-        if (serviceTask.getExtensionId().equals(customServiceTask.getId())) {
-          result = customServiceTask;
-          break;
-        }
-      }
+      resolveCustomTasks();
+      result = customServiceTasks.get(serviceTask.getExtensionId());
     }
     return result;
   }
@@ -752,26 +1054,60 @@ public class ActivitiDiagramEditor extends DiagramEditor {
   protected CustomUserTask findCustomUserTask(UserTask userTask) {
     CustomUserTask result = null;
     if (userTask.isExtended()) {
+      resolveCustomTasks();
+      result = customUserTasks.get(userTask.getExtensionId());
+    }
+    return result;
+  }
+
+  /**
+   * Determines the custom tasks of the project once per import, so the extended tasks of the model
+   * can be looked up by their ID.
+   */
+  protected void resolveCustomTasks() {
+    if (customServiceTasks != null) {
+      return;
+    }
 
-      final List<CustomUserTask> customUserTasks = ExtensionUtil.getCustomUserTasks(
-          ActivitiUiUtil.getProjectFromDiagram(getDiagramTypeProvider().getDiagram()));
+    final IProject project = ActivitiUiUtil.getProjectFromDiagram(getDiagramTypeProvider().getDiagram());
 
-      for (final CustomUserTask customUserTask : customUserTasks) {
-        if (userTask.getExtensionId().equals(customUserTask.getId())) {
-          result = customUserTask;
-          break;
-        }
+    customServiceTasks = new HashMap<String, CustomServiceTask>();
+    for (final CustomServiceTask customServiceTask : ExtensionUtil.getCustomServiceTasks(project)) {
+      if (!customServiceTasks.containsKey(customServiceTask.getId())) {
+        customServiceTasks.put(customServiceTask.getId(), customServiceTask);
       }
     }
-    return result;
+
+    customUserTasks = new HashMap<String, CustomUserTask>();
+    for (final CustomUserTask customUserTask : ExtensionUtil.getCustomUserTasks(project)) {
+      if (!customUserTasks.containsKey(customUserTask.getId())) {
+        customUserTasks.put(customUserTask.getId(), customUserTask);
+      }
+    }
+  }
+
+  /**
+   * Returns the lookups for the model while shapes are created for it. The index is only kept while
+   * importing, creating deferred shapes or drawing all flows, as it is not updated when the model
+   * changes.
+   */
+  protected DiagramElementIndex getElementIndex() {
+    if (elementIndex == null) {
+      throw new IllegalStateException("The element index is only available while creating shapes for the model");
+    }
+    return elementIndex;
   }
 
   protected ContainerShape getParentContainer(String flowElementId, Process process, Diagram diagram) {
     Lane foundLane = null;
-    for (Lane lane : process.getLanes()) {
-      if (lane.getFlowReferences().contains(flowElementId)) {
-        foundLane = lane;
-        break;
+    if (elementIndex != null) {
+      foundLane = elementIndex.getLane(process, flowElementId);
+    } else {
+      for (Lane lane : process.getLanes()) {
+        if (lane.getFlowReferences().contains(flowElementId)) {
+          foundLane = lane;
+          break;
+        }
       }
     }
     
@@ -794,39 +1130,28 @@ public class ActivitiDiagramEditor extends DiagramEditor {
   
   protected void drawMessageFlows(final Collection<MessageFlow> messageFlows, final BpmnMemoryModel model) {
 
+    final DiagramElementIndex elementIndex = getElementIndex();
     for (final MessageFlow messageFlow : messageFlows) {
     
-      Anchor sourceAnchor = null;
-      Anchor targetAnchor = null;
       ContainerShape sourceShape = (ContainerShape) getDiagramTypeProvider().getFeatureProvider().getPictogramElementForBusinessObject(
-              model.getFlowElement(messageFlow.getSourceRef()));
+              elementIndex.getFlowElement(messageFlow.getSourceRef()));
       
       if (sourceShape == null) {
+        deferConnection(messageFlow, messageFlow.getSourceRef(), messageFlow.getTargetRef());
         continue;
       }
 
-      EList<Anchor> anchorList = sourceShape.getAnchors();
-      for (Anchor anchor : anchorList) {
-        if (anchor instanceof ChopboxAnchor) {
-          sourceAnchor = anchor;
-          break;
-        }
-      }
+      Anchor sourceAnchor = elementIndex.getChopboxAnchor(sourceShape);
 
       ContainerShape targetShape = (ContainerShape) getDiagramTypeProvider().getFeatureProvider().getPictogramElementForBusinessObject(
-              model.getFlowElement(messageFlow.getTargetRef()));
+              elementIndex.getFlowElement(messageFlow.getTargetRef()));
       
       if (targetShape == null) {
+        deferConnection(messageFlow, messageFlow.getSourceRef(), messageFlow.getTargetRef());
         continue;
       }
 
-      anchorList = targetShape.getAnchors();
-      for (Anchor anchor : anchorList) {
-        if (anchor instanceof ChopboxAnchor) {
-          targetAnchor = anchor;
-          break;
-        }
-      }
+      Anchor targetAnchor = elementIndex.getChopboxAnchor(targetShape);
 
       AddConnectionContext addContext = new AddConnectionContext(sourceAnchor, targetAnchor);
 
@@ -852,6 +1177,18 @@ public class ActivitiDiagramEditor extends DiagramEditor {
 
     final IFeatureProvider featureProvider = getDiagramTypeProvider().getFeatureProvider();
 
+    // artifact ID -> ID of the element at the other end of its association
+    final Map<String, String> associatedElementIds = new HashMap<String, String>();
+    if (parent instanceof Diagram) {
+      for (final Artifact associationArtifact : container.getArtifacts()) {
+        if (associationArtifact instanceof Association) {
+          Association association = (Association) associationArtifact;
+          associatedElementIds.put(association.getSourceRef(), association.getTargetRef());
+          associatedElementIds.put(association.getTargetRef(), association.getSourceRef());
+        }
+      }
+    }
+
     final List<Artifact> artifactsWithoutDI = new ArrayList<Artifact>();
     for (final Artifact artifact : container.getArtifacts()) {
 
@@ -877,17 +1214,9 @@ public class ActivitiDiagramEditor extends DiagramEditor {
         ContainerShape parentContainer = null;
         if (parent instanceof Diagram) {
           FlowElement connectingElement = null;
-          for (final Artifact associationArtifact : container.getArtifacts()) {
-            if (associationArtifact instanceof Association) {
-              Association association = (Association) associationArtifact;
-              
-              if (association.getSourceRef().equals(artifact.getId())) {
-                connectingElement = container.getFlowElement(association.getTargetRef());
-                
-              } else if (association.getTargetRef().equals(artifact.getId())) {
-                connectingElement = container.getFlowElement(association.getSourceRef());
-              }
-            }
+          final String associatedElementId = associatedElementIds.get(artifact.getId());
+          if (associatedElementId != null) {
+            connectingElement = container.getFlowElement(associatedElementId);
           }
           
           if (connectingElement != null) {
@@ -922,7 +1251,9 @@ public class ActivitiDiagramEditor extends DiagramEditor {
     for (FlowElement flowElement : container.getFlowElements()) {
       if (flowElement instanceof SubProcess) {
         ContainerShape subProcessShape = (ContainerShape) featureProvider.getPictogramElementForBusinessObject(flowElement);
-        drawArtifacts((SubProcess) flowElement, locationMap, subProcessShape, process);
+        if (subProcessShape != null) {
+          drawArtifacts((SubProcess) flowElement, locationMap, subProcessShape, process);
+        }
       }
     }
   }
@@ -930,9 +1261,19 @@ public class ActivitiDiagramEditor extends DiagramEditor {
   protected void drawAllFlows(BpmnMemoryModel model) {
     BpmnModel bpmnModel = model.getBpmnModel();
 
-    for (Process process : bpmnModel.getProcesses()) {
-      drawSequenceFlowsInList(process.getFlowElements(), model);
-      drawAssociationsInList(process.getArtifacts(), model);
+    final boolean ownIndex = elementIndex == null;
+    if (ownIndex) {
+      elementIndex = new DiagramElementIndex(bpmnModel, getDiagramTypeProvider().getFeatureProvider());
+    }
+    try {
+      for (Process process : bpmnModel.getProcesses()) {
+        drawSequenceFlowsInList(process.getFlowElements(), model);
+        drawAssociationsInList(process.getArtifacts(), model);
+      }
+    } finally {
+      if (ownIndex) {
+        elementIndex = null;
+      }
     }
   }
 
@@ -953,37 +1294,26 @@ public class ActivitiDiagramEditor extends DiagramEditor {
   }
 
   protected void drawSequenceFlow(SequenceFlow sequenceFlow, BpmnMemoryModel model) {
-    Anchor sourceAnchor = null;
-    Anchor targetAnchor = null;
+    final DiagramElementIndex elementIndex = getElementIndex();
     ContainerShape sourceShape = (ContainerShape) getDiagramTypeProvider().getFeatureProvider().getPictogramElementForBusinessObject(
-            model.getFlowElement(sequenceFlow.getSourceRef()));
+            elementIndex.getFlowElement(sequenceFlow.getSourceRef()));
 
     if (sourceShape == null) {
+      deferConnection(sequenceFlow, sequenceFlow.getSourceRef(), sequenceFlow.getTargetRef());
       return;
     }
 
-    EList<Anchor> anchorList = sourceShape.getAnchors();
-    for (Anchor anchor : anchorList) {
-      if (anchor instanceof ChopboxAnchor) {
-        sourceAnchor = anchor;
-        break;
-      }
-    }
+    Anchor sourceAnchor = elementIndex.getChopboxAnchor(sourceShape);
 
     ContainerShape targetShape = (ContainerShape) getDiagramTypeProvider().getFeatureProvider().getPictogramElementForBusinessObject(
-            model.getFlowElement(sequenceFlow.getTargetRef()));
+            elementIndex.getFlowElement(sequenceFlow.getTargetRef()));
 
     if (targetShape == null) {
+      deferConnection(sequenceFlow, sequenceFlow.getSourceRef(), sequenceFlow.getTargetRef());
       return;
     }
 
-    anchorList = targetShape.getAnchors();
-    for (Anchor anchor : anchorList) {
-      if (anchor instanceof ChopboxAnchor) {
-        targetAnchor = anchor;
-        break;
-      }
-    }
+    Anchor targetAnchor = elementIndex.getChopboxAnchor(targetShape);
 
     AddConnectionContext addContext = new AddConnectionContext(sourceAnchor, targetAnchor);
 
@@ -1016,49 +1346,24 @@ public class ActivitiDiagramEditor extends DiagramEditor {
   }
 
   protected void drawAssociation(Association association, BpmnMemoryModel model) {
-    Anchor sourceAnchor = null;
-    Anchor targetAnchor = null;
-    BaseElement sourceElement = model.getFlowElement(association.getSourceRef());
-    if (sourceElement == null) {
-      sourceElement = model.getArtifact(association.getSourceRef());
-    }
-    if (sourceElement == null) {
-      return;
-    }
-    ContainerShape sourceShape = (ContainerShape) getDiagramTypeProvider().getFeatureProvider().getPictogramElementForBusinessObject(sourceElement);
+    final DiagramElementIndex elementIndex = getElementIndex();
+    ContainerShape sourceShape = (ContainerShape) elementIndex.getPictogramElement(association.getSourceRef());
 
     if (sourceShape == null) {
+      deferConnection(association, association.getSourceRef(), association.getTargetRef());
       return;
     }
 
-    EList<Anchor> anchorList = sourceShape.getAnchors();
-    for (Anchor anchor : anchorList) {
-      if (anchor instanceof ChopboxAnchor) {
-        sourceAnchor = anchor;
-        break;
-      }
-    }
+    Anchor sourceAnchor = elementIndex.getChopboxAnchor(sourceShape);
 
-    BaseElement targetElement = model.getFlowElement(association.getTargetRef());
-    if (targetElement == null) {
-      targetElement = model.getArtifact(association.getTargetRef());
-    }
-    if (targetElement == null) {
-      return;
-    }
-    ContainerShape targetShape = (ContainerShape) getDiagramTypeProvider().getFeatureProvider().getPictogramElementForBusinessObject(targetElement);
+    ContainerShape targetShape = (ContainerShape) elementIndex.getPictogramElement(association.getTargetRef());
 
     if (targetShape == null) {
+      deferConnection(association, association.getSourceRef(), association.getTargetRef());
       return;
     }
 
-    anchorList = targetShape.getAnchors();
-    for (Anchor anchor : anchorList) {
-      if (anchor instanceof ChopboxAnchor) {
-        targetAnchor = anchor;
-        break;
-      }
-    }
+    Anchor targetAnchor = elementIndex.getChopboxAnchor(targetShape);
 
     AddConnectionContext addContext = new AddConnectionContext(sourceAnchor, targetAnchor);
 
@@ -1087,6 +1392,26 @@ public class ActivitiDiagramEditor extends DiagramEditor {
       IFigure gridFigure = ((LayerManager) rootEditPart).getLayer(LayerConstants.GRID_LAYER);
       gridFigure.setVisible(false);
     }
+
+    if (importJob != null) {
+      // the diagram becomes editable once the import is finished
+      setEditable(false);
+    }
+
+    // create the deferred shapes of large diagrams when they come into view
+    if (getGraphicalViewer() != null && getGraphicalViewer().getControl() instanceof FigureCanvas) {
+      final Viewport viewport = ((FigureCanvas) getGraphicalViewer().getControl()).getViewport();
+      final PropertyChangeListener viewportListener = new PropertyChangeListener() {
+
+        @Override
+        public void propertyChange(PropertyChangeEvent event) {
+          scheduleMaterialization();
+        }
+      };
+      viewport.getHorizontalRangeModel().addPropertyChangeListener(viewportListener);
+      viewport.getVerticalRangeModel().addPropertyChangeListener(viewportListener);
+      scheduleMaterialization();
+    }
   }
 
   public static GraphicalViewer getActiveGraphicalViewer() {
@@ -1095,11 +1420,25 @@ public class ActivitiDiagramEditor extends DiagramEditor {
 
   @Override
   public void dispose() {
+    disposed = true;
+    deferredShapes = null;
+    if (importJob != null) {
+      importJob.cancel();
+      importJob = null;
+    }
+    if (getEditingDomain() != null) {
+      getEditingDomain().removeResourceSetListener(changeTracker);
+    }
+
     super.dispose();
 
     final ActivitiDiagramEditorInput adei = (ActivitiDiagramEditorInput) getEditorInput();
 
+    final BpmnMemoryModel model = ModelHandler.getModel(EcoreUtil.getURI(getDiagramTypeProvider().getDiagram()));
     ModelHandler.removeModel(EcoreUtil.getURI(getDiagramTypeProvider().getDiagram()));
+    if (model != null) {
+      BpmnModelCache.modelClosed(model);
+    }
     Bpmn2DiagramCreator.dispose(adei.getDiagramFile());
   }
 }
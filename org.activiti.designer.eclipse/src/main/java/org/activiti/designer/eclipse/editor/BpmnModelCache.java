@@ -0,0 +1,183 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.activiti.designer.eclipse.editor;
+
+import java.io.File;
+import java.lang.ref.WeakReference;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ConcurrentMap;
+
+import org.activiti.bpmn.model.BpmnModel;
+import org.activiti.designer.util.editor.BpmnMemoryModel;
+import org.activiti.designer.util.editor.ModelHandler;
+import org.activiti.designer.util.workspace.BpmnOutlineParser;
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IResource;
+
+/**
+ * Shares the {@link BpmnModel}s of the diagram data files in the workspace between readers that
+ * only display them, such as the Project Explorer. The model of a file that is open in an editor
+ * is the model of the editor, once the editor has finished importing it. Of other files only the
+ * outline is parsed, see
+ * {@link BpmnOutlineParser}, and kept as long as a reader still holds it and the modification stamp
+ * of the file hasn't changed.
+ *
+ * <p>
+ * The returned models must not be changed. Parsing may be slow, so readers on the UI thread should
+ * use {@link #getCachedModel(IFile)} and load missing models with {@link #getModel(IFile)} in the
+ * background. Readers that keep what they built from a model are notified through a
+ * {@link OpenModelListener} when the model of an editor becomes available or is discarded.
+ */
+public class BpmnModelCache {
+
+  private static final ConcurrentMap<IFile, CachedModel> parsedModels = new ConcurrentHashMap<IFile, CachedModel>();
+
+  // the models of the editors that are still importing their data file
+  private static final Set<BpmnMemoryModel> importingModels = Collections.newSetFromMap(new ConcurrentHashMap<BpmnMemoryModel, Boolean>());
+
+  private static final CopyOnWriteArrayList<OpenModelListener> listeners = new CopyOnWriteArrayList<OpenModelListener>();
+
+  /**
+   * @return the model of the file if it's open in an editor or was parsed since it was last
+   *         modified, or null if it has to be parsed
+   */
+  public static BpmnModel getCachedModel(final IFile modelFile) {
+    final BpmnModel openModel = getOpenModel(modelFile);
+    if (openModel != null) {
+      return openModel;
+    }
+
+    final CachedModel cachedModel = parsedModels.get(modelFile);
+    if (cachedModel == null) {
+      return null;
+    }
+    final BpmnModel result = cachedModel.model.get();
+    if (result == null || cachedModel.modificationStamp != modelFile.getModificationStamp()) {
+      parsedModels.remove(modelFile, cachedModel);
+      return null;
+    }
+    return result;
+  }
+
+  /**
+   * @return the model of the file, its outline parsed if it isn't cached, or null if the file
+   *         doesn't exist or can't be parsed
+   */
+  public static BpmnModel getModel(final IFile modelFile) {
+    BpmnModel result = getCachedModel(modelFile);
+    if (result != null) {
+      return result;
+    }
+
+    // take the stamp before reading, so a change while parsing is picked up by the next request
+    final long modificationStamp = modelFile.getModificationStamp();
+    if (modificationStamp == IResource.NULL_STAMP || modelFile.getLocation() == null) {
+      return null;
+    }
+    final File bpmnFile = modelFile.getLocation().toFile();
+    if (!bpmnFile.exists()) {
+      return null;
+    }
+
+    try {
+      result = BpmnOutlineParser.parse(bpmnFile);
+    } catch (Exception e) {
+      // not a valid diagram data file (yet)
+      return null;
+    }
+    parsedModels.put(modelFile, new CachedModel(result, modificationStamp));
+    return result;
+  }
+
+  /**
+   * Forgets the parsed model of the file, if any.
+   */
+  public static void remove(final IFile modelFile) {
+    parsedModels.remove(modelFile);
+  }
+
+  /**
+   * Should be called by an editor before it registers a model whose data file it is going to import.
+   * Until the import is finished, the model of the editor is not used.
+   */
+  public static void importStarted(final BpmnMemoryModel model) {
+    importingModels.add(model);
+  }
+
+  /**
+   * Should be called on the UI thread once an editor has finished importing the data file of a model.
+   */
+  public static void importFinished(final BpmnMemoryModel model) {
+    importingModels.remove(model);
+    fireModelChanged(model.getModelFile());
+  }
+
+  /**
+   * Should be called on the UI thread once an editor has been closed and has unregistered its model,
+   * as readers may have built something from its unsaved state.
+   */
+  public static void modelClosed(final BpmnMemoryModel model) {
+    importingModels.remove(model);
+    fireModelChanged(model.getModelFile());
+  }
+
+  public static void addOpenModelListener(final OpenModelListener listener) {
+    listeners.addIfAbsent(listener);
+  }
+
+  public static void removeOpenModelListener(final OpenModelListener listener) {
+    listeners.remove(listener);
+  }
+
+  private static void fireModelChanged(final IFile modelFile) {
+    if (modelFile == null) {
+      return;
+    }
+    for (final OpenModelListener listener : listeners) {
+      listener.openModelChanged(modelFile);
+    }
+  }
+
+  private static BpmnModel getOpenModel(final IFile modelFile) {
+    for (final BpmnMemoryModel model : ModelHandler.getModels().values()) {
+      if (modelFile.equals(model.getModelFile()) && model.getBpmnModel() != null && !importingModels.contains(model)) {
+        return model.getBpmnModel();
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Notified on the UI thread when the model of an editor becomes available, once it has been
+   * imported, or when it is discarded because the editor was closed.
+   */
+  public interface OpenModelListener {
+
+    void openModelChanged(IFile modelFile);
+  }
+
+  private static class CachedModel {
+
+    private final WeakReference<BpmnModel> model;
+    private final long modificationStamp;
+
+    public CachedModel(final BpmnModel model, final long modificationStamp) {
+      this.model = new WeakReference<BpmnModel>(model);
+      this.modificationStamp = modificationStamp;
+    }
+  }
+}
@@ -0,0 +1,91 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.activiti.designer.eclipse.editor;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamReader;
+
+import org.activiti.bpmn.converter.BpmnXMLConverter;
+import org.activiti.bpmn.model.BpmnModel;
+import org.activiti.designer.eclipse.common.ActivitiPlugin;
+import org.activiti.designer.util.preferences.Preferences;
+import org.activiti.designer.util.preferences.PreferencesUtil;
+import org.apache.commons.io.IOUtils;
+
+/**
+ * Parses BPMN data files into a {@link BpmnModel}. The parser may be used from any thread; the
+ * {@link XMLInputFactory} is created once and shared, as creating it involves a service lookup.
+ */
+public class BpmnModelParser {
+
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  private static XMLInputFactory xmlInputFactory;
+
+  /**
+   * Parses the provided file, using the form types configured in the preferences.
+   *
+   * @param bpmnFile
+   *          the BPMN data file to parse
+   * @return the parsed model
+   * @throws Exception
+   *           if the file cannot be read or converted
+   */
+  public static BpmnModel parse(final File bpmnFile) throws Exception {
+    final InputStream fileStream = new BufferedInputStream(new FileInputStream(bpmnFile), BUFFER_SIZE);
+    try {
+      return parse(fileStream);
+    } finally {
+      IOUtils.closeQuietly(fileStream);
+    }
+  }
+
+  /**
+   * Parses the provided stream, using the form types configured in the preferences. The stream is
+   * not closed.
+   */
+  public static BpmnModel parse(final InputStream stream) throws Exception {
+    final XMLStreamReader xtr = createXMLStreamReader(stream);
+    try {
+      final BpmnXMLConverter bpmnConverter = new BpmnXMLConverter();
+      bpmnConverter.setUserTaskFormTypes(PreferencesUtil.getStringArray(Preferences.ALFRESCO_FORMTYPES_USERTASK, ActivitiPlugin.getDefault()));
+      bpmnConverter.setStartEventFormTypes(PreferencesUtil.getStringArray(Preferences.ALFRESCO_FORMTYPES_STARTEVENT, ActivitiPlugin.getDefault()));
+      return bpmnConverter.convertToBpmnModel(xtr);
+    } finally {
+      xtr.close();
+    }
+  }
+
+  private static XMLStreamReader createXMLStreamReader(final InputStream stream) throws Exception {
+    final XMLInputFactory xif = getXMLInputFactory();
+    // factories are not guaranteed to be thread safe, so serialize the (cheap) reader creation
+    synchronized (xif) {
+      return xif.createXMLStreamReader(new InputStreamReader(stream, "UTF-8"));
+    }
+  }
+
+  private static synchronized XMLInputFactory getXMLInputFactory() {
+    if (xmlInputFactory == null) {
+      xmlInputFactory = XMLInputFactory.newInstance();
+    }
+    return xmlInputFactory;
+  }
+
+}
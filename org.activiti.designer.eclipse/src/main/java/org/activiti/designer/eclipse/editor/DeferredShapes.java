@@ -0,0 +1,465 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.activiti.designer.eclipse.editor;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.activiti.bpmn.model.Activity;
+import org.activiti.bpmn.model.Artifact;
+import org.activiti.bpmn.model.Association;
+import org.activiti.bpmn.model.BaseElement;
+import org.activiti.bpmn.model.BoundaryEvent;
+import org.activiti.bpmn.model.BpmnModel;
+import org.activiti.bpmn.model.FlowElement;
+import org.activiti.bpmn.model.GraphicInfo;
+import org.activiti.bpmn.model.MessageFlow;
+import org.activiti.bpmn.model.Process;
+import org.activiti.bpmn.model.SequenceFlow;
+import org.activiti.bpmn.model.SubProcess;
+
+/**
+ * The elements of a large diagram whose shapes have not been created yet. Shapes are only created
+ * when the element comes into view, as creating the pictograms of thousands of elements makes
+ * opening a diagram slow and memory hungry. Until then, an element is only known by the DI
+ * information it was loaded with.
+ *
+ * <p>
+ * Elements are deferred as a whole: an activity with its boundary events and a sub process with
+ * everything it contains. Connections that can't be drawn yet because one of their ends has been
+ * deferred are kept until both ends have a shape.
+ *
+ * <p>
+ * The DI information of the deferred elements and connections is kept, so it can be written
+ * unchanged when the diagram is saved. Must only be used from the UI thread.
+ */
+public class DeferredShapes {
+
+  // the size of the cells of the grid used to find the elements in an area
+  private static final int CELL_SIZE = 512;
+
+  // cell -> elements whose bounds intersect it
+  private final Map<Long, List<DeferredElement>> grid = new HashMap<Long, List<DeferredElement>>();
+
+  private final Set<DeferredElement> elements = new LinkedHashSet<DeferredElement>();
+
+  // ID -> the top level element that contains the element with the ID, for all deferred elements
+  private final Map<String, DeferredElement> elementsById = new HashMap<String, DeferredElement>();
+
+  // the connections that have not been drawn, and the IDs of their ends
+  private final Map<BaseElement, String[]> connections = new IdentityHashMap<BaseElement, String[]>();
+  private final Map<String, Set<BaseElement>> connectionsByElementId = new HashMap<String, Set<BaseElement>>();
+
+  // the DI information of the connections as loaded
+  private final DiagramInterchange connectionDI = new DiagramInterchange();
+
+  // IDs of the deferred connections, including those inside deferred sub processes
+  private final Set<String> flowIds = new HashSet<String>();
+
+  private final BpmnModel bpmnModel;
+
+  public DeferredShapes(final BpmnModel bpmnModel) {
+    this.bpmnModel = bpmnModel;
+  }
+
+  /**
+   * Defers the creation of the shape of a top level flow element of a process. Boundary events are
+   * deferred along with the activity they're attached to, so they must not be added themselves.
+   */
+  public void add(final FlowElement flowElement, final Process process) {
+    final GraphicInfo bounds = bpmnModel.getGraphicInfo(flowElement.getId());
+    if (bounds == null) {
+      return;
+    }
+
+    final DeferredElement element = new DeferredElement(flowElement, process, copy(bounds));
+    elements.add(element);
+    register(element, flowElement);
+    if (flowElement instanceof Activity) {
+      for (final BoundaryEvent boundaryEvent : ((Activity) flowElement).getBoundaryEvents()) {
+        register(element, boundaryEvent);
+      }
+    }
+
+    final int minX = cell(bounds.getX());
+    final int maxX = cell(bounds.getX() + bounds.getWidth());
+    final int minY = cell(bounds.getY());
+    final int maxY = cell(bounds.getY() + bounds.getHeight());
+    for (int x = minX; x <= maxX; x++) {
+      for (int y = minY; y <= maxY; y++) {
+        final Long key = key(x, y);
+        List<DeferredElement> cellElements = grid.get(key);
+        if (cellElements == null) {
+          cellElements = new ArrayList<DeferredElement>();
+          grid.put(key, cellElements);
+        }
+        cellElements.add(element);
+      }
+    }
+  }
+
+  private void register(final DeferredElement element, final BaseElement baseElement) {
+    elementsById.put(baseElement.getId(), element);
+    element.ids.add(baseElement.getId());
+    element.di.keepLocation(baseElement.getId());
+
+    if (baseElement instanceof SubProcess) {
+      final SubProcess subProcess = (SubProcess) baseElement;
+      for (final FlowElement childElement : subProcess.getFlowElements()) {
+        if (childElement instanceof SequenceFlow) {
+          flowIds.add(childElement.getId());
+          element.di.keepFlowLocation(childElement.getId());
+        } else {
+          register(element, childElement);
+        }
+      }
+      for (final Artifact artifact : subProcess.getArtifacts()) {
+        if (artifact instanceof Association) {
+          flowIds.add(artifact.getId());
+          element.di.keepFlowLocation(artifact.getId());
+        } else {
+          register(element, artifact);
+        }
+      }
+    }
+  }
+
+  /**
+   * Keeps a connection that could not be drawn because one of its ends has been deferred.
+   */
+  public void addConnection(final BaseElement connection, final String sourceRef, final String targetRef) {
+    if (connections.containsKey(connection)) {
+      return;
+    }
+    connections.put(connection, new String[] { sourceRef, targetRef });
+    addConnection(sourceRef, connection);
+    addConnection(targetRef, connection);
+    flowIds.add(connection.getId());
+    connectionDI.keepFlowLocation(connection.getId());
+  }
+
+  private void addConnection(final String elementId, final BaseElement connection) {
+    Set<BaseElement> elementConnections = connectionsByElementId.get(elementId);
+    if (elementConnections == null) {
+      elementConnections = new HashSet<BaseElement>();
+      connectionsByElementId.put(elementId, elementConnections);
+    }
+    elementConnections.add(connection);
+  }
+
+  /**
+   * Should be called once a kept connection has been drawn.
+   */
+  public void connectionDrawn(final BaseElement connection) {
+    final String[] ends = connections.remove(connection);
+    if (ends != null) {
+      for (final String end : ends) {
+        final Set<BaseElement> elementConnections = connectionsByElementId.get(end);
+        if (elementConnections != null) {
+          elementConnections.remove(connection);
+          if (elementConnections.isEmpty()) {
+            connectionsByElementId.remove(end);
+          }
+        }
+      }
+      flowIds.remove(connection.getId());
+      connectionDI.forget(connection.getId());
+    }
+  }
+
+  /**
+   * @return true if the shape of the element with the ID, or the connection with the ID, has not
+   *         been created yet
+   */
+  public boolean isDeferred(final String id) {
+    return elementsById.containsKey(id) || flowIds.contains(id);
+  }
+
+  public boolean isEmpty() {
+    return elementsById.isEmpty() && connections.isEmpty();
+  }
+
+  /**
+   * Returns the deferred top level elements whose bounds intersect the area.
+   */
+  public List<DeferredElement> getElements(final double x, final double y, final double width, final double height) {
+    final Map<DeferredElement, Boolean> result = new LinkedHashMap<DeferredElement, Boolean>();
+    for (int cellX = cell(x); cellX <= cell(x + width); cellX++) {
+      for (int cellY = cell(y); cellY <= cell(y + height); cellY++) {
+        final List<DeferredElement> cellElements = grid.get(key(cellX, cellY));
+        if (cellElements == null) {
+          continue;
+        }
+        for (final DeferredElement element : cellElements) {
+          if (element.intersects(x, y, width, height)) {
+            result.put(element, Boolean.TRUE);
+          }
+        }
+      }
+    }
+    return new ArrayList<DeferredElement>(result.keySet());
+  }
+
+  public List<DeferredElement> getAllElements() {
+    return new ArrayList<DeferredElement>(elements);
+  }
+
+  /**
+   * @return true if the shape of the element has not been created yet
+   */
+  public boolean isDeferred(final DeferredElement element) {
+    return elements.contains(element);
+  }
+
+  /**
+   * @return true if the deferred connection is part of the model. It may have been removed since it
+   *         was deferred, for example along with the lane or pool that contained one of its ends.
+   */
+  public static boolean isPartOf(final BaseElement connection, final BpmnModel currentModel) {
+    if (connection instanceof MessageFlow) {
+      return currentModel.getMessageFlow(connection.getId()) == connection;
+    } else if (connection instanceof Artifact) {
+      return currentModel.getArtifact(connection.getId()) == connection;
+    }
+    return currentModel.getFlowElement(connection.getId()) == connection;
+  }
+
+  /**
+   * Should be called once the shapes of the elements have been created.
+   */
+  public void created(final Collection<DeferredElement> createdElements) {
+    for (final DeferredElement element : createdElements) {
+      remove(element);
+    }
+  }
+
+  private void remove(final DeferredElement element) {
+    if (!elements.remove(element)) {
+      return;
+    }
+    final GraphicInfo bounds = element.bounds;
+    for (int x = cell(bounds.getX()); x <= cell(bounds.getX() + bounds.getWidth()); x++) {
+      for (int y = cell(bounds.getY()); y <= cell(bounds.getY() + bounds.getHeight()); y++) {
+        final Long key = key(x, y);
+        final List<DeferredElement> cellElements = grid.get(key);
+        if (cellElements != null) {
+          cellElements.remove(element);
+          if (cellElements.isEmpty()) {
+            grid.remove(key);
+          }
+        }
+      }
+    }
+
+    elementsById.keySet().removeAll(element.ids);
+    flowIds.removeAll(element.di.flowLocations.keySet());
+  }
+
+  /**
+   * Returns the kept connections of which one end is one of the elements.
+   */
+  public List<BaseElement> getConnections(final Collection<String> elementIds) {
+    final Map<BaseElement, Boolean> result = new IdentityHashMap<BaseElement, Boolean>();
+    for (final String elementId : elementIds) {
+      final Set<BaseElement> elementConnections = connectionsByElementId.get(elementId);
+      if (elementConnections != null) {
+        for (final BaseElement connection : elementConnections) {
+          result.put(connection, Boolean.TRUE);
+        }
+      }
+    }
+
+    return new ArrayList<BaseElement>(result.keySet());
+  }
+
+  /**
+   * @return all kept connections
+   */
+  public List<BaseElement> getConnections() {
+    return new ArrayList<BaseElement>(connections.keySet());
+  }
+
+  /**
+   * Forgets a deferred connection, for example because one of its ends no longer exists.
+   */
+  public void discardConnection(final BaseElement connection) {
+    connectionDrawn(connection);
+  }
+
+  /**
+   * Adds the DI information the deferred elements and connections were loaded with to the model.
+   * Copies are added, so the kept information isn't affected by changes to the model. No DI
+   * information is written for the elements and connections that are no longer part of the model.
+   * They are kept nonetheless, as undoing their removal brings them back.
+   */
+  public void restoreGraphicInfo(final BpmnModel targetModel) {
+    for (final DeferredElement element : elements) {
+      if (element.isPartOf(targetModel)) {
+        element.di.restore(targetModel);
+      }
+    }
+    for (final Map.Entry<BaseElement, String[]> entry : connections.entrySet()) {
+      if (isPartOf(entry.getKey(), targetModel)) {
+        connectionDI.restore(entry.getKey().getId(), targetModel);
+      }
+    }
+  }
+
+  private static List<GraphicInfo> copy(final List<GraphicInfo> graphicInfoList) {
+    final List<GraphicInfo> result = new ArrayList<GraphicInfo>(graphicInfoList.size());
+    for (final GraphicInfo graphicInfo : graphicInfoList) {
+      result.add(copy(graphicInfo));
+    }
+    return result;
+  }
+
+  private static GraphicInfo copy(final GraphicInfo graphicInfo) {
+    final GraphicInfo result = new GraphicInfo();
+    result.setX(graphicInfo.getX());
+    result.setY(graphicInfo.getY());
+    result.setWidth(graphicInfo.getWidth());
+    result.setHeight(graphicInfo.getHeight());
+    result.setExpanded(graphicInfo.getExpanded());
+    return result;
+  }
+
+  private static int cell(final double coordinate) {
+    return (int) Math.floor(coordinate / CELL_SIZE);
+  }
+
+  private static Long key(final int x, final int y) {
+    return Long.valueOf(((long) x << 32) | (y & 0xffffffffL));
+  }
+
+  /**
+   * A deferred top level element, with everything that is drawn along with it.
+   */
+  public class DeferredElement {
+
+    private final FlowElement flowElement;
+    private final Process process;
+    private final GraphicInfo bounds;
+
+    // the IDs of the element and of the elements drawn along with it
+    private final List<String> ids = new ArrayList<String>();
+
+    // the DI information of the element and of everything drawn along with it, as loaded
+    private final DiagramInterchange di = new DiagramInterchange();
+
+    private DeferredElement(final FlowElement flowElement, final Process process, final GraphicInfo bounds) {
+      this.flowElement = flowElement;
+      this.process = process;
+      this.bounds = bounds;
+    }
+
+    public FlowElement getFlowElement() {
+      return flowElement;
+    }
+
+    public Process getProcess() {
+      return process;
+    }
+
+    /**
+     * @return the IDs of the element and of the elements drawn along with it
+     */
+    public List<String> getIds() {
+      return ids;
+    }
+
+    /**
+     * @return the locations of the element and of the elements drawn along with it, as loaded
+     */
+    public Map<String, GraphicInfo> getLocations() {
+      return di.locations;
+    }
+
+    /**
+     * @return true if the element is part of the model. It may have been removed since it was
+     *         deferred, for example along with the lane or pool that contained it.
+     */
+    public boolean isPartOf(final BpmnModel currentModel) {
+      return currentModel.getProcesses().contains(process) && process.getFlowElement(flowElement.getId()) == flowElement;
+    }
+
+    private boolean intersects(final double x, final double y, final double width, final double height) {
+      return bounds.getX() <= x + width && x <= bounds.getX() + bounds.getWidth() && bounds.getY() <= y + height
+              && y <= bounds.getY() + bounds.getHeight();
+    }
+  }
+
+  /**
+   * Copies of DI information, as loaded.
+   */
+  private class DiagramInterchange {
+
+    private final Map<String, GraphicInfo> locations = new LinkedHashMap<String, GraphicInfo>();
+    private final Map<String, List<GraphicInfo>> flowLocations = new HashMap<String, List<GraphicInfo>>();
+    private final Map<String, GraphicInfo> labelLocations = new HashMap<String, GraphicInfo>();
+
+    void keepLocation(final String id) {
+      final GraphicInfo graphicInfo = bpmnModel.getGraphicInfo(id);
+      if (graphicInfo != null) {
+        locations.put(id, copy(graphicInfo));
+      }
+    }
+
+    void keepFlowLocation(final String id) {
+      final List<GraphicInfo> flowLocation = bpmnModel.getFlowLocationGraphicInfo(id);
+      flowLocations.put(id, flowLocation != null ? copy(flowLocation) : null);
+      final GraphicInfo labelLocation = bpmnModel.getLabelGraphicInfo(id);
+      if (labelLocation != null) {
+        labelLocations.put(id, copy(labelLocation));
+      }
+    }
+
+    void forget(final String id) {
+      flowLocations.remove(id);
+      labelLocations.remove(id);
+    }
+
+    void restore(final String id, final BpmnModel targetModel) {
+      final List<GraphicInfo> flowLocation = flowLocations.get(id);
+      if (flowLocation != null) {
+        targetModel.addFlowGraphicInfoList(id, copy(flowLocation));
+      }
+      final GraphicInfo labelLocation = labelLocations.get(id);
+      if (labelLocation != null) {
+        targetModel.addLabelGraphicInfo(id, copy(labelLocation));
+      }
+    }
+
+    void restore(final BpmnModel targetModel) {
+      for (final Map.Entry<String, GraphicInfo> entry : locations.entrySet()) {
+        targetModel.addGraphicInfo(entry.getKey(), copy(entry.getValue()));
+      }
+      for (final Map.Entry<String, List<GraphicInfo>> entry : flowLocations.entrySet()) {
+        if (entry.getValue() != null) {
+          targetModel.addFlowGraphicInfoList(entry.getKey(), copy(entry.getValue()));
+        }
+      }
+      for (final Map.Entry<String, GraphicInfo> entry : labelLocations.entrySet()) {
+        targetModel.addLabelGraphicInfo(entry.getKey(), copy(entry.getValue()));
+      }
+    }
+  }
+}
@@ -0,0 +1,138 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.activiti.designer.eclipse.editor;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.eclipse.emf.common.notify.Notification;
+import org.eclipse.emf.ecore.EObject;
+import org.eclipse.emf.transaction.NotificationFilter;
+import org.eclipse.emf.transaction.ResourceSetChangeEvent;
+import org.eclipse.emf.transaction.ResourceSetListenerImpl;
+import org.eclipse.graphiti.mm.pictograms.Diagram;
+import org.eclipse.graphiti.mm.pictograms.PictogramElement;
+import org.eclipse.graphiti.mm.pictograms.PictogramLink;
+
+/**
+ * Keeps track of the pictogram elements that changed since the last save, based on the
+ * notifications of the transactions executed on the command stack (including undo and redo). As long
+ * as only existing elements are moved, resized or reconnected, saving only needs to recalculate the
+ * DI information of these elements. Adding, removing or relinking pictogram elements changes the
+ * structure of the diagram, in which case all DI information needs to be recalculated.
+ */
+public class DiagramChangeTracker extends ResourceSetListenerImpl {
+
+  private final Set<PictogramElement> changedElements = new HashSet<PictogramElement>();
+
+  // the first save after opening always processes the whole diagram
+  private boolean structureChanged = true;
+
+  public DiagramChangeTracker() {
+    super(NotificationFilter.NOT_TOUCH);
+  }
+
+  @Override
+  public boolean isPostcommitOnly() {
+    return true;
+  }
+
+  @Override
+  public synchronized void resourceSetChanged(ResourceSetChangeEvent event) {
+    if (structureChanged) {
+      return;
+    }
+
+    for (final Notification notification : event.getNotifications()) {
+      if (isStructuralChange(notification)) {
+        structureChanged = true;
+        changedElements.clear();
+        return;
+      }
+
+      final PictogramElement pictogramElement = getLinkedPictogramElement(notification.getNotifier());
+      if (pictogramElement != null) {
+        changedElements.add(pictogramElement);
+      }
+    }
+  }
+
+  /**
+   * Returns the pictogram elements that changed since the last call and resets the tracker.
+   *
+   * @return the changed elements or null if the structure of the diagram changed
+   */
+  public synchronized Set<PictogramElement> takeChangedElements() {
+    Set<PictogramElement> result = null;
+    if (!structureChanged) {
+      result = new HashSet<PictogramElement>(changedElements);
+    }
+    structureChanged = false;
+    changedElements.clear();
+    return result;
+  }
+
+  /**
+   * Forces the next save to process the whole diagram.
+   */
+  public synchronized void reset() {
+    structureChanged = true;
+    changedElements.clear();
+  }
+
+  protected boolean isStructuralChange(final Notification notification) {
+    if (notification.getNotifier() instanceof PictogramLink) {
+      return true;
+    }
+
+    switch (notification.getEventType()) {
+    case Notification.ADD:
+    case Notification.ADD_MANY:
+    case Notification.REMOVE:
+    case Notification.REMOVE_MANY:
+      return containsPictogramElement(notification.getNewValue()) || containsPictogramElement(notification.getOldValue());
+    default:
+      return notification.getNewValue() instanceof PictogramLink || notification.getOldValue() instanceof PictogramLink;
+    }
+  }
+
+  private boolean containsPictogramElement(final Object value) {
+    if (value instanceof Collection< ? >) {
+      for (final Object element : (Collection< ? >) value) {
+        if (element instanceof PictogramElement) {
+          return true;
+        }
+      }
+      return false;
+    }
+    return value instanceof PictogramElement;
+  }
+
+  /**
+   * Finds the pictogram element linked to a business object the notifier belongs to, for example the
+   * shape of a changed graphics algorithm or the connection of a changed bendpoint.
+   */
+  protected PictogramElement getLinkedPictogramElement(final Object notifier) {
+    Object current = notifier;
+    while (current instanceof EObject && current instanceof Diagram == false) {
+      if (current instanceof PictogramElement && ((PictogramElement) current).getLink() != null) {
+        return (PictogramElement) current;
+      }
+      current = ((EObject) current).eContainer();
+    }
+    return null;
+  }
+
+}
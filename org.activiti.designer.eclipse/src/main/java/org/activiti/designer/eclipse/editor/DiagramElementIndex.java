@@ -0,0 +1,183 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.activiti.designer.eclipse.editor;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.activiti.bpmn.model.Artifact;
+import org.activiti.bpmn.model.BaseElement;
+import org.activiti.bpmn.model.BpmnModel;
+import org.activiti.bpmn.model.FlowElement;
+import org.activiti.bpmn.model.Lane;
+import org.activiti.bpmn.model.Process;
+import org.activiti.bpmn.model.SubProcess;
+import org.eclipse.graphiti.datatypes.ILocation;
+import org.eclipse.graphiti.features.IFeatureProvider;
+import org.eclipse.graphiti.mm.pictograms.Anchor;
+import org.eclipse.graphiti.mm.pictograms.AnchorContainer;
+import org.eclipse.graphiti.mm.pictograms.ChopboxAnchor;
+import org.eclipse.graphiti.mm.pictograms.PictogramElement;
+import org.eclipse.graphiti.mm.pictograms.Shape;
+import org.eclipse.graphiti.services.Graphiti;
+
+/**
+ * Lookups of model elements and their pictograms by ID, for a single pass over a diagram such as
+ * the import of a model or the conversion of the diagram to DI information. Looking up elements in
+ * the {@link BpmnModel} scans all processes, which makes these passes quadratic in the size of the
+ * model; the index is built once instead.
+ *
+ * <p>
+ * The index reflects the model at the time it was created and the shapes at the time they were
+ * first looked up, so it should only be used while the structure of the model and the position of
+ * the shapes doesn't change.
+ */
+public class DiagramElementIndex {
+
+  private final IFeatureProvider featureProvider;
+
+  private final Map<String, FlowElement> flowElements = new HashMap<String, FlowElement>();
+  private final Map<String, Artifact> artifacts = new HashMap<String, Artifact>();
+
+  // process -> flow element ID -> lane of the process that references it
+  private final Map<Process, Map<String, Lane>> lanes = new IdentityHashMap<Process, Map<String, Lane>>();
+
+  private final Map<AnchorContainer, Anchor> chopboxAnchors = new IdentityHashMap<AnchorContainer, Anchor>();
+  private final Map<Shape, ILocation> locations = new IdentityHashMap<Shape, ILocation>();
+
+  public DiagramElementIndex(final BpmnModel bpmnModel, final IFeatureProvider featureProvider) {
+    this.featureProvider = featureProvider;
+
+    // same precedence as BpmnModel.getFlowElement: elements of the processes before those of their
+    // sub processes
+    final List<SubProcess> subProcesses = new ArrayList<SubProcess>();
+    for (final Process process : bpmnModel.getProcesses()) {
+      addElements(process.getFlowElements(), process.getArtifacts(), subProcesses);
+
+      final Map<String, Lane> processLanes = new HashMap<String, Lane>();
+      for (final Lane lane : process.getLanes()) {
+        for (final String flowReference : lane.getFlowReferences()) {
+          if (!processLanes.containsKey(flowReference)) {
+            processLanes.put(flowReference, lane);
+          }
+        }
+      }
+      lanes.put(process, processLanes);
+    }
+
+    for (int i = 0; i < subProcesses.size(); i++) {
+      final SubProcess subProcess = subProcesses.get(i);
+      addElements(subProcess.getFlowElements(), subProcess.getArtifacts(), subProcesses);
+    }
+  }
+
+  private void addElements(final Collection<FlowElement> flowElementList, final Collection<Artifact> artifactList,
+          final List<SubProcess> subProcesses) {
+
+    for (final FlowElement flowElement : flowElementList) {
+      if (flowElement.getId() != null && !flowElements.containsKey(flowElement.getId())) {
+        flowElements.put(flowElement.getId(), flowElement);
+      }
+      if (flowElement instanceof SubProcess) {
+        subProcesses.add((SubProcess) flowElement);
+      }
+    }
+
+    for (final Artifact artifact : artifactList) {
+      if (artifact.getId() != null && !artifacts.containsKey(artifact.getId())) {
+        artifacts.put(artifact.getId(), artifact);
+      }
+    }
+  }
+
+  /**
+   * @return the number of flow elements in the model, including those in sub processes
+   */
+  public int getFlowElementCount() {
+    return flowElements.size();
+  }
+
+  public FlowElement getFlowElement(final String id) {
+    return flowElements.get(id);
+  }
+
+  /**
+   * @return the flow element with the ID or, if there is none, the artifact with the ID
+   */
+  public BaseElement getElement(final String id) {
+    final BaseElement result = flowElements.get(id);
+    if (result != null) {
+      return result;
+    }
+    return artifacts.get(id);
+  }
+
+  /**
+   * @return the lane of the process that references the flow element or null if the element is not
+   *         in a lane of the process
+   */
+  public Lane getLane(final Process process, final String flowElementId) {
+    final Map<String, Lane> processLanes = lanes.get(process);
+    if (processLanes == null) {
+      return null;
+    }
+    return processLanes.get(flowElementId);
+  }
+
+  /**
+   * @return the pictogram of the flow element or artifact with the ID or null if it has none
+   */
+  public PictogramElement getPictogramElement(final String id) {
+    final BaseElement element = getElement(id);
+    if (element == null) {
+      return null;
+    }
+    return featureProvider.getPictogramElementForBusinessObject(element);
+  }
+
+  /**
+   * @return the first chopbox anchor of the shape or null if it has none
+   */
+  public Anchor getChopboxAnchor(final AnchorContainer anchorContainer) {
+    if (chopboxAnchors.containsKey(anchorContainer)) {
+      return chopboxAnchors.get(anchorContainer);
+    }
+
+    Anchor result = null;
+    for (final Anchor anchor : anchorContainer.getAnchors()) {
+      if (anchor instanceof ChopboxAnchor) {
+        result = anchor;
+        break;
+      }
+    }
+    chopboxAnchors.put(anchorContainer, result);
+    return result;
+  }
+
+  /**
+   * @return the location of the shape relative to the diagram
+   */
+  public ILocation getLocationRelativeToDiagram(final Shape shape) {
+    ILocation result = locations.get(shape);
+    if (result == null) {
+      result = Graphiti.getLayoutService().getLocationRelativeToDiagram(shape);
+      locations.put(shape, result);
+    }
+    return result;
+  }
+}
@@ -0,0 +1,270 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.activiti.designer.eclipse.editor;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.activiti.bpmn.model.BpmnModel;
+import org.activiti.bpmn.model.ExtensionAttribute;
+import org.activiti.bpmn.model.ExtensionElement;
+import org.activiti.bpmn.model.FlowElement;
+import org.activiti.bpmn.model.FlowElementsContainer;
+import org.activiti.bpmn.model.Process;
+import org.activiti.bpmn.model.SubProcess;
+import org.activiti.designer.eclipse.Logger;
+import org.activiti.designer.util.bpmn.BpmnExtensions;
+import org.activiti.designer.util.workspace.SaveOutputTracker;
+import org.activiti.image.ProcessDiagramGenerator;
+import org.activiti.image.impl.DefaultProcessDiagramGenerator;
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.io.IOUtils;
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+
+/**
+ * Renders the PNG images of a process for each configured language in the background. Every
+ * language is rendered in parallel against its own model, parsed from the XML that was saved, so
+ * the model of the editor is never touched. An image is only rendered again if the saved XML or
+ * the language changed since it was last written.
+ *
+ * <p>
+ * There is one job per editor. Scheduling it again while it is running cancels the current run and
+ * starts over with the latest content once the current run has finished.
+ */
+public class DiagramImageJob extends Job {
+
+  /** The time to wait for a rendering task before checking for cancellation. */
+  private static final long POLL_INTERVAL_MILLIS = 100;
+
+  // content of the next run, guarded by this
+  private byte[] pendingXml;
+  private List<String> pendingLanguages;
+  private IFile pendingDataFile;
+
+  // image file path to hash of the content it was rendered from, only accessed by the job
+  private final Map<String, String> renderedImages = new HashMap<String, String>();
+
+  public DiagramImageJob() {
+    super("Generating process images");
+  }
+
+  /**
+   * Schedules the rendering of the images for the provided content. Any run in progress is
+   * cancelled, as its content is outdated.
+   *
+   * @param dataFile
+   *          the data file the images belong to
+   * @param xml
+   *          the XML that was written to the data file
+   * @param languages
+   *          the languages to render an image for
+   */
+  public void schedule(final IFile dataFile, final byte[] xml, final List<String> languages) {
+    synchronized (this) {
+      pendingDataFile = dataFile;
+      pendingXml = xml;
+      pendingLanguages = new ArrayList<String>(languages);
+    }
+    cancel();
+    schedule();
+  }
+
+  @Override
+  protected IStatus run(final IProgressMonitor monitor) {
+    final IFile dataFile;
+    final byte[] xml;
+    final List<String> languages;
+    synchronized (this) {
+      dataFile = pendingDataFile;
+      xml = pendingXml;
+      languages = pendingLanguages;
+      pendingXml = null;
+    }
+    if (xml == null) {
+      return Status.OK_STATUS;
+    }
+
+    final String diagramFileString = dataFile.getLocationURI().getPath();
+
+    // only render the images that are not up to date
+    final Map<File, String> imagesToRender = new LinkedHashMap<File, String>();
+    final Map<File, String> imageLanguages = new HashMap<File, String>();
+    for (final String language : languages) {
+      final File imageFile = new File(getImageFileName(diagramFileString, language));
+      final String hash = getContentHash(xml, language);
+      if (!imageFile.exists() || !hash.equals(renderedImages.get(imageFile.getAbsolutePath()))) {
+        imagesToRender.put(imageFile, hash);
+        imageLanguages.put(imageFile, language);
+      }
+    }
+    if (imagesToRender.isEmpty()) {
+      return Status.OK_STATUS;
+    }
+
+    monitor.beginTask(getName(), imagesToRender.size());
+
+    final int threads = Math.min(imagesToRender.size(), Runtime.getRuntime().availableProcessors());
+    final ExecutorService executor = Executors.newFixedThreadPool(threads);
+    final SaveOutputTracker saveOutput = new SaveOutputTracker();
+    try {
+      final Map<File, Future<Boolean>> results = new LinkedHashMap<File, Future<Boolean>>();
+      for (final File imageFile : imagesToRender.keySet()) {
+        final String language = imageLanguages.get(imageFile);
+        results.put(imageFile, executor.submit(new Callable<Boolean>() {
+
+          @Override
+          public Boolean call() throws Exception {
+            return renderImage(xml, language, imageFile);
+          }
+        }));
+      }
+
+      for (final Map.Entry<File, Future<Boolean>> result : results.entrySet()) {
+        if (!waitFor(result.getValue(), monitor)) {
+          return Status.CANCEL_STATUS;
+        }
+        final File imageFile = result.getKey();
+        if (Boolean.TRUE.equals(result.getValue().get())) {
+          renderedImages.put(imageFile.getAbsolutePath(), imagesToRender.get(imageFile));
+          saveOutput.fileWritten(imageFile);
+        }
+        monitor.worked(1);
+      }
+
+    } catch (Exception e) {
+      Logger.logError("Error while generating the images of " + dataFile.getName(), e);
+    } finally {
+      executor.shutdownNow();
+      refreshImageFiles(saveOutput, dataFile);
+      monitor.done();
+    }
+
+    return Status.OK_STATUS;
+  }
+
+  private boolean waitFor(final Future<Boolean> future, final IProgressMonitor monitor) throws Exception {
+    while (true) {
+      if (monitor.isCanceled()) {
+        return false;
+      }
+      try {
+        future.get(POLL_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+        return true;
+      } catch (TimeoutException e) {
+        // check for cancellation and keep waiting
+      }
+    }
+  }
+
+  /**
+   * Renders the image of the provided language. Runs on a worker thread, so it only uses its own
+   * model.
+   *
+   * @return true if the image was written
+   */
+  protected boolean renderImage(final byte[] xml, final String language, final File imageFile) throws Exception {
+    final BpmnModel bpmnModel = BpmnModelParser.parse(new ByteArrayInputStream(xml));
+    for (final Process process : bpmnModel.getProcesses()) {
+      fillContainerWithLanguage(process, language);
+    }
+
+    final ProcessDiagramGenerator processDiagramGenerator = new DefaultProcessDiagramGenerator();
+    final InputStream imageStream = processDiagramGenerator.generatePngDiagram(bpmnModel);
+    if (imageStream == null) {
+      return false;
+    }
+
+    final OutputStream outStream = new BufferedOutputStream(new FileOutputStream(imageFile));
+    try {
+      IOUtils.copy(imageStream, outStream);
+    } finally {
+      IOUtils.closeQuietly(outStream);
+      IOUtils.closeQuietly(imageStream);
+    }
+    return true;
+  }
+
+  protected void fillContainerWithLanguage(FlowElementsContainer container, String language) {
+    for (FlowElement flowElement : container.getFlowElements()) {
+
+      List<ExtensionElement> languageElements = flowElement.getExtensionElements().get(BpmnExtensions.LANGUAGE_EXTENSION);
+
+      if (languageElements != null && languageElements.size() > 0) {
+        for (ExtensionElement extensionElement : languageElements) {
+          List<ExtensionAttribute> languageAttributes = extensionElement.getAttributes().get("language");
+          if (languageAttributes != null && languageAttributes.size() == 1) {
+            String languageValue = languageAttributes.get(0).getValue();
+            if (language.equals(languageValue)) {
+              flowElement.setName(extensionElement.getElementText());
+            }
+          }
+        }
+      }
+
+      if (flowElement instanceof SubProcess) {
+        fillContainerWithLanguage((SubProcess) flowElement, language);
+      }
+    }
+  }
+
+  private void refreshImageFiles(final SaveOutputTracker saveOutput, final IFile dataFile) {
+    try {
+      saveOutput.refresh(null);
+    } catch (CoreException e) {
+      Logger.logError("Error while refreshing the images of " + dataFile.getName(), e);
+    }
+  }
+
+  private String getImageFileName(final String diagramFileString, final String language) {
+    if (diagramFileString.endsWith(".bpmn20.xml")) {
+      return diagramFileString.substring(0, diagramFileString.length() - 11) + "_" + language + ".png";
+    } else {
+      return diagramFileString.substring(0, diagramFileString.lastIndexOf(".")) + "_" + language + ".png";
+    }
+  }
+
+  private String getContentHash(final byte[] xml, final String language) {
+    try {
+      final MessageDigest digest = MessageDigest.getInstance("SHA-1");
+      digest.update(xml);
+      digest.update(language.getBytes("UTF-8"));
+      return new String(Hex.encodeHex(digest.digest()));
+    } catch (Exception e) {
+      // no digest available, so always render the image
+      return String.valueOf(System.nanoTime());
+    }
+  }
+
+}
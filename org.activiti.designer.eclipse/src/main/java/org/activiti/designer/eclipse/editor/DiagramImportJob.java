@@ -0,0 +1,182 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.activiti.designer.eclipse.editor;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.activiti.bpmn.BpmnAutoLayout;
+import org.activiti.bpmn.model.BpmnModel;
+import org.activiti.designer.eclipse.Logger;
+import org.activiti.designer.util.editor.BpmnMemoryModel;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.swt.widgets.Display;
+
+/**
+ * Imports a BPMN data file into an {@link ActivitiDiagramEditor} in stages. The file is parsed, laid
+ * out and turned into a list of import steps in the background. The steps are then executed on the UI
+ * thread in bounded batches, so the workbench stays responsive and the first shapes show up right
+ * away. The editor can't be edited until the import is finished. Cancelling the job closes the
+ * editor, as a partially imported diagram must never be saved.
+ */
+public class DiagramImportJob extends Job {
+
+  /** The maximum number of import steps executed in one UI thread batch. */
+  private static final int BATCH_SIZE = 50;
+
+  private final ActivitiDiagramEditor editor;
+  private final BpmnMemoryModel model;
+  private final File bpmnFile;
+  private final boolean createShapes;
+
+  // only accessed from the UI thread
+  private final LinkedList<Runnable> pendingSteps = new LinkedList<Runnable>();
+  private BpmnModel parsedModel;
+  private boolean started;
+  private volatile boolean finished;
+
+  public DiagramImportJob(final ActivitiDiagramEditor editor, final BpmnMemoryModel model, final File bpmnFile,
+          final boolean createShapes) {
+
+    super("Opening " + bpmnFile.getName());
+    this.editor = editor;
+    this.model = model;
+    this.bpmnFile = bpmnFile;
+    this.createShapes = createShapes;
+  }
+
+  @Override
+  protected IStatus run(final IProgressMonitor monitor) {
+    BpmnModel bpmnModel = null;
+    try {
+      bpmnModel = BpmnModelParser.parse(bpmnFile);
+    } catch (Exception e) {
+      Logger.logError("Error while parsing " + bpmnFile.getName(), e);
+      bpmnModel = new BpmnModel();
+    }
+
+    if (bpmnModel.getLocationMap().size() == 0) {
+      BpmnAutoLayout layout = new BpmnAutoLayout(bpmnModel);
+      layout.execute();
+    }
+
+    // the model is not visible to the editor yet, so the steps can be prepared here
+    final List<Runnable> steps = new ArrayList<Runnable>();
+    if (createShapes) {
+      steps.addAll(editor.createImportSteps(model, bpmnModel));
+    }
+    if (monitor.isCanceled()) {
+      return cancelImport();
+    }
+
+    parsedModel = bpmnModel;
+    final Display display = Display.getDefault();
+    display.syncExec(new Runnable() {
+
+      @Override
+      public void run() {
+        pendingSteps.addAll(steps);
+        startImport();
+      }
+    });
+
+    monitor.beginTask(getName(), steps.size());
+    final int[] executed = new int[1];
+    while (!finished) {
+      if (monitor.isCanceled()) {
+        return cancelImport();
+      }
+
+      display.syncExec(new Runnable() {
+
+        @Override
+        public void run() {
+          executed[0] = executeBatch(BATCH_SIZE);
+        }
+      });
+      monitor.worked(executed[0]);
+    }
+    monitor.done();
+
+    return Status.OK_STATUS;
+  }
+
+  /**
+   * Executes all import steps that have not been executed yet. Must be called from the UI thread.
+   * Does nothing if the file has not been parsed yet.
+   *
+   * @return true if the import is complete
+   */
+  public boolean completeImport() {
+    if (!started) {
+      return false;
+    }
+    executeBatch(Integer.MAX_VALUE);
+    return finished;
+  }
+
+  private void startImport() {
+    if (started || editor.isDisposed()) {
+      return;
+    }
+    started = true;
+    model.setBpmnModel(parsedModel);
+  }
+
+  private int executeBatch(final int batchSize) {
+    if (finished || editor.isDisposed()) {
+      // the editor has been disposed in the meantime
+      finished = true;
+      return 0;
+    }
+
+    final List<Runnable> batch = new LinkedList<Runnable>();
+    while (!pendingSteps.isEmpty() && batch.size() < batchSize) {
+      batch.add(pendingSteps.removeFirst());
+    }
+
+    if (!batch.isEmpty()) {
+      editor.executeImportSteps(batch);
+    }
+
+    if (pendingSteps.isEmpty()) {
+      finished = true;
+      editor.importFinished();
+    }
+    return batch.size();
+  }
+
+  private IStatus cancelImport() {
+    Display.getDefault().asyncExec(new Runnable() {
+
+      @Override
+      public void run() {
+        if (!finished) {
+          finished = true;
+          pendingSteps.clear();
+          if (!editor.isDisposed()) {
+            editor.importCancelled();
+          }
+        }
+      }
+    });
+    return Status.CANCEL_STATUS;
+  }
+
+}
@@ -15,13 +15,16 @@ package org.activiti.designer.eclipse.editor;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import org.activiti.bpmn.model.Activity;
 import org.activiti.bpmn.model.Artifact;
 import org.activiti.bpmn.model.Association;
 import org.activiti.bpmn.model.BaseElement;
 import org.activiti.bpmn.model.BoundaryEvent;
+import org.activiti.bpmn.model.BpmnModel;
 import org.activiti.bpmn.model.DataObject;
 import org.activiti.bpmn.model.FlowElement;
 import org.activiti.bpmn.model.GraphicInfo;
@@ -37,12 +40,13 @@ import org.eclipse.emf.common.util.EList;
 import org.eclipse.graphiti.datatypes.ILocation;
 import org.eclipse.graphiti.features.IFeatureProvider;
 import org.eclipse.graphiti.mm.algorithms.GraphicsAlgorithm;
+import org.eclipse.graphiti.mm.pictograms.Anchor;
 import org.eclipse.graphiti.mm.pictograms.ConnectionDecorator;
+import org.eclipse.graphiti.mm.pictograms.ContainerShape;
 import org.eclipse.graphiti.mm.pictograms.Diagram;
 import org.eclipse.graphiti.mm.pictograms.FreeFormConnection;
 import org.eclipse.graphiti.mm.pictograms.PictogramElement;
 import org.eclipse.graphiti.mm.pictograms.Shape;
-import org.eclipse.graphiti.services.Graphiti;
 
 
 public class GraphitiToBpmnDI {
@@ -50,15 +54,45 @@ public class GraphitiToBpmnDI {
   protected BpmnMemoryModel model;
   protected IFeatureProvider featureProvider;
   
+  // the offset applied by the last full pass to get rid of negative positions
+  protected double changeX;
+  protected double changeY;
+  
+  // lookups for the current pass
+  protected DiagramElementIndex elementIndex;
+  
+  // the elements whose shapes have not been created yet, if any
+  protected DeferredShapes deferredShapes;
+  
   public GraphitiToBpmnDI(BpmnMemoryModel model, IFeatureProvider featureProvider) {
     this.model = model;
     this.featureProvider = featureProvider;
   }
+  
+  /**
+   * Sets the elements whose shapes have not been created yet. Their DI information is written as it
+   * was loaded, instead of being removed along with the elements.
+   */
+  public void setDeferredShapes(DeferredShapes deferredShapes) {
+    this.deferredShapes = deferredShapes;
+  }
 
   public void processGraphitiElements() throws Exception {
+    elementIndex = new DiagramElementIndex(model.getBpmnModel(), featureProvider);
+    try {
+      doProcessGraphitiElements();
+    } finally {
+      elementIndex = null;
+    }
+  }
+  
+  protected void doProcessGraphitiElements() throws Exception {
     model.getBpmnModel().getFlowLocationMap().clear();
     model.getBpmnModel().getLocationMap().clear();
     model.getBpmnModel().getLabelLocationMap().clear();
+    if (deferredShapes != null) {
+      deferredShapes.restoreGraphicInfo(model.getBpmnModel());
+    }
     List<Pool> toDeletePoolList = new ArrayList<Pool>();
     for (Pool pool : model.getBpmnModel().getPools()) {
       PictogramElement pictElementPool = featureProvider.getPictogramElementForBusinessObject(pool);
@@ -113,12 +147,12 @@ public class GraphitiToBpmnDI {
       }
     }
     
+    changeX = 0.0;
+    changeY = 0.0;
     if (minX < 0 || minY < 0) {
-      double changeX = 0.0;
       if (minX < 0.0) {
         changeX = 0.0 - minX + 1;
       }
-      double changeY = 0.0;
       if (minY < 0.0) {
         changeY = 0.0 - minY + 1;
       }
@@ -154,6 +188,179 @@ public class GraphitiToBpmnDI {
     }
   }
   
+  /**
+   * Recalculates the DI information of the provided pictogram elements only, instead of all elements
+   * in the diagram. Shapes contained in a changed container and connections attached to a changed
+   * shape are recalculated as well. This is only valid if the structure of the diagram did not change
+   * since the last full pass of {@link #processGraphitiElements()}.
+   * 
+   * @param changedElements the pictogram elements that changed since the last pass
+   * @return false if a full pass is needed, because the DI information could not be kept consistent
+   */
+  public boolean processChangedElements(Collection<PictogramElement> changedElements) throws Exception {
+    elementIndex = new DiagramElementIndex(model.getBpmnModel(), featureProvider);
+    try {
+      return doProcessChangedElements(changedElements);
+    } finally {
+      elementIndex = null;
+    }
+  }
+  
+  protected boolean doProcessChangedElements(Collection<PictogramElement> changedElements) throws Exception {
+    if (deferredShapes != null) {
+      for (BaseElement connection : deferredShapes.getConnections()) {
+        if (isConnected(connection) == false) {
+          // only a full pass removes connections that lost one of their ends
+          return false;
+        }
+      }
+    }
+    
+    final Set<PictogramElement> affectedElements = new HashSet<PictogramElement>();
+    for (PictogramElement changedElement : changedElements) {
+      collectAffectedElements(changedElement, affectedElements);
+    }
+    
+    for (PictogramElement pictElement : affectedElements) {
+      Object businessObject = featureProvider.getBusinessObjectForPictogramElement(pictElement);
+      if (businessObject instanceof BaseElement == false) {
+        continue;
+      }
+      
+      String id = ((BaseElement) businessObject).getId();
+      if (businessObject instanceof SequenceFlow || businessObject instanceof MessageFlow || businessObject instanceof Association) {
+        model.getBpmnModel().removeLabelGraphicInfo(id);
+        if (businessObject instanceof SequenceFlow) {
+          updateSequenceFlow((SequenceFlow) businessObject);
+        } else if (businessObject instanceof MessageFlow) {
+          updateMessageFlow((MessageFlow) businessObject);
+        } else {
+          updateAssociation((Association) businessObject);
+        }
+        
+        if (applyChange(model.getBpmnModel().getFlowLocationGraphicInfo(id)) == false 
+            || applyChange(model.getBpmnModel().getLabelGraphicInfo(id)) == false) {
+          return false;
+        }
+        
+      } else {
+        updateFlowElement((BaseElement) businessObject);
+        if (applyChange(model.getBpmnModel().getGraphicInfo(id)) == false) {
+          return false;
+        }
+      }
+    }
+    
+    return isDIConsistent();
+  }
+  
+  /**
+   * Adds the element, the shapes it contains and the connections attached to these shapes to the
+   * result.
+   */
+  protected void collectAffectedElements(PictogramElement pictElement, Set<PictogramElement> result) {
+    if (pictElement instanceof Diagram || result.add(pictElement) == false) {
+      return;
+    }
+    
+    if (pictElement instanceof Shape) {
+      for (Anchor anchor : ((Shape) pictElement).getAnchors()) {
+        result.addAll(anchor.getIncomingConnections());
+        result.addAll(anchor.getOutgoingConnections());
+      }
+    }
+    
+    if (pictElement instanceof ContainerShape) {
+      for (Shape child : ((ContainerShape) pictElement).getChildren()) {
+        collectAffectedElements(child, result);
+      }
+    }
+  }
+  
+  protected boolean applyChange(List<GraphicInfo> graphicInfoList) {
+    if (graphicInfoList != null) {
+      for (GraphicInfo graphicInfo : graphicInfoList) {
+        if (applyChange(graphicInfo) == false) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+  
+  /**
+   * Moves a recalculated graphic info by the offset of the last full pass.
+   * 
+   * @return false if the graphic info would still have a negative position
+   */
+  protected boolean applyChange(GraphicInfo graphicInfo) {
+    if (graphicInfo == null) {
+      return true;
+    }
+    
+    graphicInfo.setX(graphicInfo.getX() + changeX);
+    graphicInfo.setY(graphicInfo.getY() + changeY);
+    return graphicInfo.getX() >= 0 && graphicInfo.getY() >= 0;
+  }
+  
+  /**
+   * Checks that every element of the model has DI information and removes DI information of
+   * elements that no longer exist, for example because their id was changed.
+   */
+  protected boolean isDIConsistent() {
+    final BpmnModel bpmnModel = model.getBpmnModel();
+    final Set<String> shapeIds = new HashSet<String>();
+    final Set<String> flowIds = new HashSet<String>();
+    
+    for (Pool pool : bpmnModel.getPools()) {
+      shapeIds.add(pool.getId());
+    }
+    for (MessageFlow messageFlow : bpmnModel.getMessageFlows().values()) {
+      flowIds.add(messageFlow.getId());
+    }
+    for (Process process : bpmnModel.getProcesses()) {
+      for (Lane lane : process.getLanes()) {
+        shapeIds.add(lane.getId());
+      }
+      collectElementIds(process.getFlowElements(), process.getArtifacts(), shapeIds, flowIds);
+    }
+    
+    if (bpmnModel.getLocationMap().keySet().containsAll(shapeIds) == false 
+        || bpmnModel.getFlowLocationMap().keySet().containsAll(flowIds) == false) {
+      return false;
+    }
+    
+    bpmnModel.getLocationMap().keySet().retainAll(shapeIds);
+    bpmnModel.getFlowLocationMap().keySet().retainAll(flowIds);
+    bpmnModel.getLabelLocationMap().keySet().retainAll(flowIds);
+    return true;
+  }
+  
+  protected void collectElementIds(Collection<FlowElement> flowElements, Collection<Artifact> artifacts, 
+      Set<String> shapeIds, Set<String> flowIds) {
+    
+    for (FlowElement flowElement : flowElements) {
+      if (flowElement instanceof SequenceFlow) {
+        flowIds.add(flowElement.getId());
+      } else if (flowElement instanceof DataObject == false) {
+        shapeIds.add(flowElement.getId());
+      }
+      
+      if (flowElement instanceof SubProcess) {
+        SubProcess subProcess = (SubProcess) flowElement;
+        collectElementIds(subProcess.getFlowElements(), subProcess.getArtifacts(), shapeIds, flowIds);
+      }
+    }
+    
+    for (Artifact artifact : artifacts) {
+      if (artifact instanceof Association) {
+        flowIds.add(artifact.getId());
+      } else {
+        shapeIds.add(artifact.getId());
+      }
+    }
+  }
+  
   protected void loopThroughElements(Collection<? extends BaseElement> elementList, BaseElement parentElement) throws Exception {
     
     List<BaseElement> toDeleteElementList = new ArrayList<BaseElement>();
@@ -184,6 +391,13 @@ public class GraphitiToBpmnDI {
             updateFlowElement(element);
           }
         }
+      } else if (deferredShapes != null && deferredShapes.isDeferred(element.getId())) {
+        // the shape has not been created yet, so the DI information is kept as it was loaded,
+        // unless the connection lost one of its ends in the meantime
+        if (isConnected(element) == false) {
+          deferredShapes.discardConnection(element);
+          toDeleteElementList.add(element);
+        }
       } else {
     	  // no pictogram exist so delete it from the model as well
     	  // except for Data Objects
@@ -214,11 +428,22 @@ public class GraphitiToBpmnDI {
     }
   }
   
+  protected boolean isConnected(BaseElement element) {
+    if (element instanceof SequenceFlow) {
+      SequenceFlow sequenceFlow = (SequenceFlow) element;
+      return elementIndex.getFlowElement(sequenceFlow.getSourceRef()) != null && elementIndex.getFlowElement(sequenceFlow.getTargetRef()) != null;
+    } else if (element instanceof Association) {
+      Association association = (Association) element;
+      return elementIndex.getElement(association.getSourceRef()) != null && elementIndex.getElement(association.getTargetRef()) != null;
+    }
+    return true;
+  }
+  
   protected void updateFlowElement(BaseElement flowElement) {
     PictogramElement picElement = featureProvider.getPictogramElementForBusinessObject(flowElement);
     if (picElement instanceof Shape) {
       Shape shape = (Shape) picElement;
-      ILocation shapeLocation = Graphiti.getLayoutService().getLocationRelativeToDiagram(shape);
+      ILocation shapeLocation = elementIndex.getLocationRelativeToDiagram(shape);
       model.getBpmnModel().addGraphicInfo(flowElement.getId(), createGraphicInfo(shapeLocation.getX(), shapeLocation.getY(), 
               shape.getGraphicsAlgorithm().getWidth(), shape.getGraphicsAlgorithm().getHeight()));
     }
@@ -228,10 +453,10 @@ public class GraphitiToBpmnDI {
     Shape sourceShape = null;
     Shape targetShape = null;
     if (StringUtils.isNotEmpty(sequenceFlow.getSourceRef())) {
-      sourceShape = (Shape) featureProvider.getPictogramElementForBusinessObject(model.getFlowElement(sequenceFlow.getSourceRef()));
+      sourceShape = (Shape) featureProvider.getPictogramElementForBusinessObject(elementIndex.getFlowElement(sequenceFlow.getSourceRef()));
     }
     if (StringUtils.isNotEmpty(sequenceFlow.getTargetRef())) {
-      targetShape = (Shape) featureProvider.getPictogramElementForBusinessObject(model.getFlowElement(sequenceFlow.getTargetRef()));
+      targetShape = (Shape) featureProvider.getPictogramElementForBusinessObject(elementIndex.getFlowElement(sequenceFlow.getTargetRef()));
     }
    
     if (sourceShape == null || targetShape == null) {
@@ -280,10 +505,10 @@ public class GraphitiToBpmnDI {
     Shape sourceShape = null;
     Shape targetShape = null;
     if (StringUtils.isNotEmpty(messageFlow.getSourceRef())) {
-      sourceShape = (Shape) featureProvider.getPictogramElementForBusinessObject(model.getFlowElement(messageFlow.getSourceRef()));
+      sourceShape = (Shape) featureProvider.getPictogramElementForBusinessObject(elementIndex.getFlowElement(messageFlow.getSourceRef()));
     }
     if (StringUtils.isNotEmpty(messageFlow.getTargetRef())) {
-      targetShape = (Shape) featureProvider.getPictogramElementForBusinessObject(model.getFlowElement(messageFlow.getTargetRef()));
+      targetShape = (Shape) featureProvider.getPictogramElementForBusinessObject(elementIndex.getFlowElement(messageFlow.getTargetRef()));
     }
    
     if (sourceShape == null || targetShape == null) {
@@ -333,18 +558,10 @@ public class GraphitiToBpmnDI {
     Shape sourceShape = null;
     Shape targetShape = null;
     if (StringUtils.isNotEmpty(association.getSourceRef())) {
-      BaseElement sourceElement = model.getFlowElement(association.getSourceRef());
-      if (sourceElement == null) {
-        sourceElement = model.getArtifact(association.getSourceRef());
-      }
-      sourceShape = (Shape) featureProvider.getPictogramElementForBusinessObject(sourceElement);
+      sourceShape = (Shape) elementIndex.getPictogramElement(association.getSourceRef());
     }
     if (StringUtils.isNotEmpty(association.getTargetRef())) {
-      BaseElement targetElement = model.getFlowElement(association.getTargetRef());
-      if (targetElement == null) {
-        targetElement = model.getArtifact(association.getTargetRef());
-      }
-      targetShape = (Shape) featureProvider.getPictogramElementForBusinessObject(targetElement);
+      targetShape = (Shape) elementIndex.getPictogramElement(association.getTargetRef());
     }
    
     if (sourceShape == null || targetShape == null) {
@@ -361,7 +578,7 @@ public class GraphitiToBpmnDI {
   }
   
   protected List<GraphicInfo> createFlowGraphicInfoList(Shape sourceElement, Shape targetElement, FreeFormConnection freeFormConnection) {
-    ILocation sourceLocation = Graphiti.getLayoutService().getLocationRelativeToDiagram(sourceElement);
+    ILocation sourceLocation = elementIndex.getLocationRelativeToDiagram(sourceElement);
     int sourceX = sourceLocation.getX();
     int sourceY = sourceLocation.getY();
     int sourceWidth = sourceElement.getGraphicsAlgorithm().getWidth();
@@ -370,7 +587,7 @@ public class GraphitiToBpmnDI {
     int sourceMiddleY = sourceY + (sourceHeight / 2);
     int sourceBottomY = sourceY + sourceHeight;
     
-    ILocation targetLocation = Graphiti.getLayoutService().getLocationRelativeToDiagram(targetElement);
+    ILocation targetLocation = elementIndex.getLocationRelativeToDiagram(targetElement);
     int targetX = targetLocation.getX();
     int targetY = targetLocation.getY();
     int targetWidth = targetElement.getGraphicsAlgorithm().getWidth();
@@ -47,6 +47,8 @@ public class ImageOverlayContext {
   private final IFile modelFile;
   private final String date;
   private String revision;
+  private int canvasWidth = -1;
+  private int canvasHeight = -1;
 
   public ImageOverlayContext(final IFile modelFile) {
     super();
@@ -71,6 +73,25 @@ public class ImageOverlayContext {
     this.imageGC = imageGC;
   }
 
+  /**
+   * Returns the width of the complete image or -1 if the image GC covers the complete image.
+   */
+  public int getCanvasWidth() {
+    return canvasWidth;
+  }
+
+  /**
+   * Returns the height of the complete image or -1 if the image GC covers the complete image.
+   */
+  public int getCanvasHeight() {
+    return canvasHeight;
+  }
+
+  public void setCanvasSize(int canvasWidth, int canvasHeight) {
+    this.canvasWidth = canvasWidth;
+    this.canvasHeight = canvasHeight;
+  }
+
   public void setProcessKey(String processKey) {
     this.processKey = processKey;
   }
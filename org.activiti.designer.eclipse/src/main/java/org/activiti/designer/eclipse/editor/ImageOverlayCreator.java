@@ -15,41 +15,88 @@ package org.activiti.designer.eclipse.editor;
 
 import org.activiti.designer.util.editor.BpmnMemoryModel;
 import org.eclipse.swt.SWT;
+import org.eclipse.swt.graphics.Color;
 import org.eclipse.swt.graphics.Font;
 import org.eclipse.swt.graphics.FontData;
 import org.eclipse.swt.graphics.GC;
+import org.eclipse.swt.graphics.Point;
+import org.eclipse.swt.graphics.Rectangle;
 
 public class ImageOverlayCreator {
 
-  private final GC imageGC;
+  private GC imageGC;
+
+  private int canvasWidth = -1;
+  private int canvasHeight = -1;
+
+  private ImageOverlayContext context;
+  private ImageOverlayLayout layoutData;
 
   public ImageOverlayCreator(final GC imageGC) {
     super();
     this.imageGC = imageGC;
   }
 
-  public void addOverlay(final String modelFileName, final BpmnMemoryModel model) {
+  /**
+   * Creates a creator for an image that is painted in several parts. The overlay is positioned in
+   * the canvas of the given size; the GC of each part must be transformed to the canvas
+   * coordinates of that part.
+   */
+  public ImageOverlayCreator(final int canvasWidth, final int canvasHeight) {
+    super();
+    this.canvasWidth = canvasWidth;
+    this.canvasHeight = canvasHeight;
+  }
 
-    final String processName = model.getBpmnModel().getMainProcess().getName();
-    final String processKey = model.getBpmnModel().getMainProcess().getId();
-    final String processNamespace = model.getBpmnModel().getTargetNamespace();
+  public void setImageGC(final GC imageGC) {
+    this.imageGC = imageGC;
+  }
 
-    final ImageOverlayContext context = new ImageOverlayContext(model.getModelFile());
-    context.setImageGC(imageGC);
-    context.setProcessName(processName);
-    context.setProcessKey(processKey);
-    context.setProcessNamespace(processNamespace);
+  public void addOverlay(final String modelFileName, final BpmnMemoryModel model) {
 
-    final ImageOverlayLayout layoutData = new ImageOverlayLayout(context);
+    if (context == null) {
+      final String processName = model.getBpmnModel().getMainProcess().getName();
+      final String processKey = model.getBpmnModel().getMainProcess().getId();
+      final String processNamespace = model.getBpmnModel().getTargetNamespace();
+
+      context = new ImageOverlayContext(model.getModelFile());
+      context.setImageGC(imageGC);
+      context.setCanvasSize(canvasWidth, canvasHeight);
+      context.setProcessName(processName);
+      context.setProcessKey(processKey);
+      context.setProcessNamespace(processNamespace);
+
+      layoutData = new ImageOverlayLayout(context);
+    } else {
+      // the layout is reused for the other parts of the image
+      context.setImageGC(imageGC);
+    }
 
     drawOverlay(context, layoutData);
   }
+
+  /**
+   * Returns the bounds of the overlay in the canvas, or null if it has not been drawn yet.
+   */
+  public Rectangle getOverlayBounds() {
+    if (layoutData == null) {
+      return null;
+    }
+    final Point topLeft = layoutData.getTopLeft();
+    final Point bottomRight = layoutData.getBottomRight();
+    return new Rectangle(topLeft.x, topLeft.y, bottomRight.x - topLeft.x, bottomRight.y - topLeft.y);
+  }
+
   private void drawOverlay(final ImageOverlayContext context, final ImageOverlayLayout layoutData) {
 
     imageGC.setLineWidth(2);
 
-    imageGC.setForeground(layoutData.getBorderColor());
-    imageGC.setBackground(layoutData.getBackgroundColor());
+    final Color borderColor = layoutData.getBorderColor();
+    final Color backgroundColor = layoutData.getBackgroundColor();
+    final Color textColor = layoutData.getTextColor();
+
+    imageGC.setForeground(borderColor);
+    imageGC.setBackground(backgroundColor);
 
     final int rectTopX = layoutData.getTopLeft().x;
     final int rectTopY = layoutData.getTopLeft().y;
@@ -61,7 +108,7 @@ public class ImageOverlayCreator {
     imageGC.drawRoundRectangle(layoutData.getTopLeft().x, layoutData.getTopLeft().y, layoutData.getBottomRight().x - layoutData.getTopLeft().x,
             layoutData.getBottomRight().y - layoutData.getTopLeft().y, 5, 5);
 
-    imageGC.setForeground(layoutData.getTextColor());
+    imageGC.setForeground(textColor);
 
     final Font originalFont = imageGC.getFont();
     final Font boldFont = createBoldFont(originalFont);
@@ -102,7 +149,11 @@ public class ImageOverlayCreator {
 
     yPos = yPos - layoutData.getTextLineMargin();
 
+    imageGC.setFont(originalFont);
     boldFont.dispose();
+    borderColor.dispose();
+    backgroundColor.dispose();
+    textColor.dispose();
   }
 
   private Font createBoldFont(Font originalFont) {
@@ -86,8 +86,12 @@ public class ImageOverlayLayout {
   }
   private void determineCornerPoints(int maxWidth, int totalHeight) {
 
-    final int canvasWidth = context.getImageGC().getClipping().width;
-    final int canvasHeight = context.getImageGC().getClipping().height;
+    int canvasWidth = context.getCanvasWidth();
+    int canvasHeight = context.getCanvasHeight();
+    if (canvasWidth < 0 || canvasHeight < 0) {
+      canvasWidth = context.getImageGC().getClipping().width;
+      canvasHeight = context.getImageGC().getClipping().height;
+    }
 
     final int width = BOX_MARGIN * 2 + BOX_PADDING * 2 + maxWidth;
     final int height = BOX_MARGIN * 2 + BOX_PADDING * 2 + totalHeight;
@@ -0,0 +1,149 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.activiti.designer.eclipse.editor;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Writes an RGB PNG image row by row, so the complete image never has to be held in memory. The
+ * compressed image data is written in chunks of bounded size as soon as it becomes available.
+ */
+public class PngStreamWriter {
+
+  private static final byte[] SIGNATURE = new byte[] { (byte) 137, 80, 78, 71, 13, 10, 26, 10 };
+
+  private static final int MAX_CHUNK_SIZE = 64 * 1024;
+
+  /** Each byte is stored as the difference with the same byte of the pixel to the left. */
+  private static final int FILTER_SUB = 1;
+
+  private static final int BYTES_PER_PIXEL = 3;
+
+  private final DataOutputStream out;
+  private final int width;
+  private final int height;
+  private final Deflater deflater;
+  private final DeflaterOutputStream imageData;
+  private final byte[] filteredRow;
+
+  private int rowsWritten;
+
+  /**
+   * Writes the PNG header for an image of the given size to the stream.
+   */
+  public PngStreamWriter(final OutputStream out, final int width, final int height) throws IOException {
+    this.out = new DataOutputStream(out);
+    this.width = width;
+    this.height = height;
+    this.deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+    this.imageData = new DeflaterOutputStream(new ChunkOutputStream(), deflater, MAX_CHUNK_SIZE);
+    this.filteredRow = new byte[width * BYTES_PER_PIXEL + 1];
+
+    this.out.write(SIGNATURE);
+
+    final ByteArrayOutputStream header = new ByteArrayOutputStream(13);
+    final DataOutputStream headerData = new DataOutputStream(header);
+    headerData.writeInt(width);
+    headerData.writeInt(height);
+    headerData.writeByte(8); // bit depth
+    headerData.writeByte(2); // color type RGB
+    headerData.writeByte(0); // compression
+    headerData.writeByte(0); // filter
+    headerData.writeByte(0); // no interlace
+    writeChunk("IHDR", header.toByteArray(), header.size());
+  }
+
+  /**
+   * Writes the next row of the image.
+   *
+   * @param rgb
+   *          the red, green and blue values of the pixels in the row
+   * @param offset
+   *          the position of the first value of the row in the array
+   */
+  public void writeRow(final byte[] rgb, final int offset) throws IOException {
+    if (rowsWritten == height) {
+      throw new IOException("All " + height + " rows of the image have been written");
+    }
+
+    filteredRow[0] = FILTER_SUB;
+    final int rowLength = width * BYTES_PER_PIXEL;
+    for (int i = 0; i < rowLength; i++) {
+      final int left = i < BYTES_PER_PIXEL ? 0 : rgb[offset + i - BYTES_PER_PIXEL];
+      filteredRow[i + 1] = (byte) (rgb[offset + i] - left);
+    }
+    imageData.write(filteredRow);
+    rowsWritten++;
+  }
+
+  /**
+   * Writes the remaining image data and the end of the image. The underlying stream is not closed.
+   */
+  public void finish() throws IOException {
+    if (rowsWritten != height) {
+      throw new IOException("Only " + rowsWritten + " of " + height + " rows of the image have been written");
+    }
+    try {
+      imageData.finish();
+      writeChunk("IEND", new byte[0], 0);
+      out.flush();
+    } finally {
+      deflater.end();
+    }
+  }
+
+  private void writeChunk(final String type, final byte[] data, final int length) throws IOException {
+    final byte[] typeBytes = type.getBytes("US-ASCII");
+    final CRC32 crc = new CRC32();
+    crc.update(typeBytes);
+    crc.update(data, 0, length);
+
+    out.writeInt(length);
+    out.write(typeBytes);
+    out.write(data, 0, length);
+    out.writeInt((int) crc.getValue());
+  }
+
+  /**
+   * Writes everything written to it as IDAT chunks.
+   */
+  private class ChunkOutputStream extends OutputStream {
+
+    @Override
+    public void write(final int b) throws IOException {
+      write(new byte[] { (byte) b }, 0, 1);
+    }
+
+    @Override
+    public void write(final byte[] b, final int off, final int len) throws IOException {
+      int position = off;
+      int remaining = len;
+      while (remaining > 0) {
+        final int chunkLength = Math.min(remaining, MAX_CHUNK_SIZE);
+        final byte[] chunk = new byte[chunkLength];
+        System.arraycopy(b, position, chunk, 0, chunkLength);
+        writeChunk("IDAT", chunk, chunkLength);
+        position += chunkLength;
+        remaining -= chunkLength;
+      }
+    }
+  }
+
+}
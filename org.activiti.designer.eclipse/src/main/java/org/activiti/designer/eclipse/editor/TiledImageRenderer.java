@@ -0,0 +1,195 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.activiti.designer.eclipse.editor;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.activiti.designer.util.editor.BpmnMemoryModel;
+import org.eclipse.draw2d.IFigure;
+import org.eclipse.draw2d.SWTGraphics;
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.graphics.GC;
+import org.eclipse.swt.graphics.Image;
+import org.eclipse.swt.graphics.ImageData;
+import org.eclipse.swt.graphics.PaletteData;
+import org.eclipse.swt.graphics.RGB;
+import org.eclipse.swt.graphics.Rectangle;
+import org.eclipse.swt.graphics.Transform;
+import org.eclipse.swt.widgets.Display;
+
+/**
+ * Renders a figure to a PNG file in tiles of a fixed size. Only one tile image and one band of rows
+ * are held in memory at any time; the rows of each band are written to the file as soon as all
+ * tiles of the band have been painted. The image can optionally be scaled down, so its width and
+ * height don't exceed a maximum size. Must be used from the UI thread.
+ */
+public class TiledImageRenderer {
+
+  private static final int TILE_SIZE = 512;
+
+  private final IFigure figure;
+  private final int imageWidth;
+  private final int imageHeight;
+  private final double scale;
+
+  private String overlayModelFileName;
+  private BpmnMemoryModel overlayModel;
+
+  /**
+   * @param figure
+   *          the figure to paint
+   * @param maxSize
+   *          the maximum width and height of the image in pixels, or 0 to render the figure at its
+   *          actual size
+   */
+  public TiledImageRenderer(final IFigure figure, final int maxSize) {
+    this.figure = figure;
+
+    final org.eclipse.draw2d.geometry.Rectangle bounds = figure.getBounds();
+    double imageScale = 1.0;
+    if (maxSize > 0 && (bounds.width > maxSize || bounds.height > maxSize)) {
+      imageScale = Math.min((double) maxSize / bounds.width, (double) maxSize / bounds.height);
+    }
+    this.scale = imageScale;
+    this.imageWidth = Math.max(1, (int) Math.ceil(bounds.width * scale));
+    this.imageHeight = Math.max(1, (int) Math.ceil(bounds.height * scale));
+  }
+
+  /**
+   * Adds the process information overlay to the image.
+   */
+  public void setOverlay(final String modelFileName, final BpmnMemoryModel model) {
+    this.overlayModelFileName = modelFileName;
+    this.overlayModel = model;
+  }
+
+  public void render(final File imageFile) throws IOException {
+    final OutputStream outStream = new BufferedOutputStream(new FileOutputStream(imageFile));
+    try {
+      render(outStream);
+    } finally {
+      outStream.close();
+    }
+  }
+
+  public void render(final OutputStream outStream) throws IOException {
+    final Display display = Display.getDefault();
+    final PngStreamWriter pngWriter = new PngStreamWriter(outStream, imageWidth, imageHeight);
+    final ImageOverlayCreator overlayCreator = overlayModel != null ? new ImageOverlayCreator(imageWidth, imageHeight) : null;
+
+    final int rowLength = imageWidth * 3;
+    final byte[] band = new byte[rowLength * Math.min(TILE_SIZE, imageHeight)];
+
+    final Image tileImage = new Image(display, TILE_SIZE, TILE_SIZE);
+    try {
+      for (int bandY = 0; bandY < imageHeight; bandY += TILE_SIZE) {
+        final int bandHeight = Math.min(TILE_SIZE, imageHeight - bandY);
+
+        for (int tileX = 0; tileX < imageWidth; tileX += TILE_SIZE) {
+          final int tileWidth = Math.min(TILE_SIZE, imageWidth - tileX);
+
+          paintTile(display, tileImage, tileX, bandY, overlayCreator);
+          copyTile(tileImage.getImageData(), tileWidth, bandHeight, band, tileX, rowLength);
+        }
+
+        for (int row = 0; row < bandHeight; row++) {
+          pngWriter.writeRow(band, row * rowLength);
+        }
+      }
+      pngWriter.finish();
+
+    } finally {
+      tileImage.dispose();
+    }
+  }
+
+  private void paintTile(final Display display, final Image tileImage, final int tileX, final int tileY,
+          final ImageOverlayCreator overlayCreator) {
+
+    final GC tileGC = new GC(tileImage);
+    try {
+      tileGC.setBackground(display.getSystemColor(SWT.COLOR_WHITE));
+      tileGC.fillRectangle(0, 0, TILE_SIZE, TILE_SIZE);
+
+      if (overlayCreator != null && intersectsOverlay(overlayCreator, tileX, tileY)) {
+        // the overlay is positioned in image coordinates and isn't scaled
+        final Transform transform = new Transform(display);
+        transform.translate(-tileX, -tileY);
+        tileGC.setTransform(transform);
+        overlayCreator.setImageGC(tileGC);
+        overlayCreator.addOverlay(overlayModelFileName, overlayModel);
+        tileGC.setTransform(null);
+        transform.dispose();
+      }
+
+      final SWTGraphics graphics = new SWTGraphics(tileGC);
+      try {
+        if (scale != 1.0) {
+          graphics.scale(scale);
+          graphics.translate((float) (-tileX / scale), (float) (-tileY / scale));
+        } else {
+          graphics.translate(-tileX, -tileY);
+        }
+        figure.paint(graphics);
+      } finally {
+        graphics.dispose();
+      }
+    } finally {
+      tileGC.dispose();
+    }
+  }
+
+  private boolean intersectsOverlay(final ImageOverlayCreator overlayCreator, final int tileX, final int tileY) {
+    final Rectangle overlayBounds = overlayCreator.getOverlayBounds();
+    // the bounds are only known once the overlay has been drawn on the first tile
+    return overlayBounds == null || overlayBounds.intersects(tileX, tileY, TILE_SIZE, TILE_SIZE);
+  }
+
+  /**
+   * Copies the RGB values of the painted part of the tile into the band.
+   */
+  private void copyTile(final ImageData tileData, final int tileWidth, final int tileHeight, final byte[] band,
+          final int tileX, final int rowLength) {
+
+    final PaletteData palette = tileData.palette;
+    final int[] pixels = new int[tileWidth];
+
+    for (int y = 0; y < tileHeight; y++) {
+      tileData.getPixels(0, y, tileWidth, pixels, 0);
+      int position = y * rowLength + tileX * 3;
+      for (int x = 0; x < tileWidth; x++) {
+        final int pixel = pixels[x];
+        if (palette.isDirect) {
+          band[position++] = (byte) shift(pixel & palette.redMask, palette.redShift);
+          band[position++] = (byte) shift(pixel & palette.greenMask, palette.greenShift);
+          band[position++] = (byte) shift(pixel & palette.blueMask, palette.blueShift);
+        } else {
+          final RGB rgb = palette.getRGB(pixel);
+          band[position++] = (byte) rgb.red;
+          band[position++] = (byte) rgb.green;
+          band[position++] = (byte) rgb.blue;
+        }
+      }
+    }
+  }
+
+  private int shift(final int value, final int shift) {
+    return shift < 0 ? value >>> -shift : value << shift;
+  }
+
+}
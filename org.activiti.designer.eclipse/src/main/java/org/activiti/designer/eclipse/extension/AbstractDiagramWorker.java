@@ -26,12 +26,22 @@
 
 package org.activiti.designer.eclipse.extension;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.URI;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.List;
 
 import org.activiti.designer.eclipse.extension.export.ExportMarshaller;
+import org.apache.commons.io.IOUtils;
 import org.eclipse.core.resources.IContainer;
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IFolder;
@@ -56,6 +66,8 @@ public abstract class AbstractDiagramWorker {
 
   private static final String DATE_TIME_PATTERN = "yyyyMMdd-HHmmss";
 
+  private static final String CONTENT_DIGEST_ALGORITHM = "SHA-1";
+
   private static final String REGEX_DATE_TIME = "\\" + ExportMarshaller.PLACEHOLDER_DATE_TIME + "";
   private static final String REGEX_FILENAME = "\\" + ExportMarshaller.PLACEHOLDER_ORIGINAL_FILENAME + "";
   private static final String REGEX_FILENAME_WITHOUT_EXTENSION = "\\" + ExportMarshaller.PLACEHOLDER_ORIGINAL_FILENAME_WITHOUT_EXTENSION + "";
@@ -63,6 +75,9 @@ public abstract class AbstractDiagramWorker {
 
   private DiagramWorkerContext diagramWorkerContext;
 
+  // the files saved since a context was last set
+  private final List<IFile> savedResources = new ArrayList<IFile>();
+
   /**
    * Gets an {@link InputStream} to the contents of the
    * {@link DiagramWorkerContext}'s diagram resource.
@@ -219,6 +234,14 @@ public abstract class AbstractDiagramWorker {
    * To obtain a URI for the new resource you wish to create, invoke
    * {@link #getURIRelativeToDiagram(String)}.
    * 
+   * <p>
+   * If the resource already exists with exactly the same content, it is left
+   * untouched, so unchanged output doesn't trigger builders or show up as a
+   * change in version control.
+   * 
+   * <p>
+   * The content stream is closed once it has been read.
+   * 
    * @see #getURIRelativeToDiagram(String)
    * 
    * @param uri
@@ -238,23 +261,78 @@ public abstract class AbstractDiagramWorker {
     monitor.worked(2);
 
     try {
+      final ByteArrayOutputStream newContent = new ByteArrayOutputStream();
+      final byte[] newDigest = copyAndDigest(content, newContent);
+      if (file.exists() && isContentEqual(file, newContent.size(), newDigest)) {
+        savedResources.add(file);
+        monitor.done();
+        return;
+      }
+
       if (file.exists()) {
-        file.setContents(content, true, true, new SubProgressMonitor(monitor, 5));
+        file.setContents(new ByteArrayInputStream(newContent.toByteArray()), true, true, new SubProgressMonitor(monitor, 5));
       } else {
         IFolder folder = (IFolder) file.getParent();
         prepareFolder(folder);
-        file.create(content, true, new SubProgressMonitor(monitor, 5));
+        file.create(new ByteArrayInputStream(newContent.toByteArray()), true, new SubProgressMonitor(monitor, 5));
       }
-      file.refreshLocal(IResource.DEPTH_INFINITE, null);
+      // written through the workspace, so there is nothing to refresh
+      savedResources.add(file);
       monitor.worked(3);
     } catch (final CoreException e) {
       e.printStackTrace();
       addProblemToDiagram("A problem occured while saving a resource in the export marshaller: " + e.getMessage(), null);
+    } catch (final IOException e) {
+      e.printStackTrace();
+      addProblemToDiagram("A problem occured while reading a resource in the export marshaller: " + e.getMessage(), null);
+    } finally {
+      IOUtils.closeQuietly(content);
     }
 
     monitor.done();
   }
 
+  /**
+   * Checks whether the file has the content with the provided size and digest.
+   * The size is checked first, so the file is only read if it could be equal.
+   */
+  private boolean isContentEqual(final IFile file, final long size, final byte[] digest) throws CoreException, IOException {
+    if (digest == null || file.getLocation() == null || file.getLocation().toFile().length() != size) {
+      return false;
+    }
+    final InputStream existingContent = file.getContents(true);
+    try {
+      return MessageDigest.isEqual(digest, copyAndDigest(existingContent, null));
+    } finally {
+      IOUtils.closeQuietly(existingContent);
+    }
+  }
+
+  /**
+   * Reads the stream to the end, copying it to the output stream if one is
+   * provided.
+   * 
+   * @return the digest of the content or null if no digest is available
+   */
+  private byte[] copyAndDigest(final InputStream content, final OutputStream copy) throws IOException {
+    MessageDigest digest = null;
+    try {
+      digest = MessageDigest.getInstance(CONTENT_DIGEST_ALGORITHM);
+    } catch (NoSuchAlgorithmException e) {
+      // no digest available, so the content is always written
+    }
+
+    final InputStream input = digest != null ? new DigestInputStream(content, digest) : content;
+    final byte[] buffer = new byte[8192];
+    int read;
+    while ((read = input.read(buffer)) != -1) {
+      if (copy != null) {
+        copy.write(buffer, 0, read);
+      }
+    }
+    return digest != null ? digest.digest() : null;
+  }
+
   private void prepareFolder(final IFolder folder) throws CoreException {
     final IContainer parent = folder.getParent();
     if (parent instanceof IFolder) {
@@ -296,21 +374,31 @@ public abstract class AbstractDiagramWorker {
     IMarker m;
     try {
       m = resource.createMarker(markerId);
-      if (nodeId != null) {
-        m.setAttribute(ATTRIBUTE_NODE_ID, nodeId);
-      }
-
-      m.setAttribute(ATTRIBUTE_WORKER_ID, this.getClass().getCanonicalName());
-
-      m.setAttribute(IMarker.MESSAGE, message);
-      m.setAttribute(IMarker.PRIORITY, IMarker.PRIORITY_HIGH);
-      m.setAttribute(IMarker.SEVERITY, severity);
+      // all attributes at once, so there is a single change to the marker
+      m.setAttributes(new String[] { ATTRIBUTE_NODE_ID, ATTRIBUTE_WORKER_ID, IMarker.MESSAGE, IMarker.PRIORITY, IMarker.SEVERITY },
+              new Object[] { nodeId, getWorkerId(), message, IMarker.PRIORITY_HIGH, severity });
     } catch (CoreException e) {
       e.printStackTrace();
     }
 
   }
 
+  /**
+   * Creates a batch for the markers of this diagram worker. Use a batch
+   * instead of the add*ToDiagram methods when reporting many markers at once,
+   * typically to replace the markers of a previous run: applying the batch only
+   * touches the markers that changed and reports a single resource change.
+   * 
+   * @return a new, empty batch
+   */
+  protected DiagramMarkerBatch createMarkerBatch() {
+    return new DiagramMarkerBatch(getMarkerId(), getWorkerId());
+  }
+
+  private String getWorkerId() {
+    return this.getClass().getCanonicalName();
+  }
+
   /**
    * Gets the id to be used for markers created by this diagram worker.
    * 
@@ -341,11 +429,16 @@ public abstract class AbstractDiagramWorker {
   protected void clearMarkers(final IResource resource) {
     try {
       final IMarker[] markers = resource.findMarkers(getMarkerId(), true, IResource.DEPTH_INFINITE);
+      final List<IMarker> workerMarkers = new ArrayList<IMarker>();
       for (final IMarker marker : markers) {
-        if (marker.getAttribute(ATTRIBUTE_WORKER_ID).equals(this.getClass().getCanonicalName())) {
-          marker.delete();
+        if (getWorkerId().equals(marker.getAttribute(ATTRIBUTE_WORKER_ID, null))) {
+          workerMarkers.add(marker);
         }
       }
+      if (!workerMarkers.isEmpty()) {
+        // deleted at once, so there is a single resource change
+        ResourcesPlugin.getWorkspace().deleteMarkers(workerMarkers.toArray(new IMarker[workerMarkers.size()]));
+      }
     } catch (CoreException e) {
       e.printStackTrace();
     }
@@ -392,6 +485,20 @@ public abstract class AbstractDiagramWorker {
 
   protected void setDiagramWorkerContext(DiagramWorkerContext diagramWorkerContext) {
     this.diagramWorkerContext = diagramWorkerContext;
+    if (diagramWorkerContext != null) {
+      savedResources.clear();
+    }
+  }
+
+  /**
+   * Gets the files saved using {@link #saveResource(URI, InputStream, IProgressMonitor)}
+   * while working with the last context, including those that were left
+   * untouched because their content was unchanged.
+   * 
+   * @return the saved files
+   */
+  public List<IFile> getSavedResources() {
+    return new ArrayList<IFile>(savedResources);
   }
 
 }
@@ -0,0 +1,182 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.activiti.designer.eclipse.extension;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.core.resources.IMarker;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IWorkspace;
+import org.eclipse.core.resources.IWorkspaceRunnable;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+
+/**
+ * Collects the markers of a diagram worker so they can be applied to a resource at once. Applying
+ * the batch compares it to the markers the worker created before: markers that are still reported
+ * are left alone, markers that aren't are deleted and new ones are created with all of their
+ * attributes at once. Everything happens in a single workspace operation, so only one resource
+ * change is reported, however many markers there are.
+ *
+ * <p>
+ * Obtain a batch using {@link AbstractDiagramWorker#createMarkerBatch()}.
+ */
+public class DiagramMarkerBatch {
+
+  private static final String[] ATTRIBUTE_NAMES = new String[] { AbstractDiagramWorker.ATTRIBUTE_WORKER_ID, IMarker.MESSAGE,
+      IMarker.PRIORITY, IMarker.SEVERITY, AbstractDiagramWorker.ATTRIBUTE_NODE_ID };
+
+  private final String markerId;
+  private final String workerId;
+  private final List<Finding> findings = new ArrayList<Finding>();
+
+  public DiagramMarkerBatch(final String markerId, final String workerId) {
+    this.markerId = markerId;
+    this.workerId = workerId;
+  }
+
+  /**
+   * Adds a marker with the provided severity to the batch.
+   *
+   * @param nodeId
+   *          the ID of the node the marker is about or null if it's about the diagram
+   * @param severity
+   *          one of the {@link IMarker} severities
+   */
+  public void add(final String message, final String nodeId, final int severity) {
+    findings.add(new Finding(message, nodeId, severity));
+  }
+
+  public void addInfo(final String message, final String nodeId) {
+    add(message, nodeId, IMarker.SEVERITY_INFO);
+  }
+
+  public void addWarning(final String message, final String nodeId) {
+    add(message, nodeId, IMarker.SEVERITY_WARNING);
+  }
+
+  public void addProblem(final String message, final String nodeId) {
+    add(message, nodeId, IMarker.SEVERITY_ERROR);
+  }
+
+  public boolean hasProblems() {
+    for (final Finding finding : findings) {
+      if (finding.severity == IMarker.SEVERITY_ERROR) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Makes the markers of the worker on the resource match the batch.
+   *
+   * @param nodeIds
+   *          the IDs of the nodes whose markers are replaced, or null to replace all markers of the
+   *          worker. Markers of other nodes are kept, whether they are in the batch or not.
+   */
+  public void apply(final IResource resource, final Set<String> nodeIds, final IProgressMonitor monitor) throws CoreException {
+    final IWorkspace workspace = ResourcesPlugin.getWorkspace();
+    workspace.run(new IWorkspaceRunnable() {
+
+      @Override
+      public void run(final IProgressMonitor runMonitor) throws CoreException {
+        // the findings still to create, with the number of times each was reported
+        final Map<Finding, Integer> remaining = new HashMap<Finding, Integer>();
+        for (final Finding finding : findings) {
+          final Integer count = remaining.get(finding);
+          remaining.put(finding, count == null ? 1 : count + 1);
+        }
+
+        final List<IMarker> obsoleteMarkers = new ArrayList<IMarker>();
+        for (final IMarker marker : resource.findMarkers(markerId, true, IResource.DEPTH_INFINITE)) {
+          if (!workerId.equals(marker.getAttribute(AbstractDiagramWorker.ATTRIBUTE_WORKER_ID, null))) {
+            continue;
+          }
+          final String nodeId = marker.getAttribute(AbstractDiagramWorker.ATTRIBUTE_NODE_ID, null);
+          if (nodeIds != null && !nodeIds.contains(nodeId)) {
+            continue;
+          }
+
+          final Finding existing = new Finding(marker.getAttribute(IMarker.MESSAGE, null), nodeId, marker.getAttribute(
+                  IMarker.SEVERITY, -1));
+          final Integer count = remaining.get(existing);
+          if (count == null) {
+            obsoleteMarkers.add(marker);
+          } else if (count == 1) {
+            remaining.remove(existing);
+          } else {
+            remaining.put(existing, count - 1);
+          }
+        }
+
+        if (!obsoleteMarkers.isEmpty()) {
+          workspace.deleteMarkers(obsoleteMarkers.toArray(new IMarker[obsoleteMarkers.size()]));
+        }
+
+        // create the new markers in the order they were reported
+        for (final Finding finding : findings) {
+          final Integer count = remaining.get(finding);
+          if (count == null) {
+            continue;
+          }
+          if (count == 1) {
+            remaining.remove(finding);
+          } else {
+            remaining.put(finding, count - 1);
+          }
+          final IMarker marker = resource.createMarker(markerId);
+          marker.setAttributes(ATTRIBUTE_NAMES, new Object[] { workerId, finding.message, IMarker.PRIORITY_HIGH,
+              finding.severity, finding.nodeId });
+        }
+      }
+    }, workspace.getRuleFactory().markerRule(resource), IWorkspace.AVOID_UPDATE, monitor);
+  }
+
+  private static class Finding {
+
+    private final String message;
+    private final String nodeId;
+    private final int severity;
+
+    public Finding(final String message, final String nodeId, final int severity) {
+      this.message = message;
+      this.nodeId = nodeId;
+      this.severity = severity;
+    }
+
+    @Override
+    public boolean equals(final Object object) {
+      if (!(object instanceof Finding)) {
+        return false;
+      }
+      final Finding other = (Finding) object;
+      return severity == other.severity && equals(message, other.message) && equals(nodeId, other.nodeId);
+    }
+
+    private static boolean equals(final String first, final String second) {
+      return first == null ? second == null : first.equals(second);
+    }
+
+    @Override
+    public int hashCode() {
+      return (severity * 31 + (message == null ? 0 : message.hashCode())) * 31 + (nodeId == null ? 0 : nodeId.hashCode());
+    }
+  }
+}
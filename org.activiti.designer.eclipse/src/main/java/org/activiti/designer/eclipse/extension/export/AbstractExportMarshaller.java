@@ -20,6 +20,7 @@ import java.util.ArrayList;
 import java.util.List;
 
 import org.activiti.designer.eclipse.extension.AbstractDiagramWorker;
+import org.activiti.designer.eclipse.extension.validation.AbstractProcessValidator;
 import org.activiti.designer.eclipse.extension.validation.ProcessValidator;
 import org.activiti.designer.eclipse.util.ExtensionPointUtil;
 import org.eclipse.core.runtime.IProgressMonitor;
@@ -42,7 +43,12 @@ public abstract class AbstractExportMarshaller extends AbstractDiagramWorker imp
   @Override
   public void marshallDiagram(final ExportMarshallerContext context) {
     super.setDiagramWorkerContext(context);
-    doMarshallDiagram();
+    try {
+      doMarshallDiagram();
+    } finally {
+      // the marshaller is shared, so it mustn't hold on to the model of the run
+      super.setDiagramWorkerContext(null);
+    }
   }
 
   protected abstract void doMarshallDiagram();
@@ -82,10 +88,22 @@ public abstract class AbstractExportMarshaller extends AbstractDiagramWorker imp
 
             monitor.subTask("Invoking " + processValidator.getValidatorName());
 
-            if (!(processValidator.validateDiagram(diagram, new SubProgressMonitor(activeMonitor, WORK_INVOKE_VALIDATORS_VALIDATOR)))) {
-              // don't break if one result is false: keep validating to get
-              // all of the problems
-              overallResult = false;
+            // the validator instance is shared and keeps the context of the
+            // diagram it validates, so it can only validate one at a time
+            synchronized (processValidator) {
+              final IProgressMonitor validatorMonitor = new SubProgressMonitor(activeMonitor, WORK_INVOKE_VALIDATORS_VALIDATOR);
+              final boolean valid;
+              if (processValidator instanceof AbstractProcessValidator) {
+                // validate the model this marshaller works on
+                valid = ((AbstractProcessValidator) processValidator).validateDiagram(getDiagramWorkerContext(), diagram, validatorMonitor);
+              } else {
+                valid = processValidator.validateDiagram(diagram, validatorMonitor);
+              }
+              if (!valid) {
+                // don't break if one result is false: keep validating to get
+                // all of the problems
+                overallResult = false;
+              }
             }
           }
         }
@@ -0,0 +1,32 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.activiti.designer.eclipse.extension.export;
+
+/**
+ * Marks an {@link ExportMarshaller} whose output depends on nothing but the
+ * model of the diagram. Such a marshaller is not invoked again when a diagram
+ * is saved with the same model as the last time it was invoked for that
+ * diagram during the session, as long as the files it saved then still exist.
+ * Only the files saved through
+ * {@link org.activiti.designer.eclipse.extension.AbstractDiagramWorker} are
+ * known, so marshallers that don't extend it are always invoked.
+ *
+ * <p>
+ * Marshallers that also depend on anything else, such as the time of the
+ * export, other files or preferences, should not implement this interface.
+ *
+ */
+public interface ModelOnlyExportMarshaller extends ExportMarshaller {
+
+}
@@ -17,6 +17,9 @@
 package org.activiti.designer.eclipse.extension.validation;
 
 import org.activiti.designer.eclipse.extension.AbstractDiagramWorker;
+import org.activiti.designer.eclipse.extension.DiagramWorkerContext;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.graphiti.mm.pictograms.Diagram;
 
 /**
  * Base class for {@link ProcessValidator} implementations.
@@ -31,4 +34,18 @@ public abstract class AbstractProcessValidator extends AbstractDiagramWorker imp
     return ProcessValidator.MARKER_ID;
   }
 
+  /**
+   * Validates the diagram in the provided context, typically the context of the export marshaller
+   * that invokes the validator. The context is only set while validating, so the validator never
+   * holds on to the model of a previous run.
+   */
+  public boolean validateDiagram(final DiagramWorkerContext context, final Diagram diagram, final IProgressMonitor monitor) {
+    setDiagramWorkerContext(context);
+    try {
+      return validateDiagram(diagram, monitor);
+    } finally {
+      setDiagramWorkerContext(null);
+    }
+  }
+
 }
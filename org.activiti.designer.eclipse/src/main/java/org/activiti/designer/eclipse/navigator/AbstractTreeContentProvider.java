@@ -26,9 +26,9 @@
 
 package org.activiti.designer.eclipse.navigator;
 
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.eclipse.core.resources.IResource;
 import org.eclipse.core.resources.IResourceChangeEvent;
@@ -48,7 +48,8 @@ public abstract class AbstractTreeContentProvider implements ITreeContentProvide
 
   protected static final Object[] NO_CHILDREN = new Object[0];
 
-  private final Map<IResource, List<TreeNode>> cachedModelMap = new HashMap<IResource, List<TreeNode>>();
+  // read on the UI thread, changed by resource change notifications and background jobs as well
+  private final Map<IResource, List<TreeNode>> cachedModelMap = new ConcurrentHashMap<IResource, List<TreeNode>>();
 
   private StructuredViewer viewer;
 
@@ -27,8 +27,12 @@
 package org.activiti.designer.eclipse.navigator.diagram;
 
 import java.util.ArrayList;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 
+import org.activiti.bpmn.model.BpmnModel;
+import org.activiti.designer.eclipse.editor.BpmnModelCache;
 import org.activiti.designer.eclipse.navigator.AbstractTreeContentProvider;
 import org.activiti.designer.eclipse.navigator.TreeNode;
 import org.activiti.designer.util.ActivitiConstants;
@@ -39,15 +43,58 @@ import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
 import org.eclipse.ui.progress.UIJob;
 
 /**
+ * Provides the processes and their elements of diagram data files. The models are taken from the
+ * {@link BpmnModelCache}; files whose model isn't available yet are parsed in the background and
+ * shown once they are parsed, so the UI thread never parses a file. The tree nodes are only built on
+ * the UI thread, as the model may be the one of an open editor. The nodes of a file are rebuilt once
+ * an editor has imported it or has been closed, as they may have been built from the unsaved model
+ * of the editor.
+ *
  * @author Tiese Barrell
  */
 public class DiagramTreeContentProvider extends AbstractTreeContentProvider {
 
+  // the files waiting to be loaded by the load job
+  private final Set<IFile> filesToLoad = new LinkedHashSet<IFile>();
+
+  private final Job loadJob = new Job("Load Process Models for CommonViewer") { //$NON-NLS-1$
+
+    @Override
+    protected IStatus run(IProgressMonitor monitor) {
+      IFile file;
+      while (!monitor.isCanceled() && (file = nextFileToLoad()) != null) {
+        // parses the file into the shared cache, if needed
+        showModel(file, BpmnModelCache.getModel(file));
+      }
+      return monitor.isCanceled() ? Status.CANCEL_STATUS : Status.OK_STATUS;
+    }
+  };
+
+  private final BpmnModelCache.OpenModelListener openModelListener = new BpmnModelCache.OpenModelListener() {
+
+    @Override
+    public void openModelChanged(final IFile modelFile) {
+      if (isModelCachedForResource(modelFile)) {
+        scheduleLoad(modelFile);
+      }
+    }
+  };
+
   public DiagramTreeContentProvider() {
     super();
+    loadJob.setSystem(true);
+    BpmnModelCache.addOpenModelListener(openModelListener);
+  }
+
+  @Override
+  public void dispose() {
+    BpmnModelCache.removeOpenModelListener(openModelListener);
+    loadJob.cancel();
+    super.dispose();
   }
 
   @Override
@@ -84,9 +131,15 @@ public class DiagramTreeContentProvider extends AbstractTreeContentProvider {
       /* Possible model file */
       final IFile modelFile = (IFile) parentElement;
       if (isDiagramFile(modelFile)) {
-        result = getDataArray(modelFile);
-        if (result == null && !updateModel(modelFile).isEmpty()) {
+        if (isModelCachedForResource(modelFile)) {
+          result = getDataArray(modelFile);
+        } else if (BpmnModelCache.getCachedModel(modelFile) != null) {
+          // no parsing involved
+          updateModel(modelFile);
           result = getDataArray(modelFile);
+        } else {
+          // shown by refreshing the file once it is loaded
+          scheduleLoad(modelFile);
         }
       }
     }
@@ -115,23 +168,73 @@ public class DiagramTreeContentProvider extends AbstractTreeContentProvider {
     case IResource.FILE:
       final IFile file = (IFile) source;
       if (isDiagramFile(file)) {
-        updateModel(file);
-        new UIJob("Update Process Model in CommonViewer") { //$NON-NLS-1$
-
-          @Override
-          public IStatus runInUIThread(IProgressMonitor monitor) {
-            if (getStructuredViewer() != null && !getStructuredViewer().getControl().isDisposed()) {
-              getStructuredViewer().refresh(file);
-            }
-            return Status.OK_STATUS;
-          }
-        }.schedule();
+        if (delta.getKind() == IResourceDelta.REMOVED) {
+          BpmnModelCache.remove(file);
+          updateModel(file);
+          refreshViewer(file);
+        } else if (delta.getKind() == IResourceDelta.ADDED
+                || (delta.getFlags() & (IResourceDelta.CONTENT | IResourceDelta.REPLACED)) != 0) {
+          // parse the changed file in the background instead of while notifying the change.
+          // Changes of markers only don't change the tree.
+          scheduleLoad(file);
+        }
       }
       return false;
     }
     return false;
   }
 
+  private void scheduleLoad(final IFile modelFile) {
+    synchronized (filesToLoad) {
+      filesToLoad.add(modelFile);
+    }
+    loadJob.schedule();
+  }
+
+  private IFile nextFileToLoad() {
+    synchronized (filesToLoad) {
+      if (filesToLoad.isEmpty()) {
+        return null;
+      }
+      final IFile result = filesToLoad.iterator().next();
+      filesToLoad.remove(result);
+      return result;
+    }
+  }
+
+  /**
+   * Builds the nodes of the loaded model on the UI thread and shows them.
+   */
+  private void showModel(final IFile file, final BpmnModel loadedModel) {
+    new UIJob("Update Process Model in CommonViewer") { //$NON-NLS-1$
+
+      // keeps the loaded model in the cache until the nodes have been built
+      private final BpmnModel model = loadedModel;
+
+      @Override
+      public IStatus runInUIThread(IProgressMonitor monitor) {
+        if (getStructuredViewer() != null && !getStructuredViewer().getControl().isDisposed()) {
+          updateModel(file);
+          getStructuredViewer().refresh(file);
+        }
+        return Status.OK_STATUS;
+      }
+    }.schedule();
+  }
+
+  private void refreshViewer(final IFile file) {
+    new UIJob("Update Process Model in CommonViewer") { //$NON-NLS-1$
+
+      @Override
+      public IStatus runInUIThread(IProgressMonitor monitor) {
+        if (getStructuredViewer() != null && !getStructuredViewer().getControl().isDisposed()) {
+          getStructuredViewer().refresh(file);
+        }
+        return Status.OK_STATUS;
+      }
+    }.schedule();
+  }
+
   /**
    * Load the model from the given file, if possible.
    *
@@ -26,18 +26,11 @@
 
 package org.activiti.designer.eclipse.navigator.diagram;
 
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.InputStreamReader;
 import java.util.List;
 
-import javax.xml.stream.XMLInputFactory;
-import javax.xml.stream.XMLStreamReader;
-
-import org.activiti.bpmn.converter.BpmnXMLConverter;
-import org.activiti.bpmn.model.BpmnModel;
 import org.activiti.bpmn.model.Pool;
 import org.activiti.bpmn.model.Process;
+import org.activiti.designer.eclipse.editor.BpmnModelCache;
 import org.activiti.designer.eclipse.navigator.TreeNode;
 import org.activiti.designer.util.editor.BpmnMemoryModel;
 import org.eclipse.core.resources.IFile;
@@ -112,23 +105,9 @@ public class FileDiagramTreeNode extends AbstractDiagramTreeNode<IFile> {
 
   private BpmnMemoryModel buildModel(final IFile modelFile) {
     final BpmnMemoryModel result = new BpmnMemoryModel(null, modelFile);
-
-    String filePath = modelFile.getLocationURI().getPath();
-    File bpmnFile = new File(filePath);
-    try {
-      if (bpmnFile.exists()) {
-        final FileInputStream fileStream = new FileInputStream(bpmnFile);
-        final XMLInputFactory xif = XMLInputFactory.newInstance();
-        final InputStreamReader in = new InputStreamReader(fileStream, "UTF-8");
-        final XMLStreamReader xtr = xif.createXMLStreamReader(in);
-        BpmnXMLConverter converter = new BpmnXMLConverter();
-        BpmnModel bpmnModel = converter.convertToBpmnModel(xtr);
-        result.setBpmnModel(bpmnModel);
-      }
-    } catch (Exception e) {
-      
-    }
-
+    // the model of an open editor or of an earlier parse of the same file content is shared. The
+    // node is built on the UI thread, so it never parses the file itself.
+    result.setBpmnModel(BpmnModelCache.getCachedModel(modelFile));
     return result;
   }
 
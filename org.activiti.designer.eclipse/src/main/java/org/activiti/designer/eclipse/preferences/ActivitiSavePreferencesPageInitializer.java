@@ -49,6 +49,7 @@ public class ActivitiSavePreferencesPageInitializer extends AbstractPreferenceIn
 
     // Image Marshaller
     store.setDefault(Preferences.SAVE_IMAGE.getPreferenceId(), false);
+    store.setDefault(Preferences.SAVE_IMAGE_MAX_SIZE.getPreferenceId(), 0);
 
     // Overlay preferences
     store.setDefault(Preferences.SAVE_IMAGE_ADD_OVERLAY.getPreferenceId(), false);
@@ -56,5 +57,8 @@ public class ActivitiSavePreferencesPageInitializer extends AbstractPreferenceIn
     store.setDefault(Preferences.SAVE_IMAGE_ADD_OVERLAY_BORDER_COLOR.getPreferenceId(), "0,0,0");
     store.setDefault(Preferences.SAVE_IMAGE_ADD_OVERLAY_BACKGROUND_COLOR.getPreferenceId(), "255,255,255");
 
+    // Editor
+    store.setDefault(Preferences.EDITOR_LAZY_SHAPES_THRESHOLD.getPreferenceId(), 0);
+
   }
 }
@@ -0,0 +1,321 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.activiti.designer.eclipse.ui;
+
+import java.io.ByteArrayInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.activiti.bpmn.model.BpmnModel;
+import org.activiti.designer.eclipse.Logger;
+import org.activiti.designer.eclipse.common.ActivitiPlugin;
+import org.activiti.designer.eclipse.editor.BpmnModelParser;
+import org.activiti.designer.eclipse.extension.AbstractDiagramWorker;
+import org.activiti.designer.eclipse.extension.export.ExportMarshaller;
+import org.activiti.designer.eclipse.extension.export.ExportMarshallerContext;
+import org.activiti.designer.eclipse.extension.export.MarshallerUtil;
+import org.activiti.designer.eclipse.extension.export.ModelOnlyExportMarshaller;
+import org.activiti.designer.util.editor.BpmnMemoryModel;
+import org.activiti.designer.util.preferences.PreferencesUtil;
+import org.apache.commons.codec.binary.Hex;
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.ISafeRunnable;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.ProgressMonitorWrapper;
+import org.eclipse.core.runtime.SafeRunner;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.graphiti.features.IFeatureProvider;
+
+/**
+ * Runs a single {@link ExportMarshaller} in the background. The marshaller gets its own snapshot of
+ * the model, parsed from the XML that was saved, so marshallers can run in parallel with each other
+ * and with the editor without ever touching the model of the editor.
+ *
+ * <p>
+ * Runs of the same marshaller for the same file are serialized, and scheduling a new run cancels the
+ * one that is still pending or running, as its content is outdated. A marshaller that takes longer
+ * than {@link #TIMEOUT_MILLIS} is cancelled through its progress monitor. A
+ * {@link ModelOnlyExportMarshaller} is skipped if the model is the same as in its last successful run
+ * and the files it saved in that run still exist. As only the files saved by an
+ * {@link AbstractDiagramWorker} are known, other marshallers are never skipped. The time each run
+ * of a marshaller took is logged and reported in the result of its job.
+ */
+public class ExportMarshallerJob extends Job {
+
+  /** The family of all export marshaller jobs. */
+  public static final Object FAMILY = ExportMarshallerJob.class;
+
+  /** The time a marshaller may take before it is asked to cancel. */
+  public static final long TIMEOUT_MILLIS = 60000;
+
+  // marshaller name and file -> the latest job scheduled for them
+  private static final ConcurrentMap<MarshallerKey, ExportMarshallerJob> LATEST_JOBS = new ConcurrentHashMap<MarshallerKey, ExportMarshallerJob>();
+
+  // marshaller name and file -> the lock runs for them hold. Not a scheduling rule, as marshallers
+  // write their output through the workspace, which needs resource rules the job then couldn't take.
+  private static final ConcurrentMap<MarshallerKey, MarshallerKey> LOCKS = new ConcurrentHashMap<MarshallerKey, MarshallerKey>();
+
+  // marshaller name and file -> the last successful run of a model only marshaller
+  private static final ConcurrentMap<MarshallerKey, MarshallerOutput> OUTPUTS = new ConcurrentHashMap<MarshallerKey, MarshallerOutput>();
+
+  private final ExportMarshaller marshaller;
+  private final IFeatureProvider featureProvider;
+  private final IFile modelFile;
+  private final byte[] xml;
+  private final MarshallerKey marshallerKey;
+
+  public ExportMarshallerJob(final ExportMarshaller marshaller, final BpmnMemoryModel model, final byte[] xml) {
+    super(String.format("Saving diagram to %s format", marshaller.getFormatName()));
+    this.marshaller = marshaller;
+    this.featureProvider = model.getFeatureProvider();
+    this.modelFile = model.getModelFile();
+    this.xml = xml;
+    this.marshallerKey = new MarshallerKey(marshaller.getMarshallerName(), modelFile);
+  }
+
+  /**
+   * Schedules a job for each of the marshallers that is enabled in the preferences.
+   *
+   * @param model
+   *          the model that was saved
+   * @param xml
+   *          the XML that was written for the model
+   * @return the scheduled jobs
+   */
+  public static List<ExportMarshallerJob> scheduleEnabled(final BpmnMemoryModel model, final byte[] xml,
+          final Collection<ExportMarshaller> marshallers) {
+
+    final List<ExportMarshaller> enabledMarshallers = new ArrayList<ExportMarshaller>();
+    for (final ExportMarshaller marshaller : marshallers) {
+      if (PreferencesUtil.getBooleanPreference(MarshallerUtil.getPreferenceId(marshaller), ActivitiPlugin.getDefault())) {
+        enabledMarshallers.add(marshaller);
+      }
+    }
+    return schedule(model, xml, enabledMarshallers);
+  }
+
+  /**
+   * Schedules a job for each of the marshallers, regardless of the preferences.
+   */
+  public static List<ExportMarshallerJob> schedule(final BpmnMemoryModel model, final byte[] xml,
+          final Collection<ExportMarshaller> marshallers) {
+
+    final List<ExportMarshallerJob> result = new ArrayList<ExportMarshallerJob>();
+    for (final ExportMarshaller marshaller : marshallers) {
+      final ExportMarshallerJob job = new ExportMarshallerJob(marshaller, model, xml);
+      final ExportMarshallerJob previousJob = LATEST_JOBS.put(job.marshallerKey, job);
+      if (previousJob != null) {
+        previousJob.cancel();
+      }
+      job.schedule();
+      result.add(job);
+    }
+    return result;
+  }
+
+  public ExportMarshaller getMarshaller() {
+    return marshaller;
+  }
+
+  @Override
+  public boolean belongsTo(final Object family) {
+    return FAMILY == family;
+  }
+
+  @Override
+  protected IStatus run(final IProgressMonitor monitor) {
+    LOCKS.putIfAbsent(marshallerKey, marshallerKey);
+    synchronized (LOCKS.get(marshallerKey)) {
+      return runExclusively(monitor);
+    }
+  }
+
+  private IStatus runExclusively(final IProgressMonitor monitor) {
+    try {
+      if (monitor.isCanceled()) {
+        return Status.CANCEL_STATUS;
+      }
+
+      // the output of a model only marshaller can't change as long as the model doesn't
+      final String modelHash = marshaller instanceof ModelOnlyExportMarshaller ? getModelHash() : null;
+      final MarshallerOutput lastOutput = OUTPUTS.get(marshallerKey);
+      if (modelHash != null && lastOutput != null && lastOutput.isUpToDate(modelHash)) {
+        return Status.OK_STATUS;
+      }
+      OUTPUTS.remove(marshallerKey);
+
+      final BpmnModel bpmnModel;
+      try {
+        bpmnModel = BpmnModelParser.parse(new ByteArrayInputStream(xml));
+      } catch (Exception e) {
+        Logger.logError("Error while reading the model for export marshaller " + marshaller.getMarshallerName(), e);
+        return Status.OK_STATUS;
+      }
+      final BpmnMemoryModel snapshot = new BpmnMemoryModel(featureProvider, modelFile);
+      snapshot.setBpmnModel(bpmnModel);
+
+      final long start = System.currentTimeMillis();
+      final TimeoutMonitor timeoutMonitor = new TimeoutMonitor(monitor, start + TIMEOUT_MILLIS);
+      final List<IFile> savedFiles = invokeExportMarshaller(snapshot, timeoutMonitor);
+      final long duration = System.currentTimeMillis() - start;
+      if (savedFiles != null && modelHash != null && !timeoutMonitor.isCanceled()) {
+        OUTPUTS.put(marshallerKey, new MarshallerOutput(modelHash, savedFiles));
+      }
+
+      final String timing = String.format("Export marshaller %s took %d ms", marshaller.getMarshallerName(), duration);
+      if (duration > TIMEOUT_MILLIS) {
+        Logger.log(IStatus.WARNING, IStatus.OK, String.format("%s, which exceeds the timeout of %d ms", timing, TIMEOUT_MILLIS), null);
+      } else {
+        Logger.logDebug(timing);
+      }
+      return monitor.isCanceled() ? Status.CANCEL_STATUS : Logger.createStatus(IStatus.OK, IStatus.OK, timing, null);
+
+    } finally {
+      LATEST_JOBS.remove(marshallerKey, this);
+      monitor.done();
+    }
+  }
+
+  /**
+   * @return the files the marshaller saved, or null if they're not known or the marshaller threw an
+   *         exception
+   */
+  private List<IFile> invokeExportMarshaller(final BpmnMemoryModel snapshot, final IProgressMonitor monitor) {
+    final List<List<IFile>> savedFiles = new ArrayList<List<IFile>>(1);
+    SafeRunner.run(new ISafeRunnable() {
+
+      @Override
+      public void handleException(Throwable exception) {
+        savedFiles.clear();
+        Logger.logError("An exception occurred while running ExportMarshaller " + marshaller.getMarshallerName(), exception);
+      }
+
+      @Override
+      public void run() throws Exception {
+        final ExportMarshallerContext context = new ExportMarshallerContext() {
+
+          @Override
+          public IProgressMonitor getProgressMonitor() {
+            return monitor;
+          }
+
+          @Override
+          public BpmnMemoryModel getBpmnModel() {
+            return snapshot;
+          }
+        };
+        // the same marshaller instance holds the context while it runs, so it can only do one run at a time
+        synchronized (marshaller) {
+          marshaller.marshallDiagram(context);
+          if (marshaller instanceof AbstractDiagramWorker) {
+            savedFiles.add(((AbstractDiagramWorker) marshaller).getSavedResources());
+          }
+        }
+      }
+    });
+    return savedFiles.isEmpty() ? null : savedFiles.get(0);
+  }
+
+  private String getModelHash() {
+    try {
+      return new String(Hex.encodeHex(MessageDigest.getInstance("SHA-1").digest(xml)));
+    } catch (NoSuchAlgorithmException e) {
+      // no digest available, so the marshaller always runs
+      return null;
+    }
+  }
+
+  /**
+   * The model of a successful run of a marshaller and the files it saved.
+   */
+  private static class MarshallerOutput {
+
+    private final String modelHash;
+    private final List<IFile> savedFiles;
+
+    public MarshallerOutput(final String modelHash, final List<IFile> savedFiles) {
+      this.modelHash = modelHash;
+      this.savedFiles = savedFiles;
+    }
+
+    /**
+     * @return true if the run was for the same model and the files it saved haven't been deleted
+     */
+    public boolean isUpToDate(final String currentModelHash) {
+      if (!modelHash.equals(currentModelHash)) {
+        return false;
+      }
+      for (final IFile savedFile : savedFiles) {
+        if (!savedFile.exists()) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+
+  /**
+   * Reports the marshaller as cancelled once its time is up.
+   */
+  private static class TimeoutMonitor extends ProgressMonitorWrapper {
+
+    private final long deadline;
+
+    public TimeoutMonitor(final IProgressMonitor monitor, final long deadline) {
+      super(monitor);
+      this.deadline = deadline;
+    }
+
+    @Override
+    public boolean isCanceled() {
+      return super.isCanceled() || System.currentTimeMillis() > deadline;
+    }
+  }
+
+  /**
+   * Identifies the runs of the same marshaller for the same file.
+   */
+  private static class MarshallerKey {
+
+    private final String marshallerName;
+    private final IFile modelFile;
+
+    public MarshallerKey(final String marshallerName, final IFile modelFile) {
+      this.marshallerName = marshallerName;
+      this.modelFile = modelFile;
+    }
+
+    @Override
+    public boolean equals(final Object object) {
+      if (!(object instanceof MarshallerKey)) {
+        return false;
+      }
+      final MarshallerKey other = (MarshallerKey) object;
+      return marshallerName.equals(other.marshallerName)
+              && (modelFile == null ? other.modelFile == null : modelFile.equals(other.modelFile));
+    }
+
+    @Override
+    public int hashCode() {
+      return marshallerName.hashCode() * 31 + (modelFile == null ? 0 : modelFile.hashCode());
+    }
+  }
+}
@@ -28,22 +28,22 @@ package org.activiti.designer.eclipse.ui;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 
+import org.activiti.bpmn.converter.BpmnXMLConverter;
 import org.activiti.designer.eclipse.common.ActivitiPlugin;
 import org.activiti.designer.eclipse.extension.export.ExportMarshaller;
-import org.activiti.designer.eclipse.extension.export.ExportMarshallerContext;
 import org.activiti.designer.eclipse.extension.export.MarshallerUtil;
 import org.activiti.designer.eclipse.util.ExtensionPointUtil;
 import org.activiti.designer.util.editor.BpmnMemoryModel;
 import org.activiti.designer.util.preferences.PreferencesUtil;
 import org.eclipse.core.runtime.IProgressMonitor;
-import org.eclipse.core.runtime.ISafeRunnable;
-import org.eclipse.core.runtime.SafeRunner;
-import org.eclipse.core.runtime.SubProgressMonitor;
+import org.eclipse.core.runtime.jobs.Job;
 import org.eclipse.jface.operation.IRunnableWithProgress;
 
 /**
- * Runnable that invokes {@link ExportMarshaller}s with progress display.
+ * Runnable that invokes {@link ExportMarshaller}s with progress display. The marshallers run in
+ * parallel as {@link ExportMarshallerJob}s and the runnable waits until all of them have finished.
  * 
  * @author Tiese Barrell
  * @since 0.6.0
@@ -56,6 +56,9 @@ public class ExportMarshallerRunnable implements IRunnableWithProgress {
    */
   private static final int WORK_UNITS_PER_MARSHALLER = 100;
 
+  /** The time to wait for a marshaller before checking for cancellation. */
+  private static final long POLL_INTERVAL_MILLIS = 100;
+
   private BpmnMemoryModel model;
   private Collection<ExportMarshaller> marshallers;
 
@@ -91,25 +94,34 @@ public class ExportMarshallerRunnable implements IRunnableWithProgress {
     this.marshallers.add(marshaller);
   }
 
-  public void run(IProgressMonitor monitor) {
+  public void run(IProgressMonitor monitor) throws InterruptedException {
 
     try {
       monitor.beginTask("Saving to additional export formats", marshallers.size() * WORK_UNITS_PER_MARSHALLER + 25);
 
       if (marshallers.size() > 0) {
 
+        // the marshallers run in parallel, each against its own copy of the model
+        final byte[] xml = new BpmnXMLConverter().convertToXML(model.getBpmnModel());
         monitor.worked(25);
 
-        for (final ExportMarshaller marshaller : marshallers) {
-          final IProgressMonitor subMonitor = new SubProgressMonitor(monitor, WORK_UNITS_PER_MARSHALLER);
-          try {
-            monitor.subTask(String.format("Saving diagram to %s format", marshaller.getFormatName()));
-            invokeExportMarshaller(marshaller, model, subMonitor);
-          } finally {
-            // enforce calling of done() if the client hasn't
-            // done so itself
-            subMonitor.done();
+        final List<ExportMarshallerJob> jobs = ExportMarshallerJob.schedule(model, xml, marshallers);
+        try {
+          for (final ExportMarshallerJob job : jobs) {
+            monitor.subTask(String.format("Saving diagram to %s format", job.getMarshaller().getFormatName()));
+            while (job.getState() != Job.NONE) {
+              if (monitor.isCanceled()) {
+                throw new InterruptedException();
+              }
+              Thread.sleep(POLL_INTERVAL_MILLIS);
+            }
+            monitor.worked(WORK_UNITS_PER_MARSHALLER);
+          }
+        } catch (InterruptedException e) {
+          for (final ExportMarshallerJob job : jobs) {
+            job.cancel();
           }
+          throw e;
         }
       }
     } finally {
@@ -117,33 +129,4 @@ public class ExportMarshallerRunnable implements IRunnableWithProgress {
     }
   }
 
-  private void invokeExportMarshaller(final ExportMarshaller exportMarshaller, final BpmnMemoryModel model, final IProgressMonitor monitor) {
-
-    ISafeRunnable runnable = new ISafeRunnable() {
-
-      @Override
-      public void handleException(Throwable exception) {
-        System.out.println("An exception occurred while running ExportMarshaller " + exportMarshaller.getMarshallerName() + ": " + exception.getMessage());
-      }
-
-      @Override
-      public void run() throws Exception {
-        final ExportMarshallerContext context = new ExportMarshallerContext() {
-
-          @Override
-          public IProgressMonitor getProgressMonitor() {
-            return monitor;
-          }
-
-          @Override
-          public BpmnMemoryModel getBpmnModel() {
-            return model;
-          }
-        };
-        exportMarshaller.marshallDiagram(context);
-      }
-    };
-    SafeRunner.run(runnable);
-  }
-
 }
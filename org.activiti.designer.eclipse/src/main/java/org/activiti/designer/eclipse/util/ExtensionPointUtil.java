@@ -40,21 +40,67 @@ import org.activiti.designer.eclipse.extension.icon.IconProvider;
 import org.activiti.designer.eclipse.extension.validation.ProcessValidator;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IConfigurationElement;
+import org.eclipse.core.runtime.IExtensionDelta;
+import org.eclipse.core.runtime.IRegistryChangeEvent;
+import org.eclipse.core.runtime.IRegistryChangeListener;
 import org.eclipse.core.runtime.Platform;
 import org.eclipse.swt.graphics.Image;
 
 /**
  * Utility class for extension point references.
  * 
+ * The contributions to the extension points are instantiated once and shared
+ * by all callers, so the same marshaller, validator or icon provider instance
+ * is returned each time. The contributions of an extension point are
+ * instantiated again when plugins contributing to it are added or removed.
+ * 
  * @author Tiese Barrell
  * @since 0.6.0
  * @version 1
  */
 public final class ExtensionPointUtil {
 
+  // the cached contributions, null until requested or after a contributing plugin changed
+  private static volatile List<IconProvider> iconProviders;
+  private static volatile Map<String, ExportMarshaller> exportMarshallers;
+  private static volatile Map<String, ProcessValidator> processValidators;
+
+  private static boolean listening;
+
+  private static final IRegistryChangeListener registryListener = new IRegistryChangeListener() {
+
+    @Override
+    public void registryChanged(final IRegistryChangeEvent event) {
+      for (final IExtensionDelta delta : event.getExtensionDeltas()) {
+        final String extensionPointId = delta.getExtensionPoint().getUniqueIdentifier();
+        if (ActivitiPlugin.ICON_PROVIDER_EXTENSIONPOINT_ID.equals(extensionPointId)) {
+          iconProviders = null;
+        } else if (ActivitiPlugin.EXPORT_MARSHALLER_EXTENSIONPOINT_ID.equals(extensionPointId)) {
+          exportMarshallers = null;
+        } else if (ActivitiPlugin.PROCESS_VALIDATOR_EXTENSIONPOINT_ID.equals(extensionPointId)) {
+          processValidators = null;
+        }
+      }
+    }
+  };
+
   private ExtensionPointUtil() {
   }
 
+  /**
+   * Stops listening to changes of the contributions and forgets them. Called
+   * when the plugin is stopped.
+   */
+  public static synchronized void shutdown() {
+    if (listening) {
+      Platform.getExtensionRegistry().removeRegistryChangeListener(registryListener);
+      listening = false;
+    }
+    iconProviders = null;
+    exportMarshallers = null;
+    processValidators = null;
+  }
+
   public static final ExportMarshaller getExportMarshaller(final String marshallerName) {
     final Map<String, ExportMarshaller> marshallers = getExportMarshallersAndNames();
     if (marshallers.containsKey(marshallerName)) {
@@ -102,6 +148,59 @@ public final class ExtensionPointUtil {
 
   }
   private static final List<IconProvider> getPrioritizedIconProviders() {
+    List<IconProvider> result = iconProviders;
+    if (result == null) {
+      synchronized (ExtensionPointUtil.class) {
+        startListening();
+        result = iconProviders;
+        if (result == null) {
+          result = Collections.unmodifiableList(createPrioritizedIconProviders());
+          iconProviders = result;
+        }
+      }
+    }
+    return result;
+  }
+
+  private static final Map<String, ExportMarshaller> getExportMarshallersAndNames() {
+    Map<String, ExportMarshaller> result = exportMarshallers;
+    if (result == null) {
+      synchronized (ExtensionPointUtil.class) {
+        startListening();
+        result = exportMarshallers;
+        if (result == null) {
+          result = Collections.unmodifiableMap(createExportMarshallersAndNames());
+          exportMarshallers = result;
+        }
+      }
+    }
+    return result;
+  }
+
+  private static final Map<String, ProcessValidator> getProcessValidatorsAndIds() {
+    Map<String, ProcessValidator> result = processValidators;
+    if (result == null) {
+      synchronized (ExtensionPointUtil.class) {
+        startListening();
+        result = processValidators;
+        if (result == null) {
+          result = Collections.unmodifiableMap(createProcessValidatorsAndIds());
+          processValidators = result;
+        }
+      }
+    }
+    return result;
+  }
+
+  // called while holding the class lock
+  private static void startListening() {
+    if (!listening) {
+      Platform.getExtensionRegistry().addRegistryChangeListener(registryListener);
+      listening = true;
+    }
+  }
+
+  private static final List<IconProvider> createPrioritizedIconProviders() {
 
     final List<IconProvider> result = new ArrayList<IconProvider>();
 
@@ -126,7 +225,7 @@ public final class ExtensionPointUtil {
     return result;
   }
 
-  private static final Map<String, ExportMarshaller> getExportMarshallersAndNames() {
+  private static final Map<String, ExportMarshaller> createExportMarshallersAndNames() {
 
     final Map<String, ExportMarshaller> result = new HashMap<String, ExportMarshaller>();
 
@@ -148,7 +247,7 @@ public final class ExtensionPointUtil {
     return result;
   }
 
-  private static final Map<String, ProcessValidator> getProcessValidatorsAndIds() {
+  private static final Map<String, ProcessValidator> createProcessValidatorsAndIds() {
     final Map<String, ProcessValidator> result = new HashMap<String, ProcessValidator>();
 
     final IConfigurationElement[] validatorConfiguration = Platform.getExtensionRegistry().getConfigurationElementsFor(
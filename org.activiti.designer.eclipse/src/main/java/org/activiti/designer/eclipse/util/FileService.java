@@ -13,8 +13,10 @@
  */
 package org.activiti.designer.eclipse.util;
 
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.PrintWriter;
@@ -241,6 +243,35 @@ public class FileService {
     return null;
   }
 
+  /**
+   * Writes the given content to the file without ever leaving a truncated file behind. The content
+   * is written to a temporary file in the same folder first, which then replaces the target file.
+   *
+   * @param file the file to write
+   * @param content the content of the file
+   * @throws IOException in case the content could not be written or the file could not be replaced
+   */
+  public static void writeFileAtomically(final File file, final byte[] content) throws IOException {
+    final File tempFile = new File(file.getAbsoluteFile().getParentFile(), "." + file.getName() + ".tmp");
+
+    final FileOutputStream outStream = new FileOutputStream(tempFile);
+    try {
+      outStream.write(content);
+      outStream.flush();
+      outStream.getFD().sync();
+    } finally {
+      outStream.close();
+    }
+
+    if (!tempFile.renameTo(file)) {
+      // some platforms can't rename over an existing file
+      if (!file.delete() || !tempFile.renameTo(file)) {
+        tempFile.delete();
+        throw new IOException("Unable to replace " + file.getAbsolutePath());
+      }
+    }
+  }
+
 
 
 	public static TransactionalEditingDomain createEmfFileForDiagram(final URI diagramResourceUri
@@ -29,6 +29,11 @@ import org.eclipse.graphiti.mm.pictograms.PictogramElement;
  * Calls the necessary methods to notify the {@link BpmnMemoryModel} of the
  * change and optional notifies the Diagram UI.
  * 
+ * The business object is copied on write: the updatable copy is only cloned
+ * when it is first requested and the copy used for undo only when the update
+ * is first performed, so an updater that is never used to change anything
+ * doesn't clone the business object at all.
+ * 
  * @author Tijs Rademakers
  */
 public abstract class BpmnProcessModelUpdater {
@@ -54,8 +59,6 @@ public abstract class BpmnProcessModelUpdater {
   public BpmnProcessModelUpdater init(Object businessObject, PictogramElement pictogramElement) {
     BpmnProcessModelUpdater clone = createUpdater(featureProvider);
     clone.businessObject = businessObject;
-    clone.newBusinessObject = cloneBusinessObject(businessObject);
-    clone.oldBusinessObject = cloneBusinessObject(businessObject);
     clone.pictogramElement = pictogramElement;
     return clone;
   }
@@ -66,9 +69,20 @@ public abstract class BpmnProcessModelUpdater {
    *         this command is executed.
    */
   public Object getUpdatableBusinessObject() {
+    if (newBusinessObject == null) {
+      newBusinessObject = cloneBusinessObject(businessObject);
+    }
     return newBusinessObject;
   }
 
+  /**
+   * @return true, if the updatable business-object was requested, so the
+   *         update may change the business-object.
+   */
+  public boolean hasUpdates() {
+    return newBusinessObject != null;
+  }
+
   public void doUpdate() {
     doUpdate(true);
   }
@@ -78,6 +92,14 @@ public abstract class BpmnProcessModelUpdater {
   }
 
   public void doUpdate(boolean updatePictorgramElement) {
+    if (newBusinessObject == null) {
+      // nothing was changed
+      return;
+    }
+    if (oldBusinessObject == null) {
+      // the state to return to on undo, taken before the first update is applied
+      oldBusinessObject = cloneBusinessObject(businessObject);
+    }
     performUpdates(newBusinessObject, businessObject);
     triggerBusinessObjectModelUpdated();
     if (updatePictorgramElement) {
@@ -86,6 +108,10 @@ public abstract class BpmnProcessModelUpdater {
   }
 
   public void doUndo(boolean updatePictorgramElement) {
+    if (oldBusinessObject == null) {
+      // never updated
+      return;
+    }
     performUpdates(oldBusinessObject, businessObject);
     triggerBusinessObjectModelUpdated();
     if (updatePictorgramElement) {
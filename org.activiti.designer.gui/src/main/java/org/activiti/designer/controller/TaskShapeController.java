@@ -13,8 +13,6 @@
  */
 package org.activiti.designer.controller;
 
-import java.util.List;
-
 import org.activiti.bpmn.model.BusinessRuleTask;
 import org.activiti.bpmn.model.ManualTask;
 import org.activiti.bpmn.model.MultiInstanceLoopCharacteristics;
@@ -29,6 +27,7 @@ import org.activiti.bpmn.model.alfresco.AlfrescoScriptTask;
 import org.activiti.bpmn.model.alfresco.AlfrescoUserTask;
 import org.activiti.designer.PluginImage;
 import org.activiti.designer.diagram.ActivitiBPMNFeatureProvider;
+import org.activiti.designer.diagram.CustomTaskImages;
 import org.activiti.designer.eclipse.common.ActivitiPlugin;
 import org.activiti.designer.integration.DiagramBaseShape;
 import org.activiti.designer.integration.servicetask.CustomServiceTask;
@@ -110,17 +109,10 @@ public class TaskShapeController extends AbstractBusinessObjectShapeController {
 
     if (ExtensionUtil.isCustomServiceTask(addedTask)) {
       final ServiceTask serviceTask = (ServiceTask) addedTask;
-      final List<CustomServiceTask> customServiceTasks = ExtensionUtil.getCustomServiceTasks(ActivitiUiUtil.getProjectFromDiagram(diagram));
-
-      CustomServiceTask targetTask = null;
-
-      for (final CustomServiceTask customServiceTask : customServiceTasks) {
-        if (customServiceTask.getId().equals(serviceTask.getExtensionId())) {
-          targetTask = customServiceTask;
-          break;
-        }
-      }
+      final CustomServiceTaskContext targetContext = ExtensionUtil.getCustomServiceTaskContext(
+              ActivitiUiUtil.getProjectFromDiagram(diagram), serviceTask.getExtensionId());
 
+      final CustomServiceTask targetTask = targetContext.getServiceTask();
       if (!DiagramBaseShape.ACTIVITY.equals(targetTask.getDiagramBaseShape())) {
         baseShape = targetTask.getDiagramBaseShape();
       }
@@ -128,17 +120,10 @@ public class TaskShapeController extends AbstractBusinessObjectShapeController {
     
     if (ExtensionUtil.isCustomUserTask(addedTask)) {
       final UserTask userTask = (UserTask) addedTask;
-      final List<CustomUserTask> customUserTasks = ExtensionUtil.getCustomUserTasks(ActivitiUiUtil.getProjectFromDiagram(diagram));
-
-      CustomUserTask targetTask = null;
-
-      for (final CustomUserTask customUserTask : customUserTasks) {
-        if (customUserTask.getId().equals(userTask.getExtensionId())) {
-          targetTask = customUserTask;
-          break;
-        }
-      }
+      final CustomUserTaskContext targetContext = ExtensionUtil.getCustomUserTaskContext(
+              ActivitiUiUtil.getProjectFromDiagram(diagram), userTask.getExtensionId());
 
+      final CustomUserTask targetTask = targetContext.getUserTask();
       if (!DiagramBaseShape.ACTIVITY.equals(targetTask.getDiagramBaseShape())) {
         baseShape = targetTask.getDiagramBaseShape();
       }
@@ -316,12 +301,11 @@ public class TaskShapeController extends AbstractBusinessObjectShapeController {
       } else {
         
         if (ExtensionUtil.isCustomServiceTask(bo)) {
-          final List<CustomServiceTaskContext> customServiceTaskContexts = ExtensionUtil.getCustomServiceTaskContexts(
-                  ActivitiUiUtil.getProjectFromDiagram(getFeatureProvider().getDiagramTypeProvider().getDiagram()));
-          for (CustomServiceTaskContext customServiceTaskContext : customServiceTaskContexts) {
-            if (customServiceTaskContext.getServiceTask().getId().equals(serviceTask.getExtensionId())) {
-              return customServiceTaskContext.getShapeImageKey();
-            }
+          final CustomServiceTaskContext customServiceTaskContext = ExtensionUtil.getCustomServiceTaskContext(
+                  ActivitiUiUtil.getProjectFromDiagram(getFeatureProvider().getDiagramTypeProvider().getDiagram()),
+                  serviceTask.getExtensionId());
+          if (customServiceTaskContext != null) {
+            return CustomTaskImages.getImageKey(customServiceTaskContext.getShapeImageKey());
           }
         }
         
@@ -331,12 +315,11 @@ public class TaskShapeController extends AbstractBusinessObjectShapeController {
     } else if (bo instanceof UserTask) {
       UserTask userTask = (UserTask) bo;
       if (ExtensionUtil.isCustomUserTask(bo)) {
-        final List<CustomUserTaskContext> customUserTaskContexts = ExtensionUtil.getCustomUserTaskContexts(
-            ActivitiUiUtil.getProjectFromDiagram(getFeatureProvider().getDiagramTypeProvider().getDiagram()));
-        for (CustomUserTaskContext customUserTaskContext : customUserTaskContexts) {
-          if (customUserTaskContext.getUserTask().getId().equals(userTask.getExtensionId())) {
-            return customUserTaskContext.getShapeImageKey();
-          }
+        final CustomUserTaskContext customUserTaskContext = ExtensionUtil.getCustomUserTaskContext(
+            ActivitiUiUtil.getProjectFromDiagram(getFeatureProvider().getDiagramTypeProvider().getDiagram()),
+            userTask.getExtensionId());
+        if (customUserTaskContext != null) {
+          return CustomTaskImages.getImageKey(customUserTaskContext.getShapeImageKey());
         }
       }
       
@@ -139,6 +139,8 @@ import org.activiti.designer.features.UpdateMessageFlowFeature;
 import org.activiti.designer.features.UpdatePoolAndLaneFeature;
 import org.activiti.designer.features.UpdateTextAnnotationFeature;
 import org.activiti.designer.util.editor.BpmnIndependenceSolver;
+import org.activiti.designer.util.editor.BpmnMemoryModel;
+import org.activiti.designer.util.editor.BusinessObjectIndex;
 import org.eclipse.graphiti.dt.IDiagramTypeProvider;
 import org.eclipse.graphiti.features.IAddFeature;
 import org.eclipse.graphiti.features.ICopyFeature;
@@ -183,10 +185,12 @@ public class ActivitiBPMNFeatureProvider extends DefaultFeatureProvider {
 
   protected List<BusinessObjectShapeController> shapeControllers;
   protected List<BpmnProcessModelUpdater> modelUpdaters;
+  protected BpmnIndependenceSolver independenceSolver;
 
   public ActivitiBPMNFeatureProvider(IDiagramTypeProvider dtp) {
     super(dtp);
-    setIndependenceSolver(new BpmnIndependenceSolver(dtp));
+    independenceSolver = new BpmnIndependenceSolver(dtp);
+    setIndependenceSolver(independenceSolver);
     
     this.shapeControllers = new ArrayList<BusinessObjectShapeController>();
     shapeControllers.add(new EventShapeController(this));
@@ -280,6 +284,50 @@ public class ActivitiBPMNFeatureProvider extends DefaultFeatureProvider {
     throw new IllegalArgumentException("No updater can be found for object: " + businessObject);
   }
 
+  @Override
+  public void link(PictogramElement pictogramElement, Object[] businessObjects) {
+    super.link(pictogramElement, businessObjects);
+
+    final BpmnMemoryModel model = independenceSolver.getModel();
+    if (model != null && businessObjects != null) {
+      final BusinessObjectIndex index = model.getBusinessObjectIndex();
+      for (Object businessObject : businessObjects) {
+        // keep the first element a business object is linked to, as long as it is valid
+        boolean replace = !isLinked(index.getPictogramElement(businessObject), businessObject);
+        index.setPictogramElement(businessObject, pictogramElement, replace);
+      }
+    }
+  }
+
+  /**
+   * Looks up the pictogram element in the business object index of the model before scanning all
+   * links of the diagram.
+   */
+  @Override
+  public PictogramElement getPictogramElementForBusinessObject(Object businessObject) {
+    final BpmnMemoryModel model = independenceSolver.getModel();
+    if (model == null || businessObject == null) {
+      return super.getPictogramElementForBusinessObject(businessObject);
+    }
+
+    final BusinessObjectIndex index = model.getBusinessObjectIndex();
+    final PictogramElement indexedElement = index.getPictogramElement(businessObject);
+    if (isLinked(indexedElement, businessObject)) {
+      return indexedElement;
+    }
+
+    final PictogramElement pictogramElement = super.getPictogramElementForBusinessObject(businessObject);
+    if (pictogramElement != null) {
+      index.setPictogramElement(businessObject, pictogramElement, true);
+    }
+    return pictogramElement;
+  }
+
+  private boolean isLinked(PictogramElement pictogramElement, Object businessObject) {
+    return pictogramElement != null && pictogramElement.isActive() && pictogramElement.eResource() != null
+            && getBusinessObjectForPictogramElement(pictogramElement) == businessObject;
+  }
+
   @Override
   public IAddFeature getAddFeature(IAddContext context) {
     return new AddBaseElementFeature(this);
@@ -55,7 +55,6 @@ import org.activiti.bpmn.model.Transaction;
 import org.activiti.bpmn.model.UserTask;
 import org.activiti.bpmn.model.alfresco.AlfrescoStartEvent;
 import org.activiti.designer.PluginImage;
-import org.activiti.designer.eclipse.Logger;
 import org.activiti.designer.eclipse.common.ActivitiPlugin;
 import org.activiti.designer.features.AbstractCreateBPMNFeature;
 import org.activiti.designer.features.ChangeElementTypeFeature;
@@ -147,11 +146,7 @@ import org.eclipse.graphiti.tb.ContextMenuEntry;
 import org.eclipse.graphiti.tb.DefaultToolBehaviorProvider;
 import org.eclipse.graphiti.tb.IContextButtonPadData;
 import org.eclipse.graphiti.tb.IContextMenuEntry;
-import org.eclipse.graphiti.ui.internal.GraphitiUIPlugin;
 import org.eclipse.graphiti.ui.internal.services.GraphitiUiInternal;
-import org.eclipse.jface.resource.ImageRegistry;
-import org.eclipse.swt.graphics.Image;
-import org.eclipse.swt.widgets.Display;
 
 import com.alfresco.designer.gui.features.CreateAlfrescoMailTaskFeature;
 import com.alfresco.designer.gui.features.CreateAlfrescoScriptTaskFeature;
@@ -849,25 +844,9 @@ public class ActivitiToolBehaviorProvider extends DefaultToolBehaviorProvider {
 
     // Graphiti sets the diagram type prover id with || in front of the image key
     String prefixId = getDiagramTypeProvider().getProviderId() + "||";
-    @SuppressWarnings("restriction")
-    final ImageRegistry reg = GraphitiUIPlugin.getDefault().getImageRegistry();
     for (final CustomServiceTaskContext taskContext : customServiceTaskContexts) {
-      try {
-        if (reg.get(prefixId + taskContext.getSmallImageKey()) == null) {
-          reg.put(prefixId + taskContext.getSmallImageKey(), 
-              new Image(Display.getCurrent(), taskContext.getSmallIconStream()));
-        }
-        if (reg.get(prefixId + taskContext.getLargeImageKey()) == null) {
-          reg.put(prefixId + taskContext.getLargeImageKey(),
-                  new Image(Display.getCurrent(), taskContext.getLargeIconStream()));
-        }
-        if (reg.get(prefixId + taskContext.getShapeImageKey()) == null) {
-          reg.put(prefixId + taskContext.getShapeImageKey(),
-                  new Image(Display.getCurrent(), taskContext.getShapeIconStream()));
-        }
-      } catch (Exception e) {
-        Logger.logError("Error loading image", e);
-      }
+      // the icons are only decoded the first time the context is seen
+      CustomTaskImages.register(prefixId, taskContext);
     }
 
     for (final CustomServiceTaskContext taskContext : customServiceTaskContexts) {
@@ -906,8 +885,9 @@ public class ActivitiToolBehaviorProvider extends DefaultToolBehaviorProvider {
         final CreateCustomServiceTaskFeature feature = new CreateCustomServiceTaskFeature(getFeatureProvider(), name,
                 currentDrawerItem.getServiceTask().getDescription(), currentDrawerItem.getServiceTask().getClass().getCanonicalName());
         
+        final String imageKey = CustomTaskImages.getImageKey(currentDrawerItem.getSmallImageKey());
         final IToolEntry entry = new ObjectCreationToolEntry(name, currentDrawerItem.getServiceTask().getDescription(),
-              currentDrawerItem.getSmallImageKey(), currentDrawerItem.getSmallImageKey(), feature);
+              imageKey, imageKey, feature);
         paletteCompartmentEntry.getToolEntries().add(entry);
       }
       ret.add(paletteCompartmentEntry);
@@ -921,25 +901,9 @@ public class ActivitiToolBehaviorProvider extends DefaultToolBehaviorProvider {
 
     // Graphiti sets the diagram type prover id with || in front of the image key
     String prefixId = getDiagramTypeProvider().getProviderId() + "||";
-    @SuppressWarnings("restriction")
-    final ImageRegistry reg = GraphitiUIPlugin.getDefault().getImageRegistry();
     for (final CustomUserTaskContext taskContext : customUserTaskContexts) {
-      try {
-        if (reg.get(prefixId + taskContext.getSmallImageKey()) == null) {
-          reg.put(prefixId + taskContext.getSmallImageKey(), 
-              new Image(Display.getCurrent(), taskContext.getSmallIconStream()));
-        }
-        if (reg.get(prefixId + taskContext.getLargeImageKey()) == null) {
-          reg.put(prefixId + taskContext.getLargeImageKey(),
-                  new Image(Display.getCurrent(), taskContext.getLargeIconStream()));
-        }
-        if (reg.get(prefixId + taskContext.getShapeImageKey()) == null) {
-          reg.put(prefixId + taskContext.getShapeImageKey(),
-                  new Image(Display.getCurrent(), taskContext.getShapeIconStream()));
-        }
-      } catch (Exception e) {
-        Logger.logError("Error loading image", e);
-      }
+      // the icons are only decoded the first time the context is seen
+      CustomTaskImages.register(prefixId, taskContext);
     }
 
     for (final CustomUserTaskContext taskContext : customUserTaskContexts) {
@@ -978,8 +942,9 @@ public class ActivitiToolBehaviorProvider extends DefaultToolBehaviorProvider {
         final CreateCustomUserTaskFeature feature = new CreateCustomUserTaskFeature(getFeatureProvider(), name,
                 currentDrawerItem.getUserTask().getDescription(), currentDrawerItem.getUserTask().getClass().getCanonicalName());
         
+        final String imageKey = CustomTaskImages.getImageKey(currentDrawerItem.getSmallImageKey());
         final IToolEntry entry = new ObjectCreationToolEntry(name, currentDrawerItem.getUserTask().getDescription(),
-              currentDrawerItem.getSmallImageKey(), currentDrawerItem.getSmallImageKey(), feature);
+              imageKey, imageKey, feature);
         paletteCompartmentEntry.getToolEntries().add(entry);
       }
       ret.add(paletteCompartmentEntry);
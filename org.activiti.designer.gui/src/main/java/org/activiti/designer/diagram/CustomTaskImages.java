@@ -0,0 +1,140 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.activiti.designer.diagram;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.activiti.designer.eclipse.Logger;
+import org.activiti.designer.util.extension.CustomServiceTaskContext;
+import org.activiti.designer.util.extension.CustomUserTaskContext;
+import org.eclipse.graphiti.ui.internal.GraphitiUIPlugin;
+import org.eclipse.jface.resource.ImageRegistry;
+import org.eclipse.swt.graphics.Image;
+import org.eclipse.swt.widgets.Display;
+
+/**
+ * Registers the icons of custom tasks in the image registry of Graphiti. The icons of a context are
+ * only read once: the contexts are kept until the jar of their extension changes, so a new context
+ * for the same keys means a new version of the jar.
+ *
+ * <p>
+ * An icon that is registered already is never replaced, as shapes and palette entries may still
+ * show it. If a new version of the jar has the same icon, the registered image is kept. If the icon
+ * changed, it is registered under a new key, which {@link #getImageKey(String)} returns from then
+ * on. The images of the previous versions stay registered until the registry is disposed.
+ */
+public final class CustomTaskImages {
+
+  // prefixed shape image key -> the context whose icons are registered
+  private static final Map<String, Object> registeredContexts = new HashMap<String, Object>();
+
+  // image key of a context -> the key its current icon is registered under, if it isn't the same
+  private static final Map<String, String> currentKeys = new HashMap<String, String>();
+
+  // prefixed registered key -> the content of the icon
+  private static final Map<String, byte[]> registeredIcons = new HashMap<String, byte[]>();
+
+  private static int version;
+
+  private CustomTaskImages() {
+
+  }
+
+  /**
+   * @param prefixId
+   *          the prefix Graphiti puts in front of the image keys of the diagram type
+   */
+  public static synchronized void register(final String prefixId, final CustomServiceTaskContext taskContext) {
+    if (registeredContexts.get(prefixId + taskContext.getShapeImageKey()) == taskContext) {
+      return;
+    }
+    put(prefixId, taskContext.getSmallImageKey(), taskContext.getSmallIconStream());
+    put(prefixId, taskContext.getLargeImageKey(), taskContext.getLargeIconStream());
+    put(prefixId, taskContext.getShapeImageKey(), taskContext.getShapeIconStream());
+    registeredContexts.put(prefixId + taskContext.getShapeImageKey(), taskContext);
+  }
+
+  /**
+   * @param prefixId
+   *          the prefix Graphiti puts in front of the image keys of the diagram type
+   */
+  public static synchronized void register(final String prefixId, final CustomUserTaskContext taskContext) {
+    if (registeredContexts.get(prefixId + taskContext.getShapeImageKey()) == taskContext) {
+      return;
+    }
+    put(prefixId, taskContext.getSmallImageKey(), taskContext.getSmallIconStream());
+    put(prefixId, taskContext.getLargeImageKey(), taskContext.getLargeIconStream());
+    put(prefixId, taskContext.getShapeImageKey(), taskContext.getShapeIconStream());
+    registeredContexts.put(prefixId + taskContext.getShapeImageKey(), taskContext);
+  }
+
+  /**
+   * @param imageKey
+   *          an image key of a custom task context
+   * @return the key the current icon for the image key is registered under
+   */
+  public static synchronized String getImageKey(final String imageKey) {
+    final String currentKey = currentKeys.get(imageKey);
+    return currentKey != null ? currentKey : imageKey;
+  }
+
+  @SuppressWarnings("restriction")
+  private static void put(final String prefixId, final String imageKey, final InputStream stream) {
+    if (stream == null) {
+      return;
+    }
+    final ImageRegistry reg = GraphitiUIPlugin.getDefault().getImageRegistry();
+    try {
+      final byte[] icon = read(stream);
+      String key = getImageKey(imageKey);
+      if (reg.get(prefixId + key) != null) {
+        if (Arrays.equals(icon, registeredIcons.get(prefixId + key))) {
+          // the same icon in a new version of the extension
+          return;
+        }
+        // the registered icon may still be shown, so the new one gets its own key
+        key = imageKey + "#" + ++version;
+      }
+      reg.put(prefixId + key, new Image(Display.getCurrent(), new ByteArrayInputStream(icon)));
+      registeredIcons.put(prefixId + key, icon);
+      if (!key.equals(imageKey)) {
+        currentKeys.put(imageKey, key);
+      }
+    } catch (Exception e) {
+      Logger.logError("Error loading image", e);
+    } finally {
+      try {
+        stream.close();
+      } catch (IOException e) {
+        // ignore
+      }
+    }
+  }
+
+  private static byte[] read(final InputStream stream) throws IOException {
+    final ByteArrayOutputStream content = new ByteArrayOutputStream();
+    final byte[] buffer = new byte[4096];
+    int read;
+    while ((read = stream.read(buffer)) != -1) {
+      content.write(buffer, 0, read);
+    }
+    return content.toByteArray();
+  }
+}
@@ -25,8 +25,6 @@
  */
 package org.activiti.designer.diagram;
 
-import java.util.List;
-
 import org.activiti.bpmn.model.BoundaryEvent;
 import org.activiti.bpmn.model.BusinessRuleTask;
 import org.activiti.bpmn.model.CallActivity;
@@ -133,14 +131,12 @@ public class DefaultIconProvider implements IconProvider {
         
         if (ExtensionUtil.isCustomServiceTask(context)) {
           DiagramEditor editor = (DiagramEditor) PlatformUI.getWorkbench().getActiveWorkbenchWindow().getActivePage().getActiveEditor();
-          final List<CustomServiceTaskContext> customServiceTaskContexts = ExtensionUtil.getCustomServiceTaskContexts(
-                  ActivitiUiUtil.getProjectFromDiagram(editor.getDiagramTypeProvider().getDiagram()));
-          for (CustomServiceTaskContext customServiceTaskContext : customServiceTaskContexts) {
-            if (customServiceTaskContext.getServiceTask().getId().equals(serviceTask.getExtensionId())) {
-              @SuppressWarnings("restriction")
-              final ImageRegistry reg = GraphitiUIPlugin.getDefault().getImageRegistry();
-              return reg.get(editor.getDiagramTypeProvider().getProviderId() + "||" + customServiceTaskContext.getSmallImageKey());
-            }
+          final CustomServiceTaskContext customServiceTaskContext = ExtensionUtil.getCustomServiceTaskContext(
+                  ActivitiUiUtil.getProjectFromDiagram(editor.getDiagramTypeProvider().getDiagram()), serviceTask.getExtensionId());
+          if (customServiceTaskContext != null) {
+            @SuppressWarnings("restriction")
+            final ImageRegistry reg = GraphitiUIPlugin.getDefault().getImageRegistry();
+            return reg.get(editor.getDiagramTypeProvider().getProviderId() + "||" + CustomTaskImages.getImageKey(customServiceTaskContext.getSmallImageKey()));
           }
         }
         
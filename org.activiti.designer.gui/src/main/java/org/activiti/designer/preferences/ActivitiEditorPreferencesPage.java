@@ -18,6 +18,7 @@ import org.activiti.designer.util.preferences.Preferences;
 import org.eclipse.jface.preference.BooleanFieldEditor;
 import org.eclipse.jface.preference.FieldEditorPreferencePage;
 import org.eclipse.jface.preference.IPreferenceStore;
+import org.eclipse.jface.preference.IntegerFieldEditor;
 import org.eclipse.ui.IWorkbench;
 import org.eclipse.ui.IWorkbenchPreferencePage;
 
@@ -32,6 +33,12 @@ public class ActivitiEditorPreferencesPage extends FieldEditorPreferencePage imp
 				"&Automatically create a label when adding a new sequence flow", getFieldEditorParent()));
 		addField(new BooleanFieldEditor(Preferences.EDITOR_ADD_DEFAULT_CONTENT_TO_DIAGRAMS.getPreferenceId(),
 				"&Create default diagram content when creating new diagrams and subprocesses", getFieldEditorParent()));
+
+		final IntegerFieldEditor lazyShapesEditor = new IntegerFieldEditor(Preferences.EDITOR_LAZY_SHAPES_THRESHOLD.getPreferenceId(),
+				"&Only create shapes in view for diagrams with at least this many elements (0 to always create all)",
+				getFieldEditorParent());
+		lazyShapesEditor.setValidRange(0, Integer.MAX_VALUE);
+		addField(lazyShapesEditor);
 	}
 
 	@Override
@@ -28,6 +28,7 @@ import org.eclipse.jface.preference.ColorFieldEditor;
 import org.eclipse.jface.preference.FieldEditor;
 import org.eclipse.jface.preference.FieldEditorPreferencePage;
 import org.eclipse.jface.preference.IPreferenceStore;
+import org.eclipse.jface.preference.IntegerFieldEditor;
 import org.eclipse.jface.preference.RadioGroupFieldEditor;
 import org.eclipse.jface.util.PropertyChangeEvent;
 import org.eclipse.swt.SWT;
@@ -54,6 +55,11 @@ public class ActivitiSavePreferencesPage extends FieldEditorPreferencePage imple
     addField(new BooleanFieldEditor(Preferences.SAVE_IMAGE.getPreferenceId(), "&Create process definition image when saving the diagram",
             getFieldEditorParent()));
 
+    final IntegerFieldEditor maxSizeEditor = new IntegerFieldEditor(Preferences.SAVE_IMAGE_MAX_SIZE.getPreferenceId(),
+            "&Maximum width and height of the image in pixels (0 for no limit)", getFieldEditorParent());
+    maxSizeEditor.setValidRange(0, Integer.MAX_VALUE);
+    addField(maxSizeEditor);
+
     overlayComponents = new ArrayList<FieldEditor>();
 
     overlayGroup = new Group(getFieldEditorParent(), SWT.BORDER);
@@ -240,7 +240,7 @@ public abstract class ActivitiPropertySection extends BaseActivitiPropertySectio
     // to allow for "undoing" changes
     TransactionalEditingDomain editingDomain = getTransactionalEditingDomain();
     
-    if (currentUpdater != null) {
+    if (currentUpdater != null && currentUpdater.hasUpdates()) {
       // Do the actual changes to the business-object in a command
       editingDomain.getCommandStack().execute(new UpdateBusinessObjectCommand(editingDomain, currentUpdater));
     }
@@ -278,11 +278,11 @@ public abstract class ActivitiPropertySection extends BaseActivitiPropertySectio
   }
   
   /**
-   * Clears the current updates, if any and creates a new fresh updater based on the
-   * current model state.
+   * Clears the current updates, if any. A new updater is created based on the
+   * model state when the next change is made.
    */
   protected void resetModelUpdater() {
-    currentUpdater = createProcessModelUpdater();
+    currentUpdater = null;
   }
   
   /**
@@ -21,6 +21,7 @@ import org.activiti.designer.kickstart.eclipse.Logger;
 import org.activiti.designer.kickstart.eclipse.util.FileService;
 import org.activiti.designer.util.editor.KickstartFormMemoryModel;
 import org.activiti.designer.util.editor.ModelHandler;
+import org.activiti.designer.util.workspace.SaveOutputTracker;
 import org.activiti.workflow.simple.alfresco.conversion.json.AlfrescoSimpleWorkflowJsonConverter;
 import org.activiti.workflow.simple.definition.form.FormDefinition;
 import org.activiti.workflow.simple.definition.form.FormPropertyDefinition;
@@ -79,7 +80,9 @@ public class KickstartFormEditor extends DiagramEditor {
           EcoreUtil.getURI(getDiagramTypeProvider().getDiagram()));
       jsonConverter.writeFormDefinition(model.getFormDefinition(), writer);
       
-      dataFile.getProject().refreshLocal(IResource.DEPTH_INFINITE, null);
+      final SaveOutputTracker saveOutput = new SaveOutputTracker();
+      saveOutput.fileWritten(objectsFile);
+      saveOutput.refresh(null);
     } catch (Exception e) {
       e.printStackTrace();
     }
@@ -104,7 +107,7 @@ public class KickstartFormEditor extends DiagramEditor {
 
     final KickstartDiagramEditorInput adei = (KickstartDiagramEditorInput) getEditorInput();
 
-    ModelHandler.removeModel(EcoreUtil.getURI(getDiagramTypeProvider().getDiagram()));
+    ModelHandler.removeKickstartFormModel(EcoreUtil.getURI(getDiagramTypeProvider().getDiagram()));
     KickstartProcessDiagramCreator.dispose(adei.getDiagramFile());
   }
 
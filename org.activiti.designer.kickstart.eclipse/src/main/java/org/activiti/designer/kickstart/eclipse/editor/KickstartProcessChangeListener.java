@@ -17,6 +17,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 
+import org.activiti.designer.util.editor.PictogramUpdateScheduler;
 import org.eclipse.emf.common.command.Command;
 import org.eclipse.emf.common.notify.Notification;
 import org.eclipse.emf.ecore.EObject;
@@ -29,18 +30,18 @@ import org.eclipse.graphiti.mm.pictograms.Diagram;
 import org.eclipse.graphiti.mm.pictograms.PictogramElement;
 import org.eclipse.graphiti.notification.INotificationService;
 import org.eclipse.graphiti.platform.IDiagramBehavior;
-import org.eclipse.graphiti.platform.IDiagramContainer;
-import org.eclipse.swt.widgets.Display;
 
 
 public class KickstartProcessChangeListener implements ResourceSetListener {
 
   private final IDiagramBehavior diagramBehavior;
+  private final PictogramUpdateScheduler updateScheduler;
 
   public KickstartProcessChangeListener(final IDiagramBehavior diagramBehavior) {
     super();
 
     this.diagramBehavior = diagramBehavior;
+    this.updateScheduler = new PictogramUpdateScheduler(diagramBehavior);
   }
 
   @Override
@@ -89,22 +90,8 @@ public class KickstartProcessChangeListener implements ResourceSetListener {
     final PictogramElement[] dirtyPEs
       = notificationService.calculateRelatedPictogramElements(changedBOs.toArray());
 
-    if (dirtyPEs.length > 0) {
-      // do an asynchronous update in the UI thread
-      Display.getDefault().asyncExec(new Runnable() {
-
-        @Override
-        public void run() {
-          IDiagramContainer diagramContainer = provider.getDiagramBehavior().getDiagramContainer();
-          if (provider.isAutoUpdateAtRuntime() && diagramContainer.isDirty()) {
-            notificationService.updatePictogramElements(dirtyPEs);
-          } else {
-            diagramContainer.getDiagramBehavior().refresh();
-          }
-        }
-
-      });
-    }
+    // merged with the changes of the following transactions into a single update
+    updateScheduler.schedule(dirtyPEs);
   }
 
   @Override
@@ -0,0 +1,46 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.activiti.designer.kickstart.eclipse.editor;
+
+import org.eclipse.graphiti.ui.editor.DiagramBehavior;
+import org.eclipse.graphiti.ui.editor.IDiagramContainerUI;
+
+/**
+ * The diagram behavior of the kickstart process editor. It listens to the business objects with a
+ * {@link KickstartProcessChangeListener} instead of Graphiti's own domain model listener, which updates the
+ * changed pictogram elements once per transaction. The listener merges the updates of the
+ * transactions that follow each other closely, such as the ones of moving many shapes.
+ */
+public class KickstartProcessDiagramBehavior extends DiagramBehavior {
+
+  private KickstartProcessChangeListener modelChangeListener;
+
+  public KickstartProcessDiagramBehavior(final IDiagramContainerUI diagramContainer) {
+    super(diagramContainer);
+  }
+
+  @Override
+  protected void registerBusinessObjectsListener() {
+    modelChangeListener = new KickstartProcessChangeListener(this);
+    getEditingDomain().addResourceSetListener(modelChangeListener);
+  }
+
+  @Override
+  protected void unregisterBusinessObjectsListener() {
+    if (modelChangeListener != null && getEditingDomain() != null) {
+      getEditingDomain().removeResourceSetListener(modelChangeListener);
+    }
+    modelChangeListener = null;
+  }
+}
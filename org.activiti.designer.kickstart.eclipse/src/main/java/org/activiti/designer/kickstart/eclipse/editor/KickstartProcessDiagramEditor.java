@@ -19,8 +19,10 @@ import java.io.FileWriter;
 
 import org.activiti.designer.kickstart.eclipse.common.KickstartPlugin;
 import org.activiti.designer.kickstart.eclipse.util.FileService;
+import org.activiti.designer.kickstart.util.SuspendableLayout;
 import org.activiti.designer.util.editor.KickstartProcessMemoryModel;
 import org.activiti.designer.util.editor.ModelHandler;
+import org.activiti.designer.util.workspace.SaveOutputTracker;
 import org.activiti.workflow.simple.alfresco.conversion.json.AlfrescoSimpleWorkflowJsonConverter;
 import org.activiti.workflow.simple.definition.StepDefinition;
 import org.activiti.workflow.simple.definition.WorkflowDefinition;
@@ -41,6 +43,7 @@ import org.eclipse.graphiti.features.IFeatureProvider;
 import org.eclipse.graphiti.features.context.impl.AddContext;
 import org.eclipse.graphiti.features.context.impl.AreaContext;
 import org.eclipse.graphiti.mm.pictograms.Diagram;
+import org.eclipse.graphiti.ui.editor.DiagramBehavior;
 import org.eclipse.graphiti.ui.editor.DiagramEditor;
 import org.eclipse.graphiti.ui.editor.DiagramEditorInput;
 import org.eclipse.jface.dialogs.ErrorDialog;
@@ -58,6 +61,11 @@ public class KickstartProcessDiagramEditor extends DiagramEditor {
     super();
   }
 
+  @Override
+  protected DiagramBehavior createDiagramBehavior() {
+    return new KickstartProcessDiagramBehavior(this);
+  }
+
   @Override
   public TransactionalEditingDomain getEditingDomain() {
     TransactionalEditingDomain ted = super.getEditingDomain();
@@ -124,7 +132,9 @@ public class KickstartProcessDiagramEditor extends DiagramEditor {
       converter.writeWorkflowDefinition(model.getWorkflowDefinition(), writer);
       writer.close();
 
-      dataFile.getProject().refreshLocal(IResource.DEPTH_INFINITE, null);
+      final SaveOutputTracker saveOutput = new SaveOutputTracker();
+      saveOutput.fileWritten(objectsFile);
+      saveOutput.refresh(null);
 
     } catch (Exception e) {
       // TODO Auto-generated catch block
@@ -221,13 +231,24 @@ public class KickstartProcessDiagramEditor extends DiagramEditor {
         areaContext.setY(-1);
         areaContext.setX(-1);
 
-        // Add steps in reverse order to have correct layout
-        StepDefinition step = null;
-        for (int i = model.getWorkflowDefinition().getSteps().size() - 1; i >= 0; i--) {
-          step = model.getWorkflowDefinition().getSteps().get(i);
-          AddContext addContext = new AddContext(areaContext, step);
-          addContext.setTargetContainer(getDiagramTypeProvider().getDiagram());
-          featureProvider.getAddFeature(addContext).add(addContext);
+        // Lay out the diagram once all steps have been added, instead of after every step
+        final SuspendableLayout layout = featureProvider instanceof SuspendableLayout ? (SuspendableLayout) featureProvider : null;
+        if (layout != null) {
+          layout.suspendLayout();
+        }
+        try {
+          // Add steps in reverse order to have correct layout
+          StepDefinition step = null;
+          for (int i = model.getWorkflowDefinition().getSteps().size() - 1; i >= 0; i--) {
+            step = model.getWorkflowDefinition().getSteps().get(i);
+            AddContext addContext = new AddContext(areaContext, step);
+            addContext.setTargetContainer(getDiagramTypeProvider().getDiagram());
+            featureProvider.getAddFeature(addContext).add(addContext);
+          }
+        } finally {
+          if (layout != null) {
+            layout.resumeLayout();
+          }
         }
       }
     });
@@ -243,7 +264,7 @@ public class KickstartProcessDiagramEditor extends DiagramEditor {
 
     final KickstartDiagramEditorInput adei = (KickstartDiagramEditorInput) getEditorInput();
 
-    ModelHandler.getKickstartProcessModel(EcoreUtil.getURI(getDiagramTypeProvider().getDiagram()));
+    ModelHandler.removeKickstartProcessModel(EcoreUtil.getURI(getDiagramTypeProvider().getDiagram()));
     KickstartProcessDiagramCreator.dispose(adei.getDiagramFile());
   }
 }
@@ -43,6 +43,7 @@ import org.activiti.designer.kickstart.process.features.MoveStepDefinitionFeatur
 import org.activiti.designer.kickstart.process.features.ProcessStepResizeFeature;
 import org.activiti.designer.kickstart.process.features.UpdateStepDefinitionFeature;
 import org.activiti.designer.kickstart.process.layout.KickstartProcessLayouter;
+import org.activiti.designer.kickstart.util.SuspendableLayout;
 import org.activiti.designer.util.editor.KickstartProcessIndependenceSolver;
 import org.activiti.designer.util.editor.KickstartProcessMemoryModel;
 import org.activiti.designer.util.editor.ModelHandler;
@@ -67,7 +68,7 @@ import org.eclipse.graphiti.mm.pictograms.Diagram;
 import org.eclipse.graphiti.mm.pictograms.PictogramElement;
 import org.eclipse.graphiti.ui.features.DefaultFeatureProvider;
 
-public class KickstartProcessFeatureProvider extends DefaultFeatureProvider {
+public class KickstartProcessFeatureProvider extends DefaultFeatureProvider implements SuspendableLayout {
 
   protected KickstartProcessIndependenceSolver independenceResolver;
   protected KickstartProcessLayouter processLayouter;
@@ -194,4 +195,14 @@ public class KickstartProcessFeatureProvider extends DefaultFeatureProvider {
   public KickstartProcessLayouter getProcessLayouter() {
     return processLayouter;
   }
+
+  @Override
+  public void suspendLayout() {
+    processLayouter.suspendLayout();
+  }
+
+  @Override
+  public void resumeLayout() {
+    processLayouter.resumeLayout(this);
+  }
 }
@@ -13,6 +13,9 @@
  */
 package org.activiti.designer.kickstart.process.layout;
 
+import java.util.LinkedHashSet;
+import java.util.Set;
+
 import org.activiti.designer.kickstart.process.diagram.KickstartProcessFeatureProvider;
 import org.activiti.designer.kickstart.process.diagram.ProcessComponentLayout;
 import org.activiti.designer.kickstart.process.diagram.shape.BusinessObjectShapeController;
@@ -50,6 +53,10 @@ public class KickstartProcessLayouter {
   protected StepDefinitionVerticalLayout serialLayoutWithLabel;
   protected StepDefinitionVerticalLayout serialLayoutReview;
 
+  // number of nested suspensions of the layout and the diagrams to layout once it is resumed
+  private int suspendCount;
+  private Set<Diagram> suspendedDiagrams = new LinkedHashSet<Diagram>();
+
   public KickstartProcessLayouter() {
     defaultLayout = new ProcessStepsVerticalLayout();
     parallelLayout = new StepDefinitionHorizontalLayout();
@@ -176,11 +183,17 @@ public class KickstartProcessLayouter {
    *          container to re-layout
    */
   public void relayout(ContainerShape targetContainer, KickstartProcessFeatureProvider provider) {
+    if (deferIfSuspended(targetContainer)) {
+      return;
+    }
     ContainerShape actualTargetContainer = getValidLayoutContainerShape(targetContainer, null);
     relayoutInternal(getLayoutForContainer(actualTargetContainer), actualTargetContainer, provider);
   }
 
   public void relayoutIfNeeded(ContainerShape targetContainer, KickstartProcessFeatureProvider provider) {
+    if (deferIfSuspended(targetContainer)) {
+      return;
+    }
     ContainerShape actualTargetContainer = getValidLayoutContainerShape(targetContainer, null);
 
     if (actualTargetContainer == targetContainer) {
@@ -214,6 +227,55 @@ public class KickstartProcessLayouter {
     relayout(getDiagram(container), provider);
   }
 
+  /**
+   * Suspends the layout until {@link #resumeLayout(KickstartProcessFeatureProvider)} is called, for
+   * operations that add, move or delete many shapes at once, such as importing a process. Each of
+   * those would otherwise re-layout the full diagram. While the layout is suspended shapes are still
+   * put in the right order in their container, but nothing is positioned; the diagrams that needed a
+   * layout are laid out once when the layout is resumed.
+   *
+   * <p>
+   * Suspensions may be nested; the layout is resumed when the outermost suspension ends. Always
+   * resume in a finally block, in the same transaction.
+   */
+  public void suspendLayout() {
+    suspendCount++;
+  }
+
+  /**
+   * Ends a suspension started with {@link #suspendLayout()}. If it was the outermost suspension, the
+   * diagrams that needed a layout while it was suspended are laid out in full.
+   */
+  public void resumeLayout(KickstartProcessFeatureProvider provider) {
+    if (suspendCount == 0 || --suspendCount > 0) {
+      return;
+    }
+    final Set<Diagram> diagrams = suspendedDiagrams;
+    suspendedDiagrams = new LinkedHashSet<Diagram>();
+    for (final Diagram diagram : diagrams) {
+      relayout(diagram, provider);
+    }
+  }
+
+  public boolean isLayoutSuspended() {
+    return suspendCount > 0;
+  }
+
+  /**
+   * @return true if the layout is suspended, in which case the diagram of the container is laid out
+   *         when the layout is resumed
+   */
+  private boolean deferIfSuspended(ContainerShape container) {
+    if (suspendCount == 0) {
+      return false;
+    }
+    final Diagram diagram = getDiagram(container);
+    if (diagram != null) {
+      suspendedDiagrams.add(diagram);
+    }
+    return true;
+  }
+
   protected void relayoutInternal(ProcessComponentLayout layout, ContainerShape actualTargetContainer,
       KickstartProcessFeatureProvider provider) {
 
@@ -0,0 +1,46 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.activiti.designer.kickstart.util;
+
+/**
+ * Implemented by feature providers whose diagrams are laid out automatically, so operations that
+ * change many shapes at once, such as an import, can lay out the diagram once at the end instead of
+ * after every shape.
+ *
+ * <p>
+ * Suspensions may be nested. Always resume in a finally block, in the same transaction in which the
+ * layout was suspended:
+ *
+ * <pre>
+ * layout.suspendLayout();
+ * try {
+ *   // add, move or delete shapes
+ * } finally {
+ *   layout.resumeLayout();
+ * }
+ * </pre>
+ */
+public interface SuspendableLayout {
+
+  /**
+   * Suspends the layout of the diagram until {@link #resumeLayout()} is called.
+   */
+  void suspendLayout();
+
+  /**
+   * Ends a suspension. If it was the outermost suspension, the diagrams that changed while the layout
+   * was suspended are laid out.
+   */
+  void resumeLayout();
+}
@@ -13,6 +13,11 @@
  */
 package org.activiti.designer.util;
 
+import org.activiti.designer.util.editor.ModelHandler;
+import org.activiti.designer.util.extension.ExtensionRegistry;
+import org.activiti.designer.util.workspace.ProcessIdIndex;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
 import org.eclipse.ui.plugin.AbstractUIPlugin;
 import org.osgi.framework.BundleContext;
 
@@ -47,6 +52,10 @@ public class Activator extends AbstractUIPlugin {
 	 * @see org.eclipse.ui.plugin.AbstractUIPlugin#stop(org.osgi.framework.BundleContext)
 	 */
 	public void stop(BundleContext context) throws Exception {
+		ProcessIdIndex.shutdown();
+		ExtensionRegistry.shutdown();
+		// models still open or lingering at this point hint at editors that leak them
+		getLog().log(new Status(IStatus.INFO, PLUGIN_ID, "Model registry: " + ModelHandler.getMetrics()));
 		plugin = null;
 		super.stop(context);
 	}
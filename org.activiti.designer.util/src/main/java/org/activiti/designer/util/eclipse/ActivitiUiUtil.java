@@ -30,6 +30,7 @@ import org.activiti.bpmn.model.Process;
 import org.activiti.bpmn.model.SubProcess;
 import org.activiti.bpmn.model.TextAnnotation;
 import org.activiti.designer.util.editor.BpmnMemoryModel;
+import org.activiti.designer.util.editor.ElementIdAllocator;
 import org.activiti.designer.util.editor.KickstartProcessMemoryModel;
 import org.activiti.designer.util.editor.ModelHandler;
 import org.activiti.workflow.simple.definition.StepDefinition;
@@ -217,6 +218,19 @@ public class ActivitiUiUtil {
 
   public static final String getNextId(final Class<? extends BaseElement> featureClass, final String featureIdKey, final Diagram diagram) {
     BpmnMemoryModel model = ModelHandler.getModel(EcoreUtil.getURI(diagram));
+    
+    // the model is only scanned for the first ID of a kind, after that the allocator keeps track
+    ElementIdAllocator idAllocator = model.getIdAllocator();
+    String category = BpmnMemoryModel.getIdCategory(featureClass);
+    if (idAllocator.isInitialized(category, featureIdKey) == false) {
+      idAllocator.initialize(category, featureIdKey, getMaxId(featureClass, featureIdKey, model));
+    }
+    
+    int determinedId = idAllocator.nextId(category, featureIdKey);
+    return String.format(ID_PATTERN, featureIdKey, determinedId);
+  }
+  
+  private static int getMaxId(final Class<? extends BaseElement> featureClass, final String featureIdKey, final BpmnMemoryModel model) {
     int determinedId = 0;
     
     if (featureClass.equals(Pool.class)) {
@@ -237,8 +251,7 @@ public class ActivitiUiUtil {
         }
       }
     }
-    determinedId++;
-    return String.format(ID_PATTERN, featureIdKey, determinedId);
+    return determinedId;
   }
   
   public static int loopThroughPools(final Class<? extends BaseElement> featureClass, int determinedId, 
@@ -337,15 +350,21 @@ public class ActivitiUiUtil {
   
   public static final String getNextStepId(final Class<? extends StepDefinition> featureClass, final String featureIdKey, final Diagram diagram) {
     KickstartProcessMemoryModel model = ModelHandler.getKickstartProcessModel(EcoreUtil.getURI(diagram));
-    int determinedId = 0;
     
-    for (StepDefinition step : model.getWorkflowDefinition().getSteps()) {
-      if (step.getClass() == featureClass) {
-        String contentObjectId = step.getId().replace(featureIdKey, "");
-        determinedId = getId(contentObjectId, determinedId);
+    ElementIdAllocator idAllocator = model.getIdAllocator();
+    String category = featureClass.getName();
+    if (idAllocator.isInitialized(category, featureIdKey) == false) {
+      int determinedId = 0;
+      for (StepDefinition step : model.getWorkflowDefinition().getSteps()) {
+        if (step.getClass() == featureClass) {
+          String contentObjectId = step.getId().replace(featureIdKey, "");
+          determinedId = getId(contentObjectId, determinedId);
+        }
       }
+      idAllocator.initialize(category, featureIdKey, determinedId);
     }
-    determinedId++;
+    
+    int determinedId = idAllocator.nextId(category, featureIdKey);
     return String.format(ID_PATTERN, featureIdKey, determinedId);
   }
 
@@ -18,6 +18,7 @@ import java.util.Map;
 import org.eclipse.emf.ecore.util.EcoreUtil;
 import org.eclipse.graphiti.dt.IDiagramTypeProvider;
 import org.eclipse.graphiti.features.impl.IIndependenceSolver;
+import org.eclipse.graphiti.mm.pictograms.Diagram;
 
 /**
  * @author Tijs Rademakers
@@ -27,6 +28,10 @@ public class BpmnIndependenceSolver implements IIndependenceSolver {
 	
   private IDiagramTypeProvider diagramTypeProvider;
   
+  // the model of the diagram, resolved once as Graphiti resolves keys very often
+  private Diagram cachedDiagram;
+  private BpmnMemoryModel cachedModel;
+  
   public BpmnIndependenceSolver(IDiagramTypeProvider diagramTypeProvider) {
     this.diagramTypeProvider = diagramTypeProvider;
   }
@@ -50,13 +55,34 @@ public class BpmnIndependenceSolver implements IIndependenceSolver {
   }
   
   protected BpmnMemoryModel ensureBpmnMemoryModel() {
-    if(diagramTypeProvider.getDiagram() == null) {
+    Diagram diagram = diagramTypeProvider.getDiagram();
+    if(diagram == null) {
       throw new IllegalStateException("No diagram is currently active");
     }
     
-    BpmnMemoryModel model = ModelHandler.getModel(EcoreUtil.getURI(diagramTypeProvider.getDiagram()));
+    BpmnMemoryModel model = getModel();
     if(model == null) {
-      throw new IllegalStateException("No diagram model is currently available for diagram: " + EcoreUtil.getURI(diagramTypeProvider.getDiagram()));
+      throw new IllegalStateException("No diagram model is currently available for diagram: " + EcoreUtil.getURI(diagram));
+    }
+    return model;
+  }
+  
+  /**
+   * @return the model of the active diagram or null if there is none
+   */
+  public BpmnMemoryModel getModel() {
+    Diagram diagram = diagramTypeProvider.getDiagram();
+    if (diagram == null) {
+      return null;
+    }
+    if (diagram == cachedDiagram) {
+      return cachedModel;
+    }
+    
+    BpmnMemoryModel model = ModelHandler.getModel(EcoreUtil.getURI(diagram));
+    if (model != null) {
+      cachedDiagram = diagram;
+      cachedModel = model;
     }
     return model;
   }
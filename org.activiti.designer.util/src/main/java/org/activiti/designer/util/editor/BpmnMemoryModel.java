@@ -14,13 +14,16 @@
 package org.activiti.designer.util.editor;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 import org.activiti.bpmn.model.Artifact;
+import org.activiti.bpmn.model.BaseElement;
 import org.activiti.bpmn.model.BpmnModel;
 import org.activiti.bpmn.model.FlowElement;
+import org.activiti.bpmn.model.Lane;
+import org.activiti.bpmn.model.MessageFlow;
+import org.activiti.bpmn.model.Pool;
 import org.activiti.bpmn.model.Process;
 import org.apache.commons.lang.StringUtils;
 import org.eclipse.core.resources.IFile;
@@ -30,7 +33,8 @@ public class BpmnMemoryModel {
   
     protected IFeatureProvider featureProvider;
     protected IFile modelFile;
-    protected Map<String, Object> objectMap;
+    protected BusinessObjectIndex businessObjectIndex = new BusinessObjectIndex();
+    protected ElementIdAllocator idAllocator = new ElementIdAllocator();
     protected List<BpmnModelListener> modelListeners;
     protected List<FlowElement> clipboard = new ArrayList<FlowElement>();
     protected BpmnModel bpmnModel;
@@ -38,7 +42,6 @@ public class BpmnMemoryModel {
     public BpmnMemoryModel(IFeatureProvider featureProvider, IFile modelFile) {
         this.featureProvider = featureProvider;
         this.modelFile = modelFile;
-        objectMap = new HashMap<String, Object>();
         modelListeners = new ArrayList<BpmnModelListener>();
     }
     
@@ -91,6 +94,29 @@ public class BpmnMemoryModel {
 
   public void setBpmnModel(BpmnModel bpmnModel) {
     this.bpmnModel = bpmnModel;
+    idAllocator.reset();
+  }
+  
+  public ElementIdAllocator getIdAllocator() {
+    return idAllocator;
+  }
+  
+  /**
+   * Returns the category of the {@link ElementIdAllocator} new IDs for elements of the given class
+   * are allocated in. Elements in the same category may not use the same number for a prefix.
+   */
+  public static String getIdCategory(Class<?> elementClass) {
+    if (Pool.class.equals(elementClass)) {
+      return "pool";
+    } else if (Lane.class.equals(elementClass)) {
+      return "lane";
+    } else if (Artifact.class.isAssignableFrom(elementClass)) {
+      return "artifact";
+    } else if (MessageFlow.class.equals(elementClass)) {
+      return "messageFlow";
+    } else {
+      return elementClass.getName();
+    }
   }
   
   public void addModelListener(BpmnModelListener listener) {
@@ -104,27 +130,29 @@ public class BpmnMemoryModel {
   }
   
   public String getKeyForBusinessObject(Object bo) {
-    String result = null;
-    // TODO: Don't use hashcode??
-    if(bo != null) {
-        result = String.valueOf(bo.hashCode());
-        if(!objectMap.containsKey(result)) {
-          objectMap.put(result, bo);
-        }
-    }
-    return result;
+    return businessObjectIndex.getKey(bo);
   }
   
   public Object getBusinessObjectForKey(String key) {
-    return objectMap.get(key);
+    return businessObjectIndex.getBusinessObject(key);
+  }
+  
+  public BusinessObjectIndex getBusinessObjectIndex() {
+    return businessObjectIndex;
   }
   
+  /**
+   * @return a copy of the key to business object mapping
+   */
   public Map<String, Object> getObjectMap() {
-    return objectMap;
+    return businessObjectIndex.toMap();
   }
   
   public void setObjectMap(Map<String, Object> objectMap) {
-    this.objectMap = objectMap;
+    businessObjectIndex.clear();
+    for (Map.Entry<String, Object> entry : objectMap.entrySet()) {
+      businessObjectIndex.put(entry.getKey(), entry.getValue());
+    }
   }
   
   public interface BpmnModelListener {
@@ -132,6 +160,10 @@ public class BpmnMemoryModel {
   }
 
   public void modelObjectUpdated(Object businessObject) {
+    if (businessObject instanceof BaseElement) {
+      // the ID may have been changed
+      idAllocator.idChanged(getIdCategory(businessObject.getClass()), ((BaseElement) businessObject).getId());
+    }
     for (BpmnModelListener listener : modelListeners) {
       listener.objectUpdated(businessObject);
     }
@@ -0,0 +1,202 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.activiti.designer.util.editor;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.eclipse.graphiti.mm.pictograms.PictogramElement;
+
+/**
+ * Maps the business objects of a diagram to the keys Graphiti stores in the pictogram links. Each
+ * business object gets its own key the first time it is linked, based on object identity, so the
+ * key never changes while the object is edited and two objects can never share a key. The index
+ * also remembers the pictogram element each business object was first linked to.
+ *
+ * <p>
+ * Business objects are only referenced weakly. The model references the objects of the diagram,
+ * and the commands on the command stack the deleted objects they can restore, so an entry is only
+ * removed once nothing can link its object again.
+ */
+public class BusinessObjectIndex {
+
+  private final ReferenceQueue<Object> collectedObjects = new ReferenceQueue<Object>();
+
+  private final Map<IdentityReference, String> keysByObject = new HashMap<IdentityReference, String>();
+  private final Map<String, IdentityReference> objectsByKey = new HashMap<String, IdentityReference>();
+  private final Map<IdentityReference, PictogramElement> pictogramElements = new HashMap<IdentityReference, PictogramElement>();
+
+  private long nextKey = 1;
+
+  /**
+   * Returns the key of the business object, assigning a new key if the object has none yet.
+   */
+  public synchronized String getKey(final Object businessObject) {
+    if (businessObject == null) {
+      return null;
+    }
+    expungeCollectedObjects();
+    String key = keysByObject.get(new IdentityReference(businessObject));
+    if (key == null) {
+      key = "bo" + nextKey++;
+      final IdentityReference reference = new IdentityReference(businessObject, collectedObjects);
+      keysByObject.put(reference, key);
+      objectsByKey.put(key, reference);
+    }
+    return key;
+  }
+
+  public synchronized Object getBusinessObject(final String key) {
+    final IdentityReference reference = objectsByKey.get(key);
+    return reference != null ? reference.get() : null;
+  }
+
+  /**
+   * Adds the business object under the provided key, for example when restoring an index. An
+   * object already stored under the key is replaced.
+   */
+  public synchronized void put(final String key, final Object businessObject) {
+    expungeCollectedObjects();
+    final IdentityReference reference = new IdentityReference(businessObject, collectedObjects);
+    final IdentityReference previous = objectsByKey.put(key, reference);
+    if (previous != null && previous.get() != businessObject) {
+      keysByObject.remove(previous);
+      pictogramElements.remove(previous);
+    }
+    keysByObject.remove(reference);
+    keysByObject.put(reference, key);
+  }
+
+  /**
+   * Returns the pictogram element the business object was linked to, or null if it is not known.
+   * The element may have been removed from the diagram since, so callers need to validate it.
+   */
+  public synchronized PictogramElement getPictogramElement(final Object businessObject) {
+    if (businessObject == null) {
+      return null;
+    }
+    return pictogramElements.get(new IdentityReference(businessObject));
+  }
+
+  /**
+   * Remembers the pictogram element of the business object, unless a different element is already
+   * known and the replace flag is false.
+   */
+  public synchronized void setPictogramElement(final Object businessObject, final PictogramElement pictogramElement,
+          final boolean replace) {
+
+    if (businessObject == null) {
+      return;
+    }
+    expungeCollectedObjects();
+    final IdentityReference reference = new IdentityReference(businessObject, collectedObjects);
+    if (replace || !pictogramElements.containsKey(reference)) {
+      pictogramElements.remove(reference);
+      pictogramElements.put(reference, pictogramElement);
+    }
+  }
+
+  public synchronized void remove(final Object businessObject) {
+    if (businessObject == null) {
+      return;
+    }
+    final IdentityReference reference = new IdentityReference(businessObject);
+    final String key = keysByObject.remove(reference);
+    if (key != null) {
+      objectsByKey.remove(key);
+    }
+    pictogramElements.remove(reference);
+  }
+
+  public synchronized void clear() {
+    keysByObject.clear();
+    objectsByKey.clear();
+    pictogramElements.clear();
+  }
+
+  public synchronized int size() {
+    expungeCollectedObjects();
+    return objectsByKey.size();
+  }
+
+  /**
+   * Returns a copy of the key to business object mapping.
+   */
+  public synchronized Map<String, Object> toMap() {
+    final Map<String, Object> result = new HashMap<String, Object>();
+    for (final Entry<String, IdentityReference> entry : objectsByKey.entrySet()) {
+      final Object businessObject = entry.getValue().get();
+      if (businessObject != null) {
+        result.put(entry.getKey(), businessObject);
+      }
+    }
+    return Collections.unmodifiableMap(result);
+  }
+
+  /**
+   * Removes the entries of the business objects that have been garbage collected.
+   */
+  private void expungeCollectedObjects() {
+    Reference< ? extends Object> collected;
+    while ((collected = collectedObjects.poll()) != null) {
+      final String key = keysByObject.remove(collected);
+      if (key != null && objectsByKey.get(key) == collected) {
+        objectsByKey.remove(key);
+      }
+      pictogramElements.remove(collected);
+    }
+  }
+
+  /**
+   * A weak reference that is equal to the references to the same object. Once the object has been
+   * collected, the reference is only equal to itself.
+   */
+  private static class IdentityReference extends WeakReference<Object> {
+
+    private final int hashCode;
+
+    public IdentityReference(final Object referent) {
+      super(referent);
+      this.hashCode = System.identityHashCode(referent);
+    }
+
+    public IdentityReference(final Object referent, final ReferenceQueue<Object> queue) {
+      super(referent, queue);
+      this.hashCode = System.identityHashCode(referent);
+    }
+
+    @Override
+    public boolean equals(final Object object) {
+      if (this == object) {
+        return true;
+      }
+      if (!(object instanceof IdentityReference)) {
+        return false;
+      }
+      final Object referent = get();
+      return referent != null && referent == ((IdentityReference) object).get();
+    }
+
+    @Override
+    public int hashCode() {
+      return hashCode;
+    }
+  }
+
+}
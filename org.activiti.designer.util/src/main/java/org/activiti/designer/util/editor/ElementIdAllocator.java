@@ -0,0 +1,115 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.activiti.designer.util.editor;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+
+/**
+ * Hands out the numeric part of new element IDs, such as the 5 in "usertask5". For each category
+ * of elements and ID prefix the highest number in use is kept, so a new ID can be determined
+ * without looking at all elements of the model. The highest number is determined once, by scanning
+ * the model, and raised whenever an ID is allocated or an element gets a higher ID. Numbers are
+ * never handed out twice, even when the element that used it has been deleted.
+ */
+public class ElementIdAllocator {
+
+  // category -> ID prefix -> highest number in use
+  private final Map<String, Map<String, Integer>> maxIds = new HashMap<String, Map<String, Integer>>();
+
+  /**
+   * @return true if the highest number for the category and prefix is known
+   */
+  public synchronized boolean isInitialized(final String category, final String featureIdKey) {
+    final Map<String, Integer> categoryIds = maxIds.get(category);
+    return categoryIds != null && categoryIds.containsKey(featureIdKey);
+  }
+
+  /**
+   * Sets the highest number in use for the category and prefix, as determined by scanning the
+   * model.
+   */
+  public synchronized void initialize(final String category, final String featureIdKey, final int maxId) {
+    Map<String, Integer> categoryIds = maxIds.get(category);
+    if (categoryIds == null) {
+      categoryIds = new HashMap<String, Integer>();
+      maxIds.put(category, categoryIds);
+    }
+    categoryIds.put(featureIdKey, maxId);
+  }
+
+  /**
+   * Allocates the next number for the category and prefix, which must have been initialized.
+   */
+  public synchronized int nextId(final String category, final String featureIdKey) {
+    final Map<String, Integer> categoryIds = maxIds.get(category);
+    if (categoryIds == null || !categoryIds.containsKey(featureIdKey)) {
+      throw new IllegalStateException("No IDs have been determined for " + featureIdKey + " in " + category);
+    }
+    final int nextId = categoryIds.get(featureIdKey) + 1;
+    categoryIds.put(featureIdKey, nextId);
+    return nextId;
+  }
+
+  /**
+   * Should be called when an element of the category got a new ID outside of this allocator, for
+   * example because the user changed it.
+   */
+  public synchronized void idChanged(final String category, final String id) {
+    final Map<String, Integer> categoryIds = maxIds.get(category);
+    if (categoryIds == null || id == null) {
+      return;
+    }
+    for (final Entry<String, Integer> entry : categoryIds.entrySet()) {
+      final int number = getNumber(id, entry.getKey());
+      if (number > entry.getValue()) {
+        entry.setValue(number);
+      }
+    }
+  }
+
+  /**
+   * Forgets all numbers, for example because a different model was loaded.
+   */
+  public synchronized void reset() {
+    maxIds.clear();
+  }
+
+  /**
+   * Returns the number of the ID if the ID consists of the prefix and digits only.
+   *
+   * @return the number or -1 if the ID has no number for the prefix
+   */
+  public static int getNumber(final String id, final String featureIdKey) {
+    if (id == null) {
+      return -1;
+    }
+    final String contentObjectId = id.replace(featureIdKey, "");
+    if (contentObjectId.length() == 0) {
+      return -1;
+    }
+    for (int i = 0; i < contentObjectId.length(); i++) {
+      if (!Character.isDigit(contentObjectId.charAt(i))) {
+        return -1;
+      }
+    }
+    try {
+      return Integer.parseInt(contentObjectId);
+    } catch (NumberFormatException e) {
+      return -1;
+    }
+  }
+
+}
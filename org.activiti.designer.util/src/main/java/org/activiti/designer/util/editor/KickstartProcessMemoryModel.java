@@ -33,6 +33,7 @@ public class KickstartProcessMemoryModel {
 	protected IFile modelFile;
 	protected List<FlowElement> clipboard = new ArrayList<FlowElement>();
 	protected Map<String, Object> objectMap;
+	protected ElementIdAllocator idAllocator = new ElementIdAllocator();
 	protected List<KickstartProcessModelListener> modelListeners;
 	protected WorkflowDefinition workflowDefinition;
 	protected boolean initialized = false;
@@ -73,6 +74,10 @@ public class KickstartProcessMemoryModel {
    * @param modelObject the updated object
    */
   public void modelObjectUpdated(Object modelObject) {
+    if (modelObject instanceof StepDefinition) {
+      // the ID may have been changed
+      idAllocator.idChanged(modelObject.getClass().getName(), ((StepDefinition) modelObject).getId());
+    }
     if (modelObject != null) {
       if (modelObject instanceof StepDefinition || modelObject instanceof WorkflowDefinition) {
         if (!modelListeners.isEmpty()) {
@@ -129,6 +134,11 @@ public class KickstartProcessMemoryModel {
 
   public void setWorkflowDefinition(WorkflowDefinition workflowDefinition) {
     this.workflowDefinition = workflowDefinition;
+    idAllocator.reset();
+  }
+  
+  public ElementIdAllocator getIdAllocator() {
+    return idAllocator;
   }
   
   public String getKeyForBusinessObject(Object bo) {
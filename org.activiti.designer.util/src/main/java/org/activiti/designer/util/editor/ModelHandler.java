@@ -13,24 +13,51 @@
  */
 package org.activiti.designer.util.editor;
 
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.eclipse.emf.common.util.URI;
 
+/**
+ * Registry of the models of the open editors, by the URI of their diagram. Editors add their model
+ * when their input is set and remove it when they're disposed. The same model may be added more than
+ * once for a URI; it stays registered until it has been removed as many times.
+ *
+ * <p>
+ * The registry may be used from any thread. Worker threads that need a consistent view of the open
+ * models can take a snapshot, which isn't affected by editors opening or closing afterwards.
+ */
 public class ModelHandler {
 
-	private static Map<URI, BpmnMemoryModel> modelMap = new HashMap<URI, BpmnMemoryModel>();
-	private static Map<URI, KickstartProcessMemoryModel> kickstartProcessModelMap = new HashMap<URI, KickstartProcessMemoryModel>();
-	private static Map<URI, KickstartFormMemoryModel> kickstartFormModelMap = new HashMap<URI, KickstartFormMemoryModel>();
+	private static final Registry<BpmnMemoryModel> modelMap = new Registry<BpmnMemoryModel>();
+	private static final Registry<KickstartProcessMemoryModel> kickstartProcessModelMap = new Registry<KickstartProcessMemoryModel>();
+	private static final Registry<KickstartFormMemoryModel> kickstartFormModelMap = new Registry<KickstartFormMemoryModel>();
+
+	private static final AtomicLong opened = new AtomicLong();
+	private static final AtomicLong closed = new AtomicLong();
+	private static final AtomicLong replaced = new AtomicLong();
+
+	// the models that have been removed, to find out whether they're garbage collected
+	private static final ReferenceQueue<Object> closedModelQueue = new ReferenceQueue<Object>();
+	private static final Set<Reference<Object>> closedModels = Collections.synchronizedSet(new HashSet<Reference<Object>>());
 
 	public static void addModel(URI uri, Object model) {
 	  if (model instanceof BpmnMemoryModel) {
-	    modelMap.put(uri, (BpmnMemoryModel) model);
+	    modelMap.add(uri, (BpmnMemoryModel) model);
 	  } else if (model instanceof KickstartProcessMemoryModel) {
-	    kickstartProcessModelMap.put(uri, (KickstartProcessMemoryModel) model);
+	    kickstartProcessModelMap.add(uri, (KickstartProcessMemoryModel) model);
 	  } else if(model instanceof KickstartFormMemoryModel) {
-	    kickstartFormModelMap.put(uri, (KickstartFormMemoryModel) model);
+	    kickstartFormModelMap.add(uri, (KickstartFormMemoryModel) model);
 	  }
 	}
 
@@ -57,4 +84,156 @@ public class ModelHandler {
 	public static void removeKickstartFormModel(URI uri) {
       kickstartFormModelMap.remove(uri);
     }
+
+	/**
+	 * @return a snapshot of the registered BPMN models
+	 */
+	public static Map<URI, BpmnMemoryModel> getModels() {
+	  return modelMap.snapshot();
+	}
+
+	public static Metrics getMetrics() {
+	  Reference< ? extends Object> collected;
+	  while ((collected = closedModelQueue.poll()) != null) {
+	    closedModels.remove(collected);
+	  }
+	  return new Metrics(opened.get(), closed.get(), replaced.get(), modelMap.size() + kickstartProcessModelMap.size()
+	          + kickstartFormModelMap.size(), closedModels.size());
+	}
+
+	private static void closed(Object model) {
+	  closed.incrementAndGet();
+	  closedModels.add(new WeakReference<Object>(model, closedModelQueue));
+	}
+
+	/**
+	 * Counters of the registry since the plugin was started.
+	 */
+	public static class Metrics {
+
+	  private final long opened;
+	  private final long closed;
+	  private final long replaced;
+	  private final int open;
+	  private final int lingering;
+
+	  private Metrics(long opened, long closed, long replaced, int open, int lingering) {
+	    this.opened = opened;
+	    this.closed = closed;
+	    this.replaced = replaced;
+	    this.open = open;
+	    this.lingering = lingering;
+	  }
+
+	  /**
+	   * @return the number of models that have been registered
+	   */
+	  public long getOpened() {
+	    return opened;
+	  }
+
+	  /**
+	   * @return the number of models that have been removed, or replaced by another model for the same
+	   *         URI
+	   */
+	  public long getClosed() {
+	    return closed;
+	  }
+
+	  /**
+	   * @return the number of models that were replaced by another model for the same URI without
+	   *         being removed first, which means their editor didn't remove them
+	   */
+	  public long getReplaced() {
+	    return replaced;
+	  }
+
+	  /**
+	   * @return the number of models that are registered
+	   */
+	  public int getOpen() {
+	    return open;
+	  }
+
+	  /**
+	   * @return the number of closed models that have not been garbage collected yet. If this number
+	   *         keeps growing after garbage collections, closed models are leaked.
+	   */
+	  public int getLingering() {
+	    return lingering;
+	  }
+
+	  @Override
+	  public String toString() {
+	    return "opened=" + opened + ", closed=" + closed + ", replaced=" + replaced + ", open=" + open + ", lingering=" + lingering;
+	  }
+	}
+
+	/**
+	 * The models of one type, with the number of times each has been added.
+	 */
+	private static class Registry<T> {
+
+	  private final ConcurrentMap<URI, RegisteredModel<T>> models = new ConcurrentHashMap<URI, RegisteredModel<T>>();
+
+	  public T get(URI uri) {
+	    if (uri == null) {
+	      return null;
+	    }
+	    final RegisteredModel<T> registeredModel = models.get(uri);
+	    return registeredModel != null ? registeredModel.model : null;
+	  }
+
+	  public synchronized void add(URI uri, T model) {
+	    if (uri == null) {
+	      return;
+	    }
+	    final RegisteredModel<T> registeredModel = models.get(uri);
+	    if (registeredModel != null && registeredModel.model == model) {
+	      registeredModel.references++;
+	      return;
+	    }
+
+	    models.put(uri, new RegisteredModel<T>(model));
+	    opened.incrementAndGet();
+	    if (registeredModel != null) {
+	      replaced.incrementAndGet();
+	      closed(registeredModel.model);
+	    }
+	  }
+
+	  public synchronized void remove(URI uri) {
+	    if (uri == null) {
+	      return;
+	    }
+	    final RegisteredModel<T> registeredModel = models.get(uri);
+	    if (registeredModel != null && --registeredModel.references == 0) {
+	      models.remove(uri);
+	      closed(registeredModel.model);
+	    }
+	  }
+
+	  public Map<URI, T> snapshot() {
+	    final Map<URI, T> result = new HashMap<URI, T>();
+	    for (final Entry<URI, RegisteredModel<T>> entry : models.entrySet()) {
+	      result.put(entry.getKey(), entry.getValue().model);
+	    }
+	    return Collections.unmodifiableMap(result);
+	  }
+
+	  public int size() {
+	    return models.size();
+	  }
+	}
+
+	private static class RegisteredModel<T> {
+
+	  private final T model;
+	  // only changed while holding the lock of the registry
+	  private int references = 1;
+
+	  public RegisteredModel(T model) {
+	    this.model = model;
+	  }
+	}
 }
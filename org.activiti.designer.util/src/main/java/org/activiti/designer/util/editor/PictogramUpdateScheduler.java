@@ -0,0 +1,145 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.activiti.designer.util.editor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.eclipse.gef.EditPart;
+import org.eclipse.gef.GraphicalViewer;
+import org.eclipse.graphiti.dt.IDiagramTypeProvider;
+import org.eclipse.graphiti.mm.pictograms.PictogramElement;
+import org.eclipse.graphiti.platform.IDiagramBehavior;
+import org.eclipse.graphiti.platform.IDiagramContainer;
+import org.eclipse.graphiti.ui.editor.IDiagramContainerUI;
+import org.eclipse.swt.widgets.Display;
+
+/**
+ * Updates the pictogram elements of a diagram whose business objects changed. The elements reported
+ * within one frame are merged and updated together on the UI thread, so a burst of transactions,
+ * such as the ones of moving many shapes, results in a single update instead of one per transaction.
+ *
+ * <p>
+ * If the diagram updates itself at runtime and is dirty, the elements are updated through the
+ * notification service. Otherwise the edit parts of the elements are refreshed; the whole diagram
+ * is only refreshed if more than {@link #MAX_ELEMENT_REFRESHES} elements changed in the frame.
+ */
+public class PictogramUpdateScheduler {
+
+  /** The time reported elements are collected before they're updated. */
+  public static final int FRAME_MILLIS = 30;
+
+  /** The maximum number of elements refreshed one by one instead of refreshing the diagram. */
+  public static final int MAX_ELEMENT_REFRESHES = 200;
+
+  private final IDiagramBehavior diagramBehavior;
+
+  // guarded by this
+  private Set<PictogramElement> dirtyElements = new LinkedHashSet<PictogramElement>();
+  private boolean scheduled;
+
+  private final Runnable update = new Runnable() {
+
+    @Override
+    public void run() {
+      update();
+    }
+  };
+
+  public PictogramUpdateScheduler(final IDiagramBehavior diagramBehavior) {
+    this.diagramBehavior = diagramBehavior;
+  }
+
+  /**
+   * Schedules the update of the elements, together with the other elements reported in the same
+   * frame. May be called from any thread.
+   */
+  public void schedule(final PictogramElement[] elements) {
+    if (elements.length == 0) {
+      return;
+    }
+    synchronized (this) {
+      Collections.addAll(dirtyElements, elements);
+      if (scheduled) {
+        return;
+      }
+      scheduled = true;
+    }
+
+    final Display display = Display.getDefault();
+    display.asyncExec(new Runnable() {
+
+      @Override
+      public void run() {
+        // timers can only be started from the UI thread
+        display.timerExec(FRAME_MILLIS, update);
+      }
+    });
+  }
+
+  private void update() {
+    final List<PictogramElement> elements;
+    synchronized (this) {
+      elements = new ArrayList<PictogramElement>(dirtyElements);
+      dirtyElements = new LinkedHashSet<PictogramElement>();
+      scheduled = false;
+    }
+
+    final IDiagramContainer diagramContainer = diagramBehavior.getDiagramContainer();
+    if (diagramContainer == null || diagramContainer.getDiagramTypeProvider() == null || isClosed(diagramContainer)) {
+      // the editor was closed in the meantime
+      return;
+    }
+    final IDiagramTypeProvider provider = diagramContainer.getDiagramTypeProvider();
+
+    if (provider.isAutoUpdateAtRuntime() && diagramContainer.isDirty()) {
+      provider.getNotificationService().updatePictogramElements(elements.toArray(new PictogramElement[elements.size()]));
+
+    } else if (elements.size() > MAX_ELEMENT_REFRESHES || !refreshEditParts(diagramContainer, elements)) {
+      diagramBehavior.refresh();
+    }
+  }
+
+  private boolean isClosed(final IDiagramContainer diagramContainer) {
+    if (!(diagramContainer instanceof IDiagramContainerUI)) {
+      return false;
+    }
+    final GraphicalViewer viewer = ((IDiagramContainerUI) diagramContainer).getGraphicalViewer();
+    return viewer == null || viewer.getControl() == null || viewer.getControl().isDisposed();
+  }
+
+  /**
+   * @return false if the edit parts can't be refreshed one by one
+   */
+  private boolean refreshEditParts(final IDiagramContainer diagramContainer, final List<PictogramElement> elements) {
+    if (!(diagramContainer instanceof IDiagramContainerUI)) {
+      return false;
+    }
+    final GraphicalViewer viewer = ((IDiagramContainerUI) diagramContainer).getGraphicalViewer();
+    if (viewer == null) {
+      return false;
+    }
+
+    for (final PictogramElement element : elements) {
+      final Object editPart = viewer.getEditPartRegistry().get(element);
+      if (editPart instanceof EditPart) {
+        ((EditPart) editPart).refresh();
+      }
+    }
+    return true;
+  }
+}
@@ -0,0 +1,484 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.activiti.designer.util.extension;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.jar.Manifest;
+
+import org.activiti.designer.integration.palette.DefaultPaletteCustomizer;
+import org.activiti.designer.integration.palette.PaletteEntry;
+import org.activiti.designer.integration.servicetask.CustomServiceTask;
+import org.activiti.designer.integration.usertask.CustomUserTask;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IWorkspaceRoot;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.Path;
+import org.eclipse.jdt.core.ElementChangedEvent;
+import org.eclipse.jdt.core.IClassFile;
+import org.eclipse.jdt.core.IClasspathContainer;
+import org.eclipse.jdt.core.IClasspathEntry;
+import org.eclipse.jdt.core.IElementChangedListener;
+import org.eclipse.jdt.core.IJarEntryResource;
+import org.eclipse.jdt.core.IJavaElement;
+import org.eclipse.jdt.core.IJavaElementDelta;
+import org.eclipse.jdt.core.IJavaProject;
+import org.eclipse.jdt.core.IPackageFragment;
+import org.eclipse.jdt.core.IPackageFragmentRoot;
+import org.eclipse.jdt.core.IType;
+import org.eclipse.jdt.core.JavaCore;
+import org.eclipse.jdt.core.JavaModelException;
+import org.eclipse.jdt.internal.core.JarEntryDirectory;
+
+/**
+ * Caches the extensions found in the "Activiti Designer Extensions" user library of each project.
+ * The extension jars of a project are only inspected the first time the extensions of the project
+ * are requested and again after the classpath of the project changed. The result of inspecting a
+ * jar is kept by the path, size and modification time of the jar, so a jar that is shared by
+ * several projects, or that didn't change when the classpath did, is not inspected again.
+ * The custom tasks of a project are also indexed by their ID, so the task of a shape can be
+ * looked up without going through all extensions.
+ *
+ * <p>
+ * The class loader of a jar stays open as long as the cached extensions of a project use the jar.
+ * It is closed once the extensions of the last such project have been invalidated.
+ */
+public final class ExtensionRegistry {
+
+  private static final int CLASSPATH_CHANGED_FLAGS = IJavaElementDelta.F_CLASSPATH_CHANGED
+          | IJavaElementDelta.F_RESOLVED_CLASSPATH_CHANGED | IJavaElementDelta.F_ARCHIVE_CONTENT_CHANGED
+          | IJavaElementDelta.F_CLOSED;
+
+  private static ExtensionRegistry instance;
+
+  private final Map<IProject, ProjectExtensions> extensionsByProject = new ConcurrentHashMap<IProject, ProjectExtensions>();
+  private final Map<String, ExtensionJar> extensionJars = new ConcurrentHashMap<String, ExtensionJar>();
+
+  private final IElementChangedListener classpathListener = new IElementChangedListener() {
+
+    @Override
+    public void elementChanged(ElementChangedEvent event) {
+      processDelta(event.getDelta());
+    }
+  };
+
+  private ExtensionRegistry() {
+    JavaCore.addElementChangedListener(classpathListener, ElementChangedEvent.POST_CHANGE);
+  }
+
+  public static synchronized ExtensionRegistry getInstance() {
+    if (instance == null) {
+      instance = new ExtensionRegistry();
+    }
+    return instance;
+  }
+
+  /**
+   * Stops listening to classpath changes and forgets all extensions. Called when the plugin is
+   * stopped.
+   */
+  public static synchronized void shutdown() {
+    if (instance != null) {
+      JavaCore.removeElementChangedListener(instance.classpathListener);
+      instance.extensionsByProject.clear();
+      for (final ExtensionJar extensionJar : instance.extensionJars.values()) {
+        extensionJar.close();
+      }
+      instance.extensionJars.clear();
+      instance = null;
+    }
+  }
+
+  public List<CustomServiceTaskContext> getCustomServiceTaskContexts(final IProject project) {
+    final List<CustomServiceTaskContext> result = new ArrayList<CustomServiceTaskContext>();
+    for (final ExtensionJar extensionJar : getProjectExtensions(project).extensionJars) {
+      result.addAll(extensionJar.serviceTaskContexts);
+    }
+    return result;
+  }
+
+  public List<CustomUserTaskContext> getCustomUserTaskContexts(final IProject project) {
+    final List<CustomUserTaskContext> result = new ArrayList<CustomUserTaskContext>();
+    for (final ExtensionJar extensionJar : getProjectExtensions(project).extensionJars) {
+      result.addAll(extensionJar.userTaskContexts);
+    }
+    return result;
+  }
+
+  /**
+   * @return the context of the custom service task with the ID in the project or null if the
+   *         project has no such task
+   */
+  public CustomServiceTaskContext getCustomServiceTaskContext(final IProject project, final String customServiceTaskId) {
+    return getProjectExtensions(project).serviceTaskContexts.get(customServiceTaskId);
+  }
+
+  /**
+   * @return the context of the custom user task with the ID in the project or null if the
+   *         project has no such task
+   */
+  public CustomUserTaskContext getCustomUserTaskContext(final IProject project, final String customUserTaskId) {
+    return getProjectExtensions(project).userTaskContexts.get(customUserTaskId);
+  }
+
+  public Set<PaletteEntry> getDisabledPaletteEntries(final IProject project) {
+    final Set<PaletteEntry> result = new HashSet<PaletteEntry>();
+    for (final ExtensionJar extensionJar : getProjectExtensions(project).extensionJars) {
+      result.addAll(extensionJar.disabledPaletteEntries);
+    }
+    return result;
+  }
+
+  /**
+   * Forgets the extensions of the project, so they are determined again on the next request. The
+   * jars no other project uses any more are closed.
+   */
+  public synchronized void invalidate(final IProject project) {
+    final ProjectExtensions projectExtensions = extensionsByProject.remove(project);
+    if (projectExtensions != null) {
+      release(projectExtensions.extensionJars);
+    }
+  }
+
+  private ProjectExtensions getProjectExtensions(final IProject project) {
+    if (project == null) {
+      return new ProjectExtensions(Collections.<ExtensionJar> emptyList());
+    }
+    ProjectExtensions result = extensionsByProject.get(project);
+    if (result == null) {
+      // scanned without holding the lock, as inspecting the jars takes a while
+      final ProjectExtensions scanned = new ProjectExtensions(scanProject(project));
+      synchronized (this) {
+        result = extensionsByProject.get(project);
+        if (result == null) {
+          extensionsByProject.put(project, scanned);
+          result = scanned;
+        } else {
+          // another thread was faster
+          release(scanned.extensionJars);
+        }
+      }
+    }
+    return result;
+  }
+
+  /**
+   * @return the cached jar with the fingerprint, which is then used once more, or null if the jar
+   *         wasn't inspected yet or has changed since
+   */
+  private synchronized ExtensionJar acquire(final String classPathFilename, final String fingerprint) {
+    final ExtensionJar extensionJar = extensionJars.get(classPathFilename);
+    if (extensionJar == null || !extensionJar.fingerprint.equals(fingerprint)) {
+      return null;
+    }
+    extensionJar.users++;
+    return extensionJar;
+  }
+
+  /**
+   * Caches a jar that was just inspected, unless another thread cached the same jar meanwhile.
+   *
+   * @return the cached jar, which is then used once more
+   */
+  private synchronized ExtensionJar acquire(final ExtensionJar scanned) {
+    final ExtensionJar cached = acquire(scanned.classPathFilename, scanned.fingerprint);
+    if (cached != null) {
+      scanned.close();
+      return cached;
+    }
+    // a replaced jar stays open until the projects that still use it have been invalidated
+    extensionJars.put(scanned.classPathFilename, scanned);
+    scanned.users++;
+    return scanned;
+  }
+
+  private synchronized void release(final List<ExtensionJar> extensionJars) {
+    for (final ExtensionJar extensionJar : extensionJars) {
+      if (--extensionJar.users == 0) {
+        if (this.extensionJars.get(extensionJar.classPathFilename) == extensionJar) {
+          this.extensionJars.remove(extensionJar.classPathFilename);
+        }
+        extensionJar.close();
+      }
+    }
+  }
+
+  private void processDelta(final IJavaElementDelta delta) {
+    final IJavaElement element = delta.getElement();
+
+    if (element instanceof IJavaProject) {
+      if (delta.getKind() == IJavaElementDelta.REMOVED || (delta.getFlags() & CLASSPATH_CHANGED_FLAGS) != 0) {
+        invalidate(((IJavaProject) element).getProject());
+        return;
+      }
+    } else if (element instanceof IPackageFragmentRoot) {
+      if ((delta.getFlags() & IJavaElementDelta.F_ARCHIVE_CONTENT_CHANGED) != 0) {
+        invalidate(element.getJavaProject().getProject());
+      }
+      return;
+    }
+
+    for (final IJavaElementDelta childDelta : delta.getAffectedChildren()) {
+      processDelta(childDelta);
+    }
+  }
+
+  private List<ExtensionJar> scanProject(final IProject project) {
+    final List<ExtensionJar> result = new ArrayList<ExtensionJar>();
+
+    IJavaProject javaProject = null;
+    try {
+      javaProject = (IJavaProject) project.getNature(JavaCore.NATURE_ID);
+    } catch (CoreException e) {
+      // skip, not a Java project
+    }
+
+    if (javaProject == null) {
+      return result;
+    }
+
+    try {
+
+      // Get the container for the designer extensions. This is the
+      // predefined user library linking to the extension libraries
+      final IClasspathContainer userLibraryContainer = JavaCore.getClasspathContainer(new Path(
+              ExtensionUtil.DESIGNER_EXTENSIONS_USER_LIB_PATH), javaProject);
+
+      if (userLibraryContainer == null) {
+        return result;
+      }
+
+      // Get a list of the classpath entries in the container. Each of
+      // these represents one jar containing zero or more designer
+      // extensions
+      final IClasspathEntry[] classpathEntries = userLibraryContainer.getClasspathEntries();
+
+      if (classpathEntries.length == 0) {
+        return result;
+      }
+
+      final IWorkspaceRoot root = ResourcesPlugin.getWorkspace().getRoot();
+      final IPackageFragment[] fragments = javaProject.getPackageFragments();
+
+      for (final IClasspathEntry classpathEntry : classpathEntries) {
+
+        // Only check entries of the correct kind
+        if (classpathEntry.getEntryKind() != IClasspathEntry.CPE_LIBRARY
+                || classpathEntry.getContentKind() != IPackageFragmentRoot.K_BINARY) {
+          continue;
+        }
+
+        String classPathFilename = null;
+        if (classpathEntry.getPath().toFile().exists()) {
+          classPathFilename = classpathEntry.getPath().toPortableString();
+        } else {
+          classPathFilename = root.getLocation().toPortableString() + classpathEntry.getPath().toPortableString();
+        }
+
+        final File file = new File(classPathFilename);
+        final String fingerprint = file.length() + "@" + file.lastModified();
+
+        ExtensionJar extensionJar = acquire(classPathFilename, fingerprint);
+        if (extensionJar == null) {
+          extensionJar = acquire(scanExtensionJar(classpathEntry, classPathFilename, fingerprint, fragments));
+        }
+        result.add(extensionJar);
+      }
+
+    } catch (JavaModelException e) {
+      ExtensionUtil.showExtensionExceptionMessage(String.format(
+              "There was a technical error when processing an extension to Activiti Designer: %s", e.getMessage()));
+      e.printStackTrace();
+    }
+
+    return result;
+  }
+
+  @SuppressWarnings("unchecked")
+  private ExtensionJar scanExtensionJar(final IClasspathEntry classpathEntry, final String classPathFilename,
+          final String fingerprint, final IPackageFragment[] fragments) throws JavaModelException {
+
+    final JarClassLoader cl = new JarClassLoader(classPathFilename);
+    final ExtensionJar result = new ExtensionJar(classPathFilename, fingerprint, cl);
+
+    for (final IPackageFragment packageFragment : fragments) {
+
+      if (!classpathEntry.getPath().lastSegment().equalsIgnoreCase(packageFragment.getParent().getElementName())) {
+        continue;
+      }
+
+      // Determine the name of the extension
+      String extensionName = null;
+      final Manifest manifest = getManifest(packageFragment);
+      if (manifest != null) {
+        extensionName = manifest.getMainAttributes().getValue(CustomServiceTask.MANIFEST_EXTENSION_NAME);
+      }
+      // If there is no manifest or the property wasn't
+      // defined, use the jar's name as extension name
+      // instead
+      if (extensionName == null) {
+        extensionName = classpathEntry.getPath().lastSegment();
+      }
+
+      // Inspect the jar by scanning its classpath and looking for classes that implement
+      // CustomServiceTask, CustomUserTask or DefaultPaletteCustomizer
+      for (final IJavaElement javaElement : packageFragment.getChildren()) {
+        if (javaElement.getElementType() != IJavaElement.CLASS_FILE) {
+          continue;
+        }
+        final IClassFile classFile = (IClassFile) javaElement;
+        if (!classFile.isClass()) {
+          continue;
+        }
+
+        final IType type = classFile.getType();
+        final boolean customServiceTask = ExtensionUtil.isConcreteCustomService(type);
+        final boolean customUserTask = ExtensionUtil.isConcreteCustomUserTask(type);
+        final boolean paletteCustomizer = ExtensionUtil.isConcretePaletteCustomizer(type);
+
+        if (!customServiceTask && !customUserTask && !paletteCustomizer) {
+          continue;
+        }
+
+        try {
+          final Class< ? > clazz = cl.loadClass(type.getFullyQualifiedName());
+
+          // Filter if the class is abstract: this probably means it is extended by concrete classes in the
+          // extension and will have any properties applied in that way; we can't instantiate the class anyway
+          if (Modifier.isAbstract(clazz.getModifiers())) {
+            continue;
+          }
+
+          try {
+            if (customServiceTask && CustomServiceTask.class.isAssignableFrom(clazz)) {
+              final CustomServiceTask task = ((Class<CustomServiceTask>) clazz).newInstance();
+              result.serviceTaskContexts.add(new CustomServiceTaskContextImpl(task, extensionName, classPathFilename));
+            }
+            if (customUserTask && CustomUserTask.class.isAssignableFrom(clazz)) {
+              final CustomUserTask task = ((Class<CustomUserTask>) clazz).newInstance();
+              result.userTaskContexts.add(new CustomUserTaskContextImpl(task, extensionName, classPathFilename));
+            }
+            if (paletteCustomizer && DefaultPaletteCustomizer.class.isAssignableFrom(clazz)) {
+              final DefaultPaletteCustomizer customizer = ((Class<DefaultPaletteCustomizer>) clazz).newInstance();
+              result.disabledPaletteEntries.addAll(customizer.disablePaletteEntries());
+            }
+          } catch (Exception e) {
+            e.printStackTrace();
+          }
+
+        } catch (ClassNotFoundException e) {
+          e.printStackTrace();
+        }
+      }
+    }
+
+    return result;
+  }
+
+  private Manifest getManifest(final IPackageFragment packageFragment) throws JavaModelException {
+    Manifest manifest = null;
+    for (final Object obj : packageFragment.getNonJavaResources()) {
+      if (obj instanceof JarEntryDirectory) {
+        final JarEntryDirectory jarEntryDirectory = (JarEntryDirectory) obj;
+        final IJarEntryResource[] jarEntryResources = jarEntryDirectory.getChildren();
+        for (final IJarEntryResource jarEntryResource : jarEntryResources) {
+          if ("MANIFEST.MF".equals(jarEntryResource.getName())) {
+            try {
+              final InputStream stream = jarEntryResource.getContents();
+              try {
+                manifest = new Manifest(stream);
+              } finally {
+                stream.close();
+              }
+            } catch (Exception e) {
+              // no manifest as result
+            }
+          }
+        }
+      }
+    }
+    return manifest;
+  }
+
+  /**
+   * The extensions of a project, with its custom tasks by ID. If several jars contain a task with
+   * the same ID, the first one on the classpath is used.
+   */
+  private static class ProjectExtensions {
+
+    private final List<ExtensionJar> extensionJars;
+
+    private final Map<String, CustomServiceTaskContext> serviceTaskContexts = new LinkedHashMap<String, CustomServiceTaskContext>();
+    private final Map<String, CustomUserTaskContext> userTaskContexts = new LinkedHashMap<String, CustomUserTaskContext>();
+
+    public ProjectExtensions(final List<ExtensionJar> extensionJars) {
+      this.extensionJars = extensionJars;
+      for (final ExtensionJar extensionJar : extensionJars) {
+        for (final CustomServiceTaskContext context : extensionJar.serviceTaskContexts) {
+          if (!serviceTaskContexts.containsKey(context.getServiceTask().getId())) {
+            serviceTaskContexts.put(context.getServiceTask().getId(), context);
+          }
+        }
+        for (final CustomUserTaskContext context : extensionJar.userTaskContexts) {
+          if (!userTaskContexts.containsKey(context.getUserTask().getId())) {
+            userTaskContexts.put(context.getUserTask().getId(), context);
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * The extensions found in a single jar.
+   */
+  private static class ExtensionJar {
+
+    private final String classPathFilename;
+    private final String fingerprint;
+    private final JarClassLoader classLoader;
+
+    // the number of cached projects using the jar, only changed while holding the lock of the registry
+    private int users;
+
+    private final List<CustomServiceTaskContext> serviceTaskContexts = new ArrayList<CustomServiceTaskContext>();
+    private final List<CustomUserTaskContext> userTaskContexts = new ArrayList<CustomUserTaskContext>();
+    private final Set<PaletteEntry> disabledPaletteEntries = new HashSet<PaletteEntry>();
+
+    public ExtensionJar(final String classPathFilename, final String fingerprint, final JarClassLoader classLoader) {
+      this.classPathFilename = classPathFilename;
+      this.fingerprint = fingerprint;
+      this.classLoader = classLoader;
+    }
+
+    public void close() {
+      try {
+        classLoader.close();
+      } catch (IOException e) {
+        e.printStackTrace();
+      }
+    }
+  }
+
+}
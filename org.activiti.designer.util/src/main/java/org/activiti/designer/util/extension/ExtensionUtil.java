@@ -16,18 +16,21 @@
  */
 package org.activiti.designer.util.extension;
 
-import java.io.InputStream;
+import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
-import java.util.jar.Manifest;
+import java.util.WeakHashMap;
 
 import org.activiti.bpmn.model.CustomProperty;
 import org.activiti.bpmn.model.ServiceTask;
 import org.activiti.bpmn.model.Task;
 import org.activiti.bpmn.model.UserTask;
+import org.activiti.designer.integration.annotation.Property;
 import org.activiti.designer.integration.palette.AbstractDefaultPaletteCustomizer;
 import org.activiti.designer.integration.palette.DefaultPaletteCustomizer;
 import org.activiti.designer.integration.palette.PaletteEntry;
@@ -41,23 +44,12 @@ import org.activiti.designer.util.eclipse.ActivitiUiUtil;
 import org.activiti.designer.util.eclipse.ExtensionConstants;
 import org.apache.commons.lang.StringUtils;
 import org.eclipse.core.resources.IProject;
-import org.eclipse.core.resources.IWorkspaceRoot;
-import org.eclipse.core.resources.ResourcesPlugin;
 import org.eclipse.core.runtime.CoreException;
-import org.eclipse.core.runtime.Path;
 import org.eclipse.graphiti.ui.editor.DiagramEditor;
-import org.eclipse.jdt.core.IClassFile;
-import org.eclipse.jdt.core.IClasspathContainer;
-import org.eclipse.jdt.core.IClasspathEntry;
-import org.eclipse.jdt.core.IJarEntryResource;
-import org.eclipse.jdt.core.IJavaElement;
 import org.eclipse.jdt.core.IJavaProject;
-import org.eclipse.jdt.core.IPackageFragment;
-import org.eclipse.jdt.core.IPackageFragmentRoot;
 import org.eclipse.jdt.core.IType;
 import org.eclipse.jdt.core.JavaCore;
 import org.eclipse.jdt.core.JavaModelException;
-import org.eclipse.jdt.internal.core.JarEntryDirectory;
 import org.eclipse.jface.dialogs.MessageDialog;
 import org.eclipse.ui.IWorkbenchPart;
 import org.eclipse.ui.PlatformUI;
@@ -80,6 +72,13 @@ public final class ExtensionUtil {
   public static List<CustomServiceTaskDescriptor> providedCustomServiceTaskDescriptors;
   
   public static List<CustomUserTaskDescriptor> providedCustomUserTaskDescriptors;
+
+  private static List<CustomServiceTaskContext> providedCustomServiceTaskContexts;
+
+  private static List<CustomUserTaskContext> providedCustomUserTaskContexts;
+
+  // custom task class -> names of its fields annotated with Property, including inherited ones
+  private static final Map<Class< ? >, Set<String>> propertyFieldNames = Collections.synchronizedMap(new WeakHashMap<Class< ? >, Set<String>>());
   
   private ExtensionUtil() {
 
@@ -90,6 +89,7 @@ public final class ExtensionUtil {
       providedCustomServiceTaskDescriptors = new ArrayList<CustomServiceTaskDescriptor>();
     }
     providedCustomServiceTaskDescriptors.addAll(descriptors);
+    providedCustomServiceTaskContexts = null;
   }
   
   public static void addProvidedCustomUserTaskDescriptors(List<CustomUserTaskDescriptor> descriptors) {
@@ -97,103 +97,14 @@ public final class ExtensionUtil {
       providedCustomUserTaskDescriptors = new ArrayList<CustomUserTaskDescriptor>();
     }
     providedCustomUserTaskDescriptors.addAll(descriptors);
+    providedCustomUserTaskContexts = null;
   }
 
   public static final Set<PaletteEntry> getDisabledPaletteEntries(IProject project) {
-
-    Set<PaletteEntry> result = new HashSet<PaletteEntry>();
-
-    // Determine the project
-    IJavaProject javaProject = null;
-    try {
-      javaProject = (IJavaProject) project.getNature(JavaCore.NATURE_ID);
-    } catch (CoreException e) {
-      // skip, not a Java project
-    }
-
-    if (javaProject != null) {
-
-      try {
-
-        // Get the container for the designer extensions. This is the
-        // predefined user library linking to the extension libraries
-        final IClasspathContainer userLibraryContainer = JavaCore.getClasspathContainer(new Path(DESIGNER_EXTENSIONS_USER_LIB_PATH), javaProject);
-
-        // Get a list of the classpath entries in the container. Each of
-        // these represents one jar containing zero or more designer
-        // extensions
-        final IClasspathEntry[] extensionJars = userLibraryContainer.getClasspathEntries();
-
-        // If there are jars, inspect them; otherwise return because
-        // there are no extensions
-        if (extensionJars.length > 0) {
-
-          for (final IClasspathEntry classpathEntry : extensionJars) {
-
-            // Only check entries of the correct kind
-            if (classpathEntry.getEntryKind() == 1 && classpathEntry.getContentKind() == 2) {
-
-              IPackageFragment[] fragments = javaProject.getPackageFragments();
-              for (IPackageFragment iPackageFragment : fragments) {
-                
-                if (classpathEntry.getPath().lastSegment().equalsIgnoreCase(iPackageFragment.getParent().getElementName())) {
-                  
-                  IWorkspaceRoot root = ResourcesPlugin.getWorkspace().getRoot();
-                  
-                  String classPathFilename = null;
-                  if (classpathEntry.getPath().toFile().exists()) {
-                    classPathFilename = classpathEntry.getPath().toPortableString();
-                  } else {
-                    classPathFilename = root.getLocation().toPortableString() + classpathEntry.getPath().toPortableString();
-                  }
-                  
-                  JarClassLoader cl = new JarClassLoader(classPathFilename);
-
-                  // Inspect the jar by scanning its classpath and looking for classes that implement CustomServiceTask
-                  for (final IJavaElement javaElement : iPackageFragment.getChildren()) {
-                    if (javaElement.getElementType() == IJavaElement.CLASS_FILE) {
-                      IClassFile classFile = (IClassFile) javaElement;
-                      if (classFile.isClass()) {
-                        final IType type = classFile.getType();
-                        if (!isConcretePaletteCustomizer(type)) {
-                          continue;
-                        }
-
-                        try {
-                          Class<DefaultPaletteCustomizer> clazz = (Class<DefaultPaletteCustomizer>) cl.loadClass(type.getFullyQualifiedName());
-
-                          if (DefaultPaletteCustomizer.class.isAssignableFrom(clazz)) {
-                            try {
-                              DefaultPaletteCustomizer DefaultPaletteCustomizer = (DefaultPaletteCustomizer) clazz.newInstance();
-                              // Add this DefaultPaletteCustomizer to the result
-                              result.addAll(DefaultPaletteCustomizer.disablePaletteEntries());
-                            } catch (Exception e) {
-                              e.printStackTrace();
-                            }
-                          }
-                        } catch (ClassNotFoundException e) {
-                          e.printStackTrace();
-                        }
-                      }
-                    }
-                  }
-                }
-              }
-            }
-          }
-        }
-      } catch (JavaModelException e) {
-        // TODO: test when this exception occurs: if there is no user
-        // lib for example?
-        e.printStackTrace();
-      }
-
-    }
-
-    return result;
+    return ExtensionRegistry.getInstance().getDisabledPaletteEntries(project);
   }
 
-  private static boolean isConcreteCustomService(IType type) {
+  static boolean isConcreteCustomService(IType type) {
 
     boolean customserviceFound = containsAbstractClassOrInterface(type, AbstractCustomServiceTask.class, CustomServiceTask.class);
 
@@ -211,7 +122,7 @@ public final class ExtensionUtil {
     return customserviceFound;
   }
   
-  private static boolean isConcreteCustomUserTask(IType type) {
+  static boolean isConcreteCustomUserTask(IType type) {
 
     boolean customUserTaskFound = containsAbstractClassOrInterface(type, AbstractCustomUserTask.class, CustomUserTask.class);
 
@@ -229,7 +140,7 @@ public final class ExtensionUtil {
     return customUserTaskFound;
   }
 
-  private static boolean isConcretePaletteCustomizer(IType type) {
+  static boolean isConcretePaletteCustomizer(IType type) {
 
     boolean paletteCustomizerFound = containsAbstractClassOrInterface(type, AbstractDefaultPaletteCustomizer.class, DefaultPaletteCustomizer.class);
 
@@ -284,6 +195,36 @@ public final class ExtensionUtil {
 
   }
 
+  /**
+   * Gets the names of the fields annotated with {@link Property} in the custom task class and its
+   * superclasses that implement the custom task type. The fields of each class are only inspected
+   * once.
+   * 
+   * @param customTaskClass
+   *          the class of the custom task
+   * @param customTaskType
+   *          the custom task interface, for example {@link CustomUserTask}
+   * @return the field names
+   */
+  public static Set<String> getPropertyFieldNames(final Class< ? > customTaskClass, final Class< ? > customTaskType) {
+    Set<String> result = propertyFieldNames.get(customTaskClass);
+    if (result == null) {
+      final Set<String> fieldNames = new LinkedHashSet<String>();
+      Class< ? > currentClass = customTaskClass;
+      while (currentClass != null && customTaskType.isAssignableFrom(currentClass)) {
+        for (final Field field : currentClass.getDeclaredFields()) {
+          if (field.isAnnotationPresent(Property.class)) {
+            fieldNames.add(field.getName());
+          }
+        }
+        currentClass = currentClass.getSuperclass();
+      }
+      result = Collections.unmodifiableSet(fieldNames);
+      propertyFieldNames.put(customTaskClass, result);
+    }
+    return result;
+  }
+
   /**
    * Wraps the property id for the provided service tasks.
    * 
@@ -515,125 +456,9 @@ public final class ExtensionUtil {
 
     addToCustomServiceTasks(result);
 
-    IJavaProject javaProject = null;
-    try {
-      javaProject = (IJavaProject) project.getNature(JavaCore.NATURE_ID);
-    } catch (CoreException e) {
-      // skip, not a Java project
-    }
-
-    if (javaProject != null) {
-
-      try {
-
-        // Get the container for the designer extensions. This is the
-        // predefined user library linking to the extension libraries
-        final IClasspathContainer userLibraryContainer = JavaCore.getClasspathContainer(new Path(DESIGNER_EXTENSIONS_USER_LIB_PATH), javaProject);
-        
-        // Get a list of the classpath entries in the container. Each of
-        // these represents one jar containing zero or more designer
-        // extensions
-        final IClasspathEntry[] extensionJars = userLibraryContainer.getClasspathEntries();
-
-        // If there are jars, inspect them; otherwise return because
-        // there are no extensions
-        if (extensionJars.length > 0) {
-
-          for (final IClasspathEntry classpathEntry : extensionJars) {
-
-            // Only check entries of the correct kind
-            if (classpathEntry.getEntryKind() == IClasspathEntry.CPE_LIBRARY && classpathEntry.getContentKind() == IPackageFragmentRoot.K_BINARY) {
-              IWorkspaceRoot root = ResourcesPlugin.getWorkspace().getRoot();
-              IPackageFragment[] fragments = javaProject.getPackageFragments();
-              for (IPackageFragment iPackageFragment : fragments) {
-                
-                if (classpathEntry.getPath().lastSegment().equalsIgnoreCase(iPackageFragment.getParent().getElementName())) {
-                  
-                  Manifest manifest = null;
-                  for (Object obj : iPackageFragment.getNonJavaResources()) {
-                    if (obj instanceof JarEntryDirectory) {
-                      final JarEntryDirectory jarEntryDirectory = (JarEntryDirectory) obj;
-                      final IJarEntryResource[] jarEntryResources = jarEntryDirectory.getChildren();
-                      for (IJarEntryResource jarEntryResource : jarEntryResources) {
-                        if ("MANIFEST.MF".equals(jarEntryResource.getName())) {
-                          try {
-                            final InputStream stream = jarEntryResource.getContents();
-                            manifest = new Manifest(stream);
-                            
-                          } catch (Exception e) {
-                            // no manifest as result
-                          }
-                        }
-                      }
-                    }
-                  }
-                  
-                  final IJavaElement[] javaElements = iPackageFragment.getChildren();
-                  
-                  String classPathFilename = null;
-                  if (classpathEntry.getPath().toFile().exists()) {
-                    classPathFilename = classpathEntry.getPath().toPortableString();
-                  } else {
-                    classPathFilename = root.getLocation().toPortableString() + classpathEntry.getPath().toPortableString();
-                  }
-                  
-                  JarClassLoader cl = new JarClassLoader(classPathFilename);
-                  
-                  // Determine the name of the extension
-                  String extensionName = null;
-                  if (manifest != null) {
-                    extensionName = manifest.getMainAttributes().getValue(CustomServiceTask.MANIFEST_EXTENSION_NAME);
-                  }
-                  // If there is no manifest or the property wasn't
-                  // defined, use the jar's name as extension name
-                  // instead
-                  if (extensionName == null) {
-                    extensionName = classpathEntry.getPath().lastSegment();
-                  }
-                  
-                  for (final IJavaElement javaElement : javaElements) {
-                    if (javaElement.getElementType() == IJavaElement.CLASS_FILE) {
-                      IClassFile classFile = (IClassFile) javaElement;
-                      if (classFile.isClass()) {
-
-                        final IType type = classFile.getType();
-
-                        if (!isConcreteCustomService(type)) {
-                          continue;
-                        }
-                        
-                        try {
-                          Class<CustomServiceTask> clazz = (Class<CustomServiceTask>) cl.loadClass(type.getFullyQualifiedName());
-
-                          // Filter if the class is abstract: this probably means it is extended by concrete classes in the
-                          // extension and will have any properties applied in that way; we can't instantiate the class anyway
-                          if (!Modifier.isAbstract(clazz.getModifiers()) && CustomServiceTask.class.isAssignableFrom(clazz)) {
-                            try {
-                              CustomServiceTask customServiceTask = (CustomServiceTask) clazz.newInstance();
-                              // Add this CustomServiceTask to the result, wrapped in its context
-                              result.add(new CustomServiceTaskContextImpl(customServiceTask, extensionName, classPathFilename));
-                              
-                            } catch (Exception e) {
-                              e.printStackTrace();
-                            }
-
-                          }
-                        } catch (ClassNotFoundException e) {
-                          e.printStackTrace();
-                        }
-                      }
-                    }
-                  }
-                }
-              }
-            }
-          }
-        }
-      } catch (JavaModelException e) {
-        showExtensionExceptionMessage(String.format("There was a technical error when processing an extension to Activiti Designer: %s", e.getMessage()));
-        e.printStackTrace();
-      }
-    }
+    // the extensions in the project's user library are inspected once and
+    // cached until the classpath of the project changes
+    result.addAll(ExtensionRegistry.getInstance().getCustomServiceTaskContexts(project));
 
     return result;
   }
@@ -654,134 +479,83 @@ public final class ExtensionUtil {
 
     addToCustomUserTasks(result);
 
-    IJavaProject javaProject = null;
-    try {
-      javaProject = (IJavaProject) project.getNature(JavaCore.NATURE_ID);
-    } catch (CoreException e) {
-      // skip, not a Java project
-    }
+    // the extensions in the project's user library are inspected once and
+    // cached until the classpath of the project changes
+    result.addAll(ExtensionRegistry.getInstance().getCustomUserTaskContexts(project));
 
-    if (javaProject != null) {
+    return result;
+  }
 
-      try {
-
-        // Get the container for the designer extensions. This is the
-        // predefined user library linking to the extension libraries
-        final IClasspathContainer userLibraryContainer = JavaCore.getClasspathContainer(new Path(DESIGNER_EXTENSIONS_USER_LIB_PATH), javaProject);
-        
-        // Get a list of the classpath entries in the container. Each of
-        // these represents one jar containing zero or more designer
-        // extensions
-        final IClasspathEntry[] extensionJars = userLibraryContainer.getClasspathEntries();
-
-        // If there are jars, inspect them; otherwise return because
-        // there are no extensions
-        if (extensionJars.length > 0) {
-
-          for (final IClasspathEntry classpathEntry : extensionJars) {
-
-            // Only check entries of the correct kind
-            if (classpathEntry.getEntryKind() == IClasspathEntry.CPE_LIBRARY && classpathEntry.getContentKind() == IPackageFragmentRoot.K_BINARY) {
-              IWorkspaceRoot root = ResourcesPlugin.getWorkspace().getRoot();
-              IPackageFragment[] fragments = javaProject.getPackageFragments();
-              for (IPackageFragment iPackageFragment : fragments) {
-                
-                if (classpathEntry.getPath().lastSegment().equalsIgnoreCase(iPackageFragment.getParent().getElementName())) {
-                  
-                  Manifest manifest = null;
-                  for (Object obj : iPackageFragment.getNonJavaResources()) {
-                    if (obj instanceof JarEntryDirectory) {
-                      final JarEntryDirectory jarEntryDirectory = (JarEntryDirectory) obj;
-                      final IJarEntryResource[] jarEntryResources = jarEntryDirectory.getChildren();
-                      for (IJarEntryResource jarEntryResource : jarEntryResources) {
-                        if ("MANIFEST.MF".equals(jarEntryResource.getName())) {
-                          try {
-                            final InputStream stream = jarEntryResource.getContents();
-                            manifest = new Manifest(stream);
-                            
-                          } catch (Exception e) {
-                            // no manifest as result
-                          }
-                        }
-                      }
-                    }
-                  }
-                  
-                  final IJavaElement[] javaElements = iPackageFragment.getChildren();
-                  
-                  String classPathFilename = null;
-                  if (classpathEntry.getPath().toFile().exists()) {
-                    classPathFilename = classpathEntry.getPath().toPortableString();
-                  } else {
-                    classPathFilename = root.getLocation().toPortableString() + classpathEntry.getPath().toPortableString();
-                  }
-                  
-                  JarClassLoader cl = new JarClassLoader(classPathFilename);
-                  
-                  // Determine the name of the extension
-                  String extensionName = null;
-                  if (manifest != null) {
-                    extensionName = manifest.getMainAttributes().getValue(CustomServiceTask.MANIFEST_EXTENSION_NAME);
-                  }
-                  // If there is no manifest or the property wasn't
-                  // defined, use the jar's name as extension name
-                  // instead
-                  if (extensionName == null) {
-                    extensionName = classpathEntry.getPath().lastSegment();
-                  }
-                  
-                  for (final IJavaElement javaElement : javaElements) {
-                    if (javaElement.getElementType() == IJavaElement.CLASS_FILE) {
-                      IClassFile classFile = (IClassFile) javaElement;
-                      if (classFile.isClass()) {
-
-                        final IType type = classFile.getType();
-
-                        if (!isConcreteCustomUserTask(type)) {
-                          continue;
-                        }
-                        
-                        try {
-                          Class<CustomUserTask> clazz = (Class<CustomUserTask>) cl.loadClass(type.getFullyQualifiedName());
-
-                          // Filter if the class is abstract: this probably means it is extended by concrete classes in the
-                          // extension and will have any properties applied in that way; we can't instantiate the class anyway
-                          if (!Modifier.isAbstract(clazz.getModifiers()) && CustomUserTask.class.isAssignableFrom(clazz)) {
-                            try {
-                              CustomUserTask customUserTask = (CustomUserTask) clazz.newInstance();
-                              // Add this CustomServiceTask to the result, wrapped in its context
-                              result.add(new CustomUserTaskContextImpl(customUserTask, extensionName, classPathFilename));
-                              
-                            } catch (Exception e) {
-                              e.printStackTrace();
-                            }
-
-                          }
-                        } catch (ClassNotFoundException e) {
-                          e.printStackTrace();
-                        }
-                      }
-                    }
-                  }
-                }
-              }
-            }
-          }
-        }
-      } catch (JavaModelException e) {
-        showExtensionExceptionMessage(String.format("There was a technical error when processing an extension to Activiti Designer: %s", e.getMessage()));
-        e.printStackTrace();
-      }
+  /**
+   * Gets the {@link CustomServiceTaskContext} of the {@link CustomServiceTask}
+   * with the provided ID, without building the list of all contexts.
+   * 
+   * @param project
+   *          the project that has {@link CustomServiceTask}s defined
+   * @param customServiceTaskId
+   *          the ID of the {@link CustomServiceTask}, as stored as extension ID
+   *          of the service task
+   * @return the context or null if there is no such {@link CustomServiceTask}
+   */
+  public static CustomServiceTaskContext getCustomServiceTaskContext(final IProject project, final String customServiceTaskId) {
+    if (customServiceTaskId == null) {
+      return null;
+    }
+    final CustomServiceTaskContext result = getProvidedCustomServiceTaskContext(customServiceTaskId);
+    if (result != null) {
+      return result;
     }
+    return ExtensionRegistry.getInstance().getCustomServiceTaskContext(project, customServiceTaskId);
+  }
 
-    return result;
+  /**
+   * Gets the {@link CustomUserTaskContext} of the {@link CustomUserTask} with
+   * the provided ID, without building the list of all contexts.
+   * 
+   * @param project
+   *          the project that has {@link CustomUserTask}s defined
+   * @param customUserTaskId
+   *          the ID of the {@link CustomUserTask}, as stored as extension ID of
+   *          the user task
+   * @return the context or null if there is no such {@link CustomUserTask}
+   */
+  public static CustomUserTaskContext getCustomUserTaskContext(final IProject project, final String customUserTaskId) {
+    if (customUserTaskId == null) {
+      return null;
+    }
+    final CustomUserTaskContext result = getProvidedCustomUserTaskContext(customUserTaskId);
+    if (result != null) {
+      return result;
+    }
+    return ExtensionRegistry.getInstance().getCustomUserTaskContext(project, customUserTaskId);
   }
 
-  private static void showExtensionExceptionMessage(final String detailMessage) {
+  static void showExtensionExceptionMessage(final String detailMessage) {
     MessageDialog.openError(PlatformUI.getWorkbench().getActiveWorkbenchWindow().getShell(), "Error in extension", detailMessage);
   }
 
-  private static void addToCustomServiceTasks(List<CustomServiceTaskContext> result) {
+  private static synchronized void addToCustomServiceTasks(List<CustomServiceTaskContext> result) {
+    if (providedCustomServiceTaskContexts == null) {
+      providedCustomServiceTaskContexts = createProvidedCustomServiceTaskContexts();
+    }
+    result.addAll(providedCustomServiceTaskContexts);
+  }
+
+  private static synchronized CustomServiceTaskContext getProvidedCustomServiceTaskContext(final String customServiceTaskId) {
+    if (providedCustomServiceTaskContexts == null) {
+      providedCustomServiceTaskContexts = createProvidedCustomServiceTaskContexts();
+    }
+    // the tasks contributed by plugins are few, unlike the ones in the user library
+    for (final CustomServiceTaskContext context : providedCustomServiceTaskContexts) {
+      if (customServiceTaskId.equals(context.getServiceTask().getId())) {
+        return context;
+      }
+    }
+    return null;
+  }
+
+  private static List<CustomServiceTaskContext> createProvidedCustomServiceTaskContexts() {
+    final List<CustomServiceTaskContext> result = new ArrayList<CustomServiceTaskContext>();
     if (providedCustomServiceTaskDescriptors != null) {
       for (CustomServiceTaskDescriptor dscr : providedCustomServiceTaskDescriptors) {
         Class< ? extends CustomServiceTask> clazz = dscr.getClazz();
@@ -795,9 +569,30 @@ public final class ExtensionUtil {
         }
       }
     }
+    return result;
   }
   
-  private static void addToCustomUserTasks(List<CustomUserTaskContext> result) {
+  private static synchronized void addToCustomUserTasks(List<CustomUserTaskContext> result) {
+    if (providedCustomUserTaskContexts == null) {
+      providedCustomUserTaskContexts = createProvidedCustomUserTaskContexts();
+    }
+    result.addAll(providedCustomUserTaskContexts);
+  }
+
+  private static synchronized CustomUserTaskContext getProvidedCustomUserTaskContext(final String customUserTaskId) {
+    if (providedCustomUserTaskContexts == null) {
+      providedCustomUserTaskContexts = createProvidedCustomUserTaskContexts();
+    }
+    for (final CustomUserTaskContext context : providedCustomUserTaskContexts) {
+      if (customUserTaskId.equals(context.getUserTask().getId())) {
+        return context;
+      }
+    }
+    return null;
+  }
+
+  private static List<CustomUserTaskContext> createProvidedCustomUserTaskContexts() {
+    final List<CustomUserTaskContext> result = new ArrayList<CustomUserTaskContext>();
     if (providedCustomUserTaskDescriptors != null) {
       for (CustomUserTaskDescriptor dscr : providedCustomUserTaskDescriptors) {
         Class< ? extends CustomUserTask> clazz = dscr.getClazz();
@@ -811,5 +606,6 @@ public final class ExtensionUtil {
         }
       }
     }
+    return result;
   }
 }
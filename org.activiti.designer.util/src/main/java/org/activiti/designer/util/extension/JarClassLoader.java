@@ -13,117 +13,182 @@
  */
 package org.activiti.designer.util.extension;
 
-import java.io.DataInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
 
 import org.activiti.designer.integration.Activator;
 
 /**
- * Loads classes from jar files in the path provided.
- * 
+ * Loads classes and resources from the jar file in the path provided. Classes are first looked up
+ * in the class loader of the integration bundle, so extensions share the Designer's API classes.
+ *
+ * <p>
+ * The jar file is opened once, when the first class or resource is requested, and its entries are
+ * indexed by name. It stays open until {@link #close()} is called; after that no more classes can
+ * be loaded from it, although the classes already loaded remain usable.
+ *
  * @author Tiese Barrell
  * @since 0.5.1
- * @version 1
- * 
+ * @version 2
+ *
  */
-public class JarClassLoader extends ClassLoader {
+public class JarClassLoader extends ClassLoader implements Closeable {
+
+  private static final int INITIAL_BUFFER_SIZE = 8 * 1024;
+
+  private final String jarFilePath;
 
-  private String jarFilePath;
+  private JarFile jarFile;
+  private Map<String, JarEntry> entries;
+  private boolean closed;
+
+  // reused for reading class data, guarded by this
+  private byte[] buffer = new byte[INITIAL_BUFFER_SIZE];
 
   public JarClassLoader(final String jarFilePath) {
+    super(Activator.class.getClassLoader());
     if (jarFilePath == null)
       throw new IllegalArgumentException("Null jarFilePath");
     this.jarFilePath = jarFilePath;
   }
 
-  @SuppressWarnings({ "rawtypes", "unchecked" })
-  protected Class loadClass(String name, boolean resolve) throws ClassNotFoundException {
-
-    // Since all support classes of loaded class use same class loader
-    // must check subclass cache of classes for things like Object
-    Class c = null;
+  @Override
+  protected synchronized Class< ? > findClass(final String name) throws ClassNotFoundException {
+    // Convert package names into subdirectories
+    final String className = name.replace('.', '/') + ".class";
 
-    // First check with the parent class loader
     try {
-      c = super.getParent().loadClass(name);
-    } catch (ClassNotFoundException e) {
-      // fail silently
-    }
+      final JarEntry entry = getEntry(className);
+      if (entry == null) {
+        throw new ClassNotFoundException(name);
+      }
 
-    c = findLoadedClass(name);
+      final int length = readEntry(entry);
+      return defineClass(name, buffer, 0, length);
 
-    if (c == null) {
-      // first, delegate to the integration bundle's class loader
-      try {
-        c = Activator.class.getClassLoader().loadClass(name);
-      } catch (ClassNotFoundException e) {
-        // fail silently
+    } catch (IOException e) {
+      throw new ClassNotFoundException("Error reading file: " + className, e);
+    }
+  }
+
+  @Override
+  protected URL findResource(final String name) {
+    try {
+      if (getEntry(name) != null) {
+        return new URL("jar:" + new File(jarFilePath).toURI().toURL() + "!/" + name);
       }
+    } catch (MalformedURLException e) {
+      // no resource as result
+    } catch (IOException e) {
+      // no resource as result
     }
+    return null;
+  }
 
-    if (c == null) {
-      // Convert class name argument to filename
-      // Convert package names into subdirectories
-      String className = name.replace('.', '/') + ".class";
+  /**
+   * Reads resources from the jar file directly instead of through a URL connection. The content is
+   * copied, so the stream stays usable when the loader is closed.
+   */
+  @Override
+  public InputStream getResourceAsStream(final String name) {
+    final InputStream parentStream = getParent().getResourceAsStream(name);
+    if (parentStream != null) {
+      return parentStream;
+    }
 
+    synchronized (this) {
       try {
-        // Load class data from file and save in byte array
-        byte data[] = loadClassData(jarFilePath, className);
-
-        // Convert byte array to Class
-        c = defineClass(name, data, 0, data.length);
-
-        // If failed, throw exception
-        if (c == null)
-          throw new ClassNotFoundException(name);
+        final JarEntry entry = getEntry(name);
+        if (entry == null) {
+          return null;
+        }
+        final int length = readEntry(entry);
+        final byte[] content = new byte[length];
+        System.arraycopy(buffer, 0, content, 0, length);
+        return new ByteArrayInputStream(content);
 
       } catch (IOException e) {
-        throw new ClassNotFoundException("Error reading file: " + className, e);
+        return null;
       }
     }
-
-    // Resolve class definition if appropriate
-    if (resolve)
-      resolveClass(c);
-
-    // Return class just created
-    return c;
   }
 
-  private byte[] loadClassData(String jarFilePath, String className) throws IOException {
+  /**
+   * Closes the jar file. Classes and resources that have not been loaded yet can't be loaded
+   * anymore.
+   */
+  @Override
+  public synchronized void close() throws IOException {
+    closed = true;
+    entries = null;
+    if (jarFile != null) {
+      try {
+        jarFile.close();
+      } finally {
+        jarFile = null;
+      }
+    }
+  }
 
-    if (className == null) {
-      throw new IOException("Unable to load classes with null className");
+  private synchronized JarEntry getEntry(final String name) throws IOException {
+    if (closed) {
+      throw new IOException("The class loader for " + jarFilePath + " has been closed");
+    }
+    if (jarFile == null) {
+      jarFile = new JarFile(jarFilePath);
+      entries = new HashMap<String, JarEntry>();
+      final Enumeration<JarEntry> jarEntries = jarFile.entries();
+      while (jarEntries.hasMoreElements()) {
+        final JarEntry entry = jarEntries.nextElement();
+        if (!entry.isDirectory()) {
+          entries.put(entry.getName(), entry);
+        }
+      }
     }
+    return entries.get(name);
+  }
 
-    // Get jar file from the provided path
-    JarFile file = new JarFile(jarFilePath);
-    JarEntry entry = file.getJarEntry(className);
-    InputStream is = file.getInputStream(entry);
+  /**
+   * Reads the content of the entry into the buffer, growing it if needed.
+   *
+   * @return the number of bytes read
+   */
+  private int readEntry(final JarEntry entry) throws IOException {
+    final long size = entry.getSize();
+    if (size > buffer.length) {
+      buffer = new byte[(int) size];
+    }
 
+    final InputStream is = jarFile.getInputStream(entry);
     if (is == null) {
-      throw new IOException("Unable to load class with name " + className + " because the inputstream was null");
+      throw new IOException("Unable to read entry " + entry.getName() + " because the inputstream was null");
     }
 
-    // Get size of class file
-    int size = (int) entry.getSize();
-
-    // Reserve space to read
-    byte buff[] = new byte[size];
-
-    // Get stream to read from
-    DataInputStream dis = new DataInputStream(is);
-
-    // Read in data
-    dis.readFully(buff);
-
-    // close stream
-    dis.close();
-
-    // return data
-    return buff;
+    int length = 0;
+    try {
+      int read;
+      while ((read = is.read(buffer, length, buffer.length - length)) != -1) {
+        length += read;
+        if (length == buffer.length) {
+          // the size of the entry may be unknown
+          final byte[] grown = new byte[buffer.length * 2];
+          System.arraycopy(buffer, 0, grown, 0, length);
+          buffer = grown;
+        }
+      }
+    } finally {
+      is.close();
+    }
+    return length;
   }
 }
\ No newline at end of file
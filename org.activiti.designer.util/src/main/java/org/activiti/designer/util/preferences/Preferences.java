@@ -33,8 +33,10 @@ public enum Preferences {
   ALFRESCO_FORMTYPES_USERTASK("com.alfresco.designer.preferences.formtypes.usertask"),
   EDITOR_ADD_LABELS_TO_NEW_SEQUENCEFLOWS("org.activiti.designer.preferences.editor.addLabelsToNewSequenceFlows"), 
   EDITOR_ADD_DEFAULT_CONTENT_TO_DIAGRAMS("org.activiti.designer.preferences.editor.addDefaultContentToDiagrams"), 
+  EDITOR_LAZY_SHAPES_THRESHOLD("org.activiti.designer.preferences.editor.lazyShapesThreshold"), 
   SAVE_TO_FORMAT("org.activiti.designer.preferences.save.saveToFormat"), 
   SAVE_IMAGE("org.activiti.designer.preferences.save.imageFormat"),
+  SAVE_IMAGE_MAX_SIZE("org.activiti.designer.preferences.save.imageMaxSize"),
   SAVE_IMAGE_ADD_OVERLAY("org.activiti.designer.preferences.save.imageAddOverlay"),
   SAVE_IMAGE_ADD_OVERLAY_POSITION("org.activiti.designer.preferences.save.imageAddOverlayPosition"),
   SAVE_IMAGE_ADD_OVERLAY_FILENAME("org.activiti.designer.preferences.save.imageAddOverlayFilename"),
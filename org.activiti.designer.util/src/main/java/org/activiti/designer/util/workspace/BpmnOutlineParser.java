@@ -0,0 +1,342 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.activiti.designer.util.workspace;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.LinkedList;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamReader;
+
+import org.activiti.bpmn.model.BoundaryEvent;
+import org.activiti.bpmn.model.BpmnModel;
+import org.activiti.bpmn.model.BusinessRuleTask;
+import org.activiti.bpmn.model.CallActivity;
+import org.activiti.bpmn.model.CancelEventDefinition;
+import org.activiti.bpmn.model.CompensateEventDefinition;
+import org.activiti.bpmn.model.ComplexGateway;
+import org.activiti.bpmn.model.EndEvent;
+import org.activiti.bpmn.model.ErrorEventDefinition;
+import org.activiti.bpmn.model.Event;
+import org.activiti.bpmn.model.EventDefinition;
+import org.activiti.bpmn.model.EventGateway;
+import org.activiti.bpmn.model.EventSubProcess;
+import org.activiti.bpmn.model.ExclusiveGateway;
+import org.activiti.bpmn.model.FlowElement;
+import org.activiti.bpmn.model.FlowElementsContainer;
+import org.activiti.bpmn.model.InclusiveGateway;
+import org.activiti.bpmn.model.IntermediateCatchEvent;
+import org.activiti.bpmn.model.Lane;
+import org.activiti.bpmn.model.ManualTask;
+import org.activiti.bpmn.model.MessageEventDefinition;
+import org.activiti.bpmn.model.ParallelGateway;
+import org.activiti.bpmn.model.Pool;
+import org.activiti.bpmn.model.Process;
+import org.activiti.bpmn.model.ReceiveTask;
+import org.activiti.bpmn.model.ScriptTask;
+import org.activiti.bpmn.model.SendTask;
+import org.activiti.bpmn.model.SequenceFlow;
+import org.activiti.bpmn.model.ServiceTask;
+import org.activiti.bpmn.model.SignalEventDefinition;
+import org.activiti.bpmn.model.StartEvent;
+import org.activiti.bpmn.model.SubProcess;
+import org.activiti.bpmn.model.TerminateEventDefinition;
+import org.activiti.bpmn.model.ThrowEvent;
+import org.activiti.bpmn.model.TimerEventDefinition;
+import org.activiti.bpmn.model.Transaction;
+import org.activiti.bpmn.model.UserTask;
+
+/**
+ * Parses the outline of BPMN data files in a single pass: the processes, pools, lanes and the flow
+ * elements with their IDs, names and types. Diagram interchange, extension elements, listeners,
+ * documentation and data objects are skipped without being read into objects, so the outline is
+ * much cheaper to build and keep than the full model.
+ *
+ * <p>
+ * The outline is a {@link BpmnModel}, so readers that only display diagrams, such as the Project
+ * Explorer and icon providers, can use it like the full model. Apart from the structure, elements
+ * only have the attributes that determine how they are displayed: the type and extension ID of
+ * tasks, the event definitions of events, the attached element of boundary events, the called
+ * element of call activities and the source and target of sequence flows. Event definitions are
+ * empty. The parser may be used from any thread.
+ */
+public class BpmnOutlineParser {
+
+  private static final String ACTIVITI_NAMESPACE = "http://activiti.org/bpmn";
+
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  private static XMLInputFactory xmlInputFactory;
+
+  private final BpmnModel model = new BpmnModel();
+
+  // the process and sub processes the parser is in, innermost first
+  private final LinkedList<FlowElementsContainer> containers = new LinkedList<FlowElementsContainer>();
+  private Process currentProcess;
+  // the lanes the parser is in, innermost first. Lanes in a child lane set are added to the process
+  // like any other lane.
+  private final LinkedList<Lane> lanes = new LinkedList<Lane>();
+  private Event currentEvent;
+
+  private BpmnOutlineParser() {
+
+  }
+
+  /**
+   * Parses the outline of the provided file.
+   *
+   * @throws Exception
+   *           if the file cannot be read or isn't XML
+   */
+  public static BpmnModel parse(final File bpmnFile) throws Exception {
+    final InputStream fileStream = new BufferedInputStream(new FileInputStream(bpmnFile), BUFFER_SIZE);
+    try {
+      return parse(fileStream);
+    } finally {
+      try {
+        fileStream.close();
+      } catch (IOException e) {
+        // ignore
+      }
+    }
+  }
+
+  /**
+   * Parses the outline of the provided stream. The stream is not closed.
+   *
+   * @throws Exception
+   *           if the stream cannot be read or isn't XML
+   */
+  public static BpmnModel parse(final InputStream stream) throws Exception {
+    final XMLStreamReader xtr = createXMLStreamReader(stream);
+    try {
+      return new BpmnOutlineParser().read(xtr);
+    } finally {
+      xtr.close();
+    }
+  }
+
+  private BpmnModel read(final XMLStreamReader xtr) throws Exception {
+    while (xtr.hasNext()) {
+      final int event = xtr.next();
+      if (event == XMLStreamConstants.START_ELEMENT) {
+        startElement(xtr);
+      } else if (event == XMLStreamConstants.END_ELEMENT) {
+        endElement(xtr.getLocalName());
+      }
+    }
+    return model;
+  }
+
+  private void startElement(final XMLStreamReader xtr) throws Exception {
+    final String name = xtr.getLocalName();
+
+    if ("definitions".equals(name) || "collaboration".equals(name) || "laneSet".equals(name) || "childLaneSet".equals(name)) {
+      // only containers of the outline
+
+    } else if ("process".equals(name)) {
+      currentProcess = new Process();
+      currentProcess.setId(xtr.getAttributeValue(null, "id"));
+      currentProcess.setName(xtr.getAttributeValue(null, "name"));
+      model.addProcess(currentProcess);
+      containers.addFirst(currentProcess);
+
+    } else if ("participant".equals(name)) {
+      final Pool pool = new Pool();
+      pool.setId(xtr.getAttributeValue(null, "id"));
+      pool.setName(xtr.getAttributeValue(null, "name"));
+      pool.setProcessRef(xtr.getAttributeValue(null, "processRef"));
+      model.getPools().add(pool);
+      skipElement(xtr);
+
+    } else if ("lane".equals(name) && currentProcess != null) {
+      final Lane lane = new Lane();
+      lane.setId(xtr.getAttributeValue(null, "id"));
+      lane.setName(xtr.getAttributeValue(null, "name"));
+      lane.setParentProcess(currentProcess);
+      currentProcess.getLanes().add(lane);
+      lanes.addFirst(lane);
+
+    } else if ("flowNodeRef".equals(name) && !lanes.isEmpty()) {
+      lanes.getFirst().getFlowReferences().add(xtr.getElementText().trim());
+
+    } else if (currentEvent != null && name.endsWith("EventDefinition")) {
+      final EventDefinition eventDefinition = createEventDefinition(name);
+      if (eventDefinition != null) {
+        currentEvent.addEventDefinition(eventDefinition);
+      }
+      skipElement(xtr);
+
+    } else if (("subProcess".equals(name) || "transaction".equals(name)) && !containers.isEmpty()) {
+      final SubProcess subProcess;
+      if ("transaction".equals(name)) {
+        subProcess = new Transaction();
+      } else if ("true".equalsIgnoreCase(xtr.getAttributeValue(null, "triggeredByEvent"))) {
+        subProcess = new EventSubProcess();
+      } else {
+        subProcess = new SubProcess();
+      }
+      addFlowElement(subProcess, xtr);
+      containers.addFirst(subProcess);
+
+    } else {
+      final FlowElement flowElement = containers.isEmpty() ? null : createFlowElement(name, xtr);
+      if (flowElement == null) {
+        skipElement(xtr);
+      } else {
+        addFlowElement(flowElement, xtr);
+        if (flowElement instanceof Event) {
+          // read on for the event definitions
+          currentEvent = (Event) flowElement;
+        } else {
+          skipElement(xtr);
+        }
+      }
+    }
+  }
+
+  private void endElement(final String name) {
+    if (currentEvent != null) {
+      // everything within an event but its event definitions was skipped
+      currentEvent = null;
+    } else if ("process".equals(name)) {
+      containers.clear();
+      lanes.clear();
+      currentProcess = null;
+    } else if ("subProcess".equals(name) || "transaction".equals(name)) {
+      containers.removeFirst();
+    } else if ("lane".equals(name) && !lanes.isEmpty()) {
+      lanes.removeFirst();
+    }
+  }
+
+  private void addFlowElement(final FlowElement flowElement, final XMLStreamReader xtr) {
+    flowElement.setId(xtr.getAttributeValue(null, "id"));
+    flowElement.setName(xtr.getAttributeValue(null, "name"));
+    containers.getFirst().addFlowElement(flowElement);
+  }
+
+  private static FlowElement createFlowElement(final String name, final XMLStreamReader xtr) {
+    if ("startEvent".equals(name)) {
+      return new StartEvent();
+    } else if ("endEvent".equals(name)) {
+      return new EndEvent();
+    } else if ("boundaryEvent".equals(name)) {
+      final BoundaryEvent boundaryEvent = new BoundaryEvent();
+      boundaryEvent.setAttachedToRefId(xtr.getAttributeValue(null, "attachedToRef"));
+      return boundaryEvent;
+    } else if ("intermediateCatchEvent".equals(name)) {
+      return new IntermediateCatchEvent();
+    } else if ("intermediateThrowEvent".equals(name)) {
+      return new ThrowEvent();
+    } else if ("userTask".equals(name)) {
+      final UserTask userTask = new UserTask();
+      userTask.setExtensionId(xtr.getAttributeValue(ACTIVITI_NAMESPACE, "extensionId"));
+      return userTask;
+    } else if ("serviceTask".equals(name)) {
+      final ServiceTask serviceTask = new ServiceTask();
+      serviceTask.setType(xtr.getAttributeValue(ACTIVITI_NAMESPACE, "type"));
+      serviceTask.setExtensionId(xtr.getAttributeValue(ACTIVITI_NAMESPACE, "extensionId"));
+      return serviceTask;
+    } else if ("sendTask".equals(name)) {
+      final SendTask sendTask = new SendTask();
+      sendTask.setType(xtr.getAttributeValue(ACTIVITI_NAMESPACE, "type"));
+      return sendTask;
+    } else if ("scriptTask".equals(name)) {
+      return new ScriptTask();
+    } else if ("receiveTask".equals(name)) {
+      return new ReceiveTask();
+    } else if ("manualTask".equals(name) || "task".equals(name)) {
+      return new ManualTask();
+    } else if ("businessRuleTask".equals(name)) {
+      return new BusinessRuleTask();
+    } else if ("callActivity".equals(name)) {
+      final CallActivity callActivity = new CallActivity();
+      callActivity.setCalledElement(xtr.getAttributeValue(null, "calledElement"));
+      return callActivity;
+    } else if ("exclusiveGateway".equals(name)) {
+      return new ExclusiveGateway();
+    } else if ("complexGateway".equals(name)) {
+      return new ComplexGateway();
+    } else if ("parallelGateway".equals(name)) {
+      return new ParallelGateway();
+    } else if ("inclusiveGateway".equals(name)) {
+      return new InclusiveGateway();
+    } else if ("eventBasedGateway".equals(name)) {
+      return new EventGateway();
+    } else if ("sequenceFlow".equals(name)) {
+      final SequenceFlow sequenceFlow = new SequenceFlow();
+      sequenceFlow.setSourceRef(xtr.getAttributeValue(null, "sourceRef"));
+      sequenceFlow.setTargetRef(xtr.getAttributeValue(null, "targetRef"));
+      return sequenceFlow;
+    }
+    return null;
+  }
+
+  private static EventDefinition createEventDefinition(final String name) {
+    if ("timerEventDefinition".equals(name)) {
+      return new TimerEventDefinition();
+    } else if ("errorEventDefinition".equals(name)) {
+      return new ErrorEventDefinition();
+    } else if ("signalEventDefinition".equals(name)) {
+      return new SignalEventDefinition();
+    } else if ("messageEventDefinition".equals(name)) {
+      return new MessageEventDefinition();
+    } else if ("terminateEventDefinition".equals(name)) {
+      return new TerminateEventDefinition();
+    } else if ("compensateEventDefinition".equals(name)) {
+      return new CompensateEventDefinition();
+    } else if ("cancelEventDefinition".equals(name)) {
+      return new CancelEventDefinition();
+    }
+    return null;
+  }
+
+  /**
+   * Moves the reader to the end of the current element, without reading its content into objects.
+   */
+  private static void skipElement(final XMLStreamReader xtr) throws Exception {
+    int depth = 1;
+    while (depth > 0 && xtr.hasNext()) {
+      final int event = xtr.next();
+      if (event == XMLStreamConstants.START_ELEMENT) {
+        depth++;
+      } else if (event == XMLStreamConstants.END_ELEMENT) {
+        depth--;
+      }
+    }
+  }
+
+  private static XMLStreamReader createXMLStreamReader(final InputStream stream) throws Exception {
+    final XMLInputFactory xif = getXMLInputFactory();
+    // factories are not guaranteed to be thread safe, so serialize the (cheap) reader creation
+    synchronized (xif) {
+      return xif.createXMLStreamReader(new InputStreamReader(stream, "UTF-8"));
+    }
+  }
+
+  private static synchronized XMLInputFactory getXMLInputFactory() {
+    if (xmlInputFactory == null) {
+      xmlInputFactory = XMLInputFactory.newInstance();
+    }
+    return xmlInputFactory;
+  }
+
+}
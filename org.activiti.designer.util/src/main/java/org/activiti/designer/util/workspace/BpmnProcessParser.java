@@ -26,18 +26,16 @@
 
 package org.activiti.designer.util.workspace;
 
-import java.io.InputStreamReader;
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.HashSet;
 import java.util.Set;
 
-import javax.xml.stream.XMLInputFactory;
-import javax.xml.stream.XMLStreamReader;
-
 import org.activiti.bpmn.model.Process;
 import org.eclipse.core.resources.IFile;
 
 /**
- * Parses BPMN files for process elements.
+ * Parses BPMN files for process elements, using the outline of the file.
  * 
  * @author tiesebarrell
  */
@@ -54,42 +52,25 @@ public class BpmnProcessParser {
 
     final Set<Process> result = new HashSet<Process>();
 
+    InputStream in = null;
     try {
-      XMLInputFactory xif = XMLInputFactory.newInstance();
-      InputStreamReader in = new InputStreamReader(bpmnFile.getContents(), "UTF-8");
-      XMLStreamReader xtr = xif.createXMLStreamReader(in);
-
-      Process currentProcess = null;
-
-      while (xtr.hasNext()) {
-        xtr.next();
-
-        if (isProcessStartElement(xtr)) {
-          currentProcess = new Process();
-          currentProcess.setId(xtr.getAttributeValue(null, "id"));
-        } else if (isProcessEndElement(xtr)) {
-          result.add(currentProcess);
-          currentProcess = null;
-        } else {
-          continue;
-        }
-      }
-
+      in = bpmnFile.getContents();
+      result.addAll(BpmnOutlineParser.parse(in).getProcesses());
     } catch (Exception e) {
       // Don't handle, parsing failed.
       // TODO: log and show message.
+    } finally {
+      if (in != null) {
+        try {
+          in.close();
+        } catch (IOException e) {
+          // ignore
+        }
+      }
     }
 
     return result;
 
   }
 
-  private static final boolean isProcessStartElement(final XMLStreamReader xtr) {
-    return xtr.isStartElement() && "process".equalsIgnoreCase(xtr.getLocalName());
-  }
-
-  private static final boolean isProcessEndElement(final XMLStreamReader xtr) {
-    return xtr.isEndElement() && "process".equalsIgnoreCase(xtr.getLocalName());
-  }
-
 }
@@ -0,0 +1,463 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.activiti.designer.util.workspace;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.activiti.bpmn.model.Process;
+import org.activiti.designer.util.ActivitiConstants;
+import org.activiti.designer.util.Activator;
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IFolder;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IResourceChangeEvent;
+import org.eclipse.core.resources.IResourceChangeListener;
+import org.eclipse.core.resources.IResourceDelta;
+import org.eclipse.core.resources.IResourceDeltaVisitor;
+import org.eclipse.core.resources.IResourceVisitor;
+import org.eclipse.core.resources.ISaveContext;
+import org.eclipse.core.resources.ISaveParticipant;
+import org.eclipse.core.resources.ISavedState;
+import org.eclipse.core.resources.IWorkspace;
+import org.eclipse.core.resources.IWorkspaceRoot;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Path;
+import org.eclipse.core.runtime.Status;
+
+/**
+ * Index of the process IDs defined in the diagram data files of all open Activiti projects. The
+ * index is built once and then kept up to date by listening to resource changes, so looking up the
+ * files that define a process doesn't involve visiting and parsing the workspace.
+ *
+ * <p>
+ * The index takes part in workspace saves. It is written to the state location of the plugin and
+ * on the next start only the files changed in the meantime, as reported by the workspace, are
+ * parsed again. Changed files are not parsed in the resource change notification itself but on
+ * the next lookup.
+ */
+public class ProcessIdIndex {
+
+  private static final String INDEX_FILE_KEY = "processIdIndex";
+  private static final String INDEX_FILE_PREFIX = "processIdIndex-";
+  private static final int INDEX_FILE_VERSION = 1;
+
+  private static final Set<String> IGNORED_ROOT_SEGMENTS = new HashSet<String>();
+
+  static {
+    IGNORED_ROOT_SEGMENTS.add("target");
+    IGNORED_ROOT_SEGMENTS.add("tempbar");
+  }
+
+  private static ProcessIdIndex instance;
+
+  private final Map<IFile, Set<String>> processIdsByFile = new ConcurrentHashMap<IFile, Set<String>>();
+  private final Map<String, Set<IFile>> filesByProcessId = new ConcurrentHashMap<String, Set<IFile>>();
+
+  // files that were added or changed and still need to be parsed
+  private final Set<IFile> pendingFiles = Collections.newSetFromMap(new ConcurrentHashMap<IFile, Boolean>());
+
+  private final IResourceChangeListener resourceChangeListener = new IResourceChangeListener() {
+
+    @Override
+    public void resourceChanged(IResourceChangeEvent event) {
+      processResourceChangeEvent(event);
+    }
+  };
+
+  private ProcessIdIndex() {
+  }
+
+  /**
+   * Returns the index, building it first if this is the first call.
+   */
+  public static synchronized ProcessIdIndex getInstance() {
+    if (instance == null) {
+      instance = new ProcessIdIndex();
+      instance.initialize();
+    }
+    return instance;
+  }
+
+  /**
+   * Stops listening to resource changes. Called when the plugin is stopped.
+   */
+  public static synchronized void shutdown() {
+    if (instance != null) {
+      ResourcesPlugin.getWorkspace().removeResourceChangeListener(instance.resourceChangeListener);
+      instance = null;
+    }
+  }
+
+  /**
+   * @return all diagram data files in all open Activiti projects
+   */
+  public Set<IFile> getDiagramDataFiles() {
+    processPendingFiles();
+    return new HashSet<IFile>(processIdsByFile.keySet());
+  }
+
+  /**
+   * @return a map of all diagram data files to the IDs of the processes they define
+   */
+  public Map<IFile, Set<String>> getProcessIdsByDiagramDataFile() {
+    processPendingFiles();
+    return new HashMap<IFile, Set<String>>(processIdsByFile);
+  }
+
+  /**
+   * @return the diagram data files that define a process with the given ID
+   */
+  public Set<IFile> getDiagramDataFiles(final String processId) {
+    processPendingFiles();
+    final Set<IFile> files = filesByProcessId.get(processId);
+    if (files == null) {
+      return new HashSet<IFile>();
+    }
+    return new HashSet<IFile>(files);
+  }
+
+  private void initialize() {
+    final IWorkspace workspace = ResourcesPlugin.getWorkspace();
+
+    ISavedState savedState = null;
+    try {
+      savedState = workspace.addSaveParticipant(Activator.PLUGIN_ID, new IndexSaveParticipant());
+    } catch (CoreException e) {
+      logError("Unable to take part in workspace saves", e);
+    }
+
+    boolean loaded = false;
+    if (savedState != null) {
+      final IPath indexPath = savedState.lookup(new Path(INDEX_FILE_KEY));
+      if (indexPath != null) {
+        loaded = load(getStateLocation().append(indexPath).toFile());
+      }
+    }
+
+    workspace.addResourceChangeListener(resourceChangeListener, IResourceChangeEvent.POST_CHANGE);
+
+    if (loaded) {
+      // apply the changes made since the index was saved
+      savedState.processResourceChangeEvents(resourceChangeListener);
+    } else {
+      scanWorkspace();
+    }
+  }
+
+  private void scanWorkspace() {
+    final IProject[] projects = ResourcesPlugin.getWorkspace().getRoot().getProjects();
+    for (final IProject project : projects) {
+      scanProject(project);
+    }
+  }
+
+  private void scanProject(final IProject project) {
+    if (!isActivitiProject(project)) {
+      return;
+    }
+    try {
+      project.accept(new IResourceVisitor() {
+
+        @Override
+        public boolean visit(IResource resource) throws CoreException {
+          if (isIgnoredResource(resource)) {
+            return false;
+          }
+          if (isDiagramDataFile(resource)) {
+            pendingFiles.add((IFile) resource);
+          }
+          return true;
+        }
+      });
+    } catch (CoreException e) {
+      // intentionally ignored
+    }
+  }
+
+  private void processResourceChangeEvent(final IResourceChangeEvent event) {
+    final IResourceDelta delta = event.getDelta();
+    if (delta == null) {
+      return;
+    }
+    try {
+      delta.accept(new IResourceDeltaVisitor() {
+
+        @Override
+        public boolean visit(IResourceDelta delta) throws CoreException {
+          final IResource resource = delta.getResource();
+
+          if (resource instanceof IProject) {
+            final IProject project = (IProject) resource;
+            if (delta.getKind() == IResourceDelta.REMOVED || !project.isOpen()) {
+              removeProject(project);
+              return false;
+            }
+            if ((delta.getFlags() & (IResourceDelta.OPEN | IResourceDelta.DESCRIPTION)) != 0) {
+              // opened or the nature may have changed
+              removeProject(project);
+              scanProject(project);
+              return false;
+            }
+            return isActivitiProject(project);
+          }
+
+          if (isIgnoredResource(resource)) {
+            return false;
+          }
+
+          if (isDiagramDataFile(resource)) {
+            final IFile file = (IFile) resource;
+            switch (delta.getKind()) {
+            case IResourceDelta.ADDED:
+              pendingFiles.add(file);
+              break;
+            case IResourceDelta.REMOVED:
+              pendingFiles.remove(file);
+              removeFile(file);
+              break;
+            case IResourceDelta.CHANGED:
+              if ((delta.getFlags() & (IResourceDelta.CONTENT | IResourceDelta.REPLACED)) != 0) {
+                pendingFiles.add(file);
+              }
+              break;
+            }
+          }
+          return true;
+        }
+      });
+    } catch (CoreException e) {
+      logError("Unable to update the process ID index", e);
+    }
+  }
+
+  private void processPendingFiles() {
+    if (pendingFiles.isEmpty()) {
+      return;
+    }
+    for (final IFile file : new HashSet<IFile>(pendingFiles)) {
+      pendingFiles.remove(file);
+      if (file.exists()) {
+        putFile(file, parseProcessIds(file));
+      } else {
+        removeFile(file);
+      }
+    }
+  }
+
+  private Set<String> parseProcessIds(final IFile dataFile) {
+    final Set<String> result = new HashSet<String>();
+    final BpmnProcessParser parser = new BpmnProcessParser(dataFile);
+
+    for (Process process : parser.getProcesses()) {
+      result.add(process.getId());
+    }
+    return result;
+  }
+
+  private synchronized void putFile(final IFile file, final Set<String> processIds) {
+    removeFile(file);
+    processIdsByFile.put(file, Collections.unmodifiableSet(processIds));
+    for (final String processId : processIds) {
+      Set<IFile> files = filesByProcessId.get(processId);
+      if (files == null) {
+        files = Collections.newSetFromMap(new ConcurrentHashMap<IFile, Boolean>());
+        filesByProcessId.put(processId, files);
+      }
+      files.add(file);
+    }
+  }
+
+  private synchronized void removeFile(final IFile file) {
+    final Set<String> processIds = processIdsByFile.remove(file);
+    if (processIds == null) {
+      return;
+    }
+    for (final String processId : processIds) {
+      final Set<IFile> files = filesByProcessId.get(processId);
+      if (files != null) {
+        files.remove(file);
+        if (files.isEmpty()) {
+          filesByProcessId.remove(processId);
+        }
+      }
+    }
+  }
+
+  private void removeProject(final IProject project) {
+    for (final IFile file : new HashSet<IFile>(processIdsByFile.keySet())) {
+      if (project.equals(file.getProject())) {
+        removeFile(file);
+      }
+    }
+    for (final IFile file : new HashSet<IFile>(pendingFiles)) {
+      if (project.equals(file.getProject())) {
+        pendingFiles.remove(file);
+      }
+    }
+  }
+
+  private boolean load(final File indexFile) {
+    if (!indexFile.isFile()) {
+      return false;
+    }
+
+    final IWorkspaceRoot root = ResourcesPlugin.getWorkspace().getRoot();
+    DataInputStream in = null;
+    try {
+      in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)));
+      if (in.readInt() != INDEX_FILE_VERSION) {
+        return false;
+      }
+      final int fileCount = in.readInt();
+      for (int i = 0; i < fileCount; i++) {
+        final IFile file = root.getFile(new Path(in.readUTF()));
+        final int processIdCount = in.readInt();
+        final Set<String> processIds = new HashSet<String>();
+        for (int j = 0; j < processIdCount; j++) {
+          processIds.add(in.readUTF());
+        }
+        putFile(file, processIds);
+      }
+      return true;
+
+    } catch (IOException e) {
+      logError("Unable to read the process ID index", e);
+      processIdsByFile.clear();
+      filesByProcessId.clear();
+      return false;
+    } finally {
+      closeQuietly(in);
+    }
+  }
+
+  private void save(final File indexFile) throws IOException {
+    processPendingFiles();
+
+    final Map<IFile, Set<String>> snapshot = new HashMap<IFile, Set<String>>(processIdsByFile);
+    final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(indexFile)));
+    try {
+      out.writeInt(INDEX_FILE_VERSION);
+      out.writeInt(snapshot.size());
+      for (final Entry<IFile, Set<String>> entry : snapshot.entrySet()) {
+        out.writeUTF(entry.getKey().getFullPath().toString());
+        out.writeInt(entry.getValue().size());
+        for (final String processId : entry.getValue()) {
+          out.writeUTF(processId);
+        }
+      }
+    } finally {
+      out.close();
+    }
+  }
+
+  private static boolean isActivitiProject(final IProject project) {
+    try {
+      return project.isOpen() && project.hasNature(ActivitiConstants.NATURE_ID);
+    } catch (CoreException exception) {
+      return false;
+    }
+  }
+
+  private static boolean isIgnoredResource(final IResource resource) {
+    return resource instanceof IFolder && IGNORED_ROOT_SEGMENTS.contains(resource.getFullPath().segment(1));
+  }
+
+  private static boolean isDiagramDataFile(final IResource resource) {
+    return resource instanceof IFile && resource.getName().endsWith(ActivitiConstants.DATA_FILE_EXTENSION);
+  }
+
+  private static IPath getStateLocation() {
+    return Activator.getDefault().getStateLocation();
+  }
+
+  private static void logError(final String message, final Exception e) {
+    Activator.getDefault().getLog().log(new Status(IStatus.ERROR, Activator.PLUGIN_ID, message, e));
+  }
+
+  private static void closeQuietly(final DataInputStream in) {
+    if (in != null) {
+      try {
+        in.close();
+      } catch (IOException e) {
+        // intentionally ignored
+      }
+    }
+  }
+
+  /**
+   * Writes the index when the workspace is saved, so the next session only needs the changes made
+   * after the save.
+   */
+  private class IndexSaveParticipant implements ISaveParticipant {
+
+    @Override
+    public void prepareToSave(ISaveContext context) throws CoreException {
+    }
+
+    @Override
+    public void saving(ISaveContext context) throws CoreException {
+      if (context.getKind() != ISaveContext.FULL_SAVE) {
+        return;
+      }
+      final String indexFileName = INDEX_FILE_PREFIX + context.getSaveNumber();
+      try {
+        save(getStateLocation().append(indexFileName).toFile());
+      } catch (IOException e) {
+        throw new CoreException(new Status(IStatus.ERROR, Activator.PLUGIN_ID, "Unable to save the process ID index", e));
+      }
+      context.map(new Path(INDEX_FILE_KEY), new Path(indexFileName));
+      context.needSaveNumber();
+      context.needDelta();
+    }
+
+    @Override
+    public void doneSaving(ISaveContext context) {
+      // only full saves write an index, so the index of the last full save stays in use after a snapshot
+      if (context.getKind() != ISaveContext.FULL_SAVE) {
+        return;
+      }
+      // the index of the previous save is no longer needed
+      final File previousIndexFile = getStateLocation().append(INDEX_FILE_PREFIX + context.getPreviousSaveNumber()).toFile();
+      previousIndexFile.delete();
+    }
+
+    @Override
+    public void rollback(ISaveContext context) {
+      if (context.getKind() != ISaveContext.FULL_SAVE) {
+        return;
+      }
+      final File indexFile = getStateLocation().append(INDEX_FILE_PREFIX + context.getSaveNumber()).toFile();
+      indexFile.delete();
+    }
+  }
+
+}
@@ -0,0 +1,102 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.activiti.designer.util.workspace;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.eclipse.core.resources.IContainer;
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IResourceRuleFactory;
+import org.eclipse.core.resources.IWorkspace;
+import org.eclipse.core.resources.IWorkspaceRoot;
+import org.eclipse.core.resources.IWorkspaceRunnable;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.jobs.ISchedulingRule;
+import org.eclipse.core.runtime.jobs.MultiRule;
+
+/**
+ * Keeps track of the files written while saving a diagram, so only those files have to be refreshed
+ * in the workspace instead of the whole project. Files written with java.io are recorded with
+ * {@link #fileWritten(File)} and refreshed together by {@link #refresh(IProgressMonitor)}, in a
+ * single workspace operation. Files written through the workspace API, such as the output of the
+ * export marshallers, need no refresh at all and don't have to be recorded.
+ */
+public class SaveOutputTracker {
+
+  private final Set<File> writtenFiles = new LinkedHashSet<File>();
+
+  /**
+   * Records a file that was written outside of the workspace API.
+   */
+  public synchronized void fileWritten(final File file) {
+    if (file != null) {
+      writtenFiles.add(file.getAbsoluteFile());
+    }
+  }
+
+  /**
+   * Refreshes the files that were recorded since the last refresh. Files in folders the workspace
+   * doesn't know yet are picked up by refreshing the closest folder it does know.
+   */
+  public void refresh(final IProgressMonitor monitor) throws CoreException {
+    final List<File> files;
+    synchronized (this) {
+      files = new ArrayList<File>(writtenFiles);
+      writtenFiles.clear();
+    }
+
+    final IWorkspace workspace = ResourcesPlugin.getWorkspace();
+    final IWorkspaceRoot root = workspace.getRoot();
+    final Set<IResource> resources = new LinkedHashSet<IResource>();
+    for (final File file : files) {
+      for (final IFile workspaceFile : root.findFilesForLocationURI(file.toURI())) {
+        IResource resource = workspaceFile;
+        IContainer parent = workspaceFile.getParent();
+        while (parent != null && !parent.isAccessible()) {
+          resource = parent;
+          parent = parent.getParent();
+        }
+        if (parent != null) {
+          resources.add(resource);
+        }
+      }
+    }
+    if (resources.isEmpty()) {
+      return;
+    }
+
+    final IResourceRuleFactory ruleFactory = workspace.getRuleFactory();
+    ISchedulingRule rule = null;
+    for (final IResource resource : resources) {
+      rule = MultiRule.combine(rule, ruleFactory.refreshRule(resource));
+    }
+
+    workspace.run(new IWorkspaceRunnable() {
+
+      @Override
+      public void run(final IProgressMonitor runMonitor) throws CoreException {
+        for (final IResource resource : resources) {
+          resource.refreshLocal(resource instanceof IFile ? IResource.DEPTH_ZERO : IResource.DEPTH_INFINITE, null);
+        }
+      }
+    }, rule, IWorkspace.AVOID_UPDATE, monitor);
+  }
+}
@@ -17,15 +17,16 @@
 package org.activiti.designer.validation.bpmn20.validation;
 
 import java.util.ArrayList;
-import java.util.Collection;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
-import org.activiti.bpmn.model.FlowElement;
+import org.activiti.designer.eclipse.extension.DiagramMarkerBatch;
+import org.activiti.designer.eclipse.extension.DiagramWorkerContext;
 import org.activiti.designer.eclipse.extension.validation.AbstractProcessValidator;
 import org.activiti.designer.util.ActivitiConstants;
 import org.activiti.designer.validation.bpmn20.bundle.PluginConstants;
+import org.activiti.designer.validation.bpmn20.validation.ValidationEngine.ValidationResult;
 import org.activiti.designer.validation.bpmn20.validation.worker.ProcessValidationWorkerInfo;
 import org.activiti.designer.validation.bpmn20.validation.worker.ProcessValidationWorkerMarker;
 import org.activiti.designer.validation.bpmn20.validation.worker.impl.ScriptTaskValidationWorker;
@@ -34,6 +35,9 @@ import org.activiti.designer.validation.bpmn20.validation.worker.impl.ServiceTas
 import org.activiti.designer.validation.bpmn20.validation.worker.impl.SubProcessValidationWorker;
 import org.activiti.designer.validation.bpmn20.validation.worker.impl.UserTaskValidationWorker;
 import org.eclipse.core.resources.IMarker;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.SubProgressMonitor;
 import org.eclipse.graphiti.mm.pictograms.Diagram;
@@ -41,12 +45,13 @@ import org.eclipse.graphiti.mm.pictograms.Diagram;
 /**
  * @author Tiese Barrell
  * @since 0.6.1
- * @version 2
+ * @version 3
  * 
  */
 public class BPMN20ProcessValidator extends AbstractProcessValidator {
 
-  private static final int EXTRACTION_WORK_UNIT = 10;
+  // diagram resource -> the result of its last validation, so only changed elements are validated again
+  private static final ConcurrentMap<IPath, ValidationResult> LAST_RESULTS = new ConcurrentHashMap<IPath, ValidationResult>();
 
   private boolean overallResult;
 
@@ -78,66 +83,77 @@ public class BPMN20ProcessValidator extends AbstractProcessValidator {
 
     monitor.beginTask("", PluginConstants.WORK_TOTAL);
 
-    // Clear problems for this diagram first
-    clearMarkers(getDiagramResource());
-
-    final Map<String, List<Object>> processNodes = extractProcessConstructs(new SubProgressMonitor(monitor, PluginConstants.WORK_EXTRACT_CONSTRUCTS));
-
-    final List<ProcessValidationWorkerInfo> workers = getWorkers();
-
-    for (final ProcessValidationWorkerInfo worker : workers) {
-
-      Collection<ProcessValidationWorkerMarker> result = worker.getProcessValidationWorker().validate(diagram, processNodes);
-      if (result.size() > 0) {
-        for (final ProcessValidationWorkerMarker marker : result) {
-          final String markerMessage = String.format(PluginConstants.MARKER_MESSAGE_PATTERN, marker.getCode().getDisplayName(), marker.getMessage());
-          switch (marker.getSeverity()) {
-          case IMarker.SEVERITY_ERROR:
-            addProblemToDiagram(markerMessage, marker.getNodeId());
-            break;
-          case IMarker.SEVERITY_WARNING:
-            addWarningToDiagram(markerMessage, marker.getNodeId());
-            break;
-          case IMarker.SEVERITY_INFO:
-            addInfoToDiagram(markerMessage, marker.getNodeId());
-            break;
-          }
-        }
-      }
-      monitor.worked(worker.getWork());
+    // the model is provided by the caller, such as the export marshaller that invokes the validator
+    final DiagramWorkerContext context = getDiagramWorkerContext();
+    if (context == null || context.getBpmnModel() == null) {
+      monitor.done();
+      return overallResult;
     }
 
-    monitor.done();
-    return overallResult;
-  }
-
-  private Map<String, List<Object>> extractProcessConstructs(final IProgressMonitor monitor) {
+    monitor.worked(PluginConstants.WORK_EXTRACT_CONSTRUCTS);
 
-    Collection<FlowElement> flowElements = getDiagramWorkerContext().getBpmnModel().getBpmnModel().getMainProcess().getFlowElements();
-    monitor.beginTask("Analyzing process constructs", flowElements.size() * EXTRACTION_WORK_UNIT);
-
-    final Map<String, List<Object>> result = new HashMap<String, List<Object>>();
+    final IResource resource = getDiagramResource();
+    // removed while validating, so a validation that fails makes the next one a full validation
+    ValidationResult previous = LAST_RESULTS.remove(resource.getFullPath());
+    if (previous != null && previous.getMarkers().size() != countMarkers(resource)) {
+      // the markers were changed by someone else, so those of unchanged elements can't be trusted
+      previous = null;
+    }
 
-    for (final FlowElement object : flowElements) {
+    final ValidationResult result = new ValidationEngine().validate(context.getBpmnModel(), diagram, getWorkers(), previous, monitor);
 
-      String nodeType = null;
+    if (writeMarkers(result, new SubProgressMonitor(monitor, PluginConstants.WORK_CLEAR_MARKERS))) {
+      LAST_RESULTS.put(resource.getFullPath(), result);
+    }
 
-      nodeType = object.getClass().getCanonicalName();
+    monitor.done();
+    return overallResult;
+  }
 
-      if (nodeType != null) {
-        if (!result.containsKey(nodeType)) {
-          result.put(nodeType, new ArrayList<Object>());
-        }
-        result.get(nodeType).add(object);
+  /**
+   * Replaces the markers of the validated nodes, all in a single workspace operation, so only one
+   * resource change is reported. Markers that are reported again are left untouched.
+   *
+   * @return true if the markers were written
+   */
+  private boolean writeMarkers(final ValidationResult result, final IProgressMonitor monitor) {
+    for (final ProcessValidationWorkerMarker marker : result.getMarkers()) {
+      if (marker.getSeverity() == IMarker.SEVERITY_ERROR) {
+        overallResult = false;
       }
+    }
 
-      monitor.worked(EXTRACTION_WORK_UNIT);
+    final DiagramMarkerBatch batch = createMarkerBatch();
+    for (final ProcessValidationWorkerMarker marker : result.getValidatedMarkers()) {
+      final String markerMessage = String.format(PluginConstants.MARKER_MESSAGE_PATTERN, marker.getCode().getDisplayName(), marker.getMessage());
+      batch.add(markerMessage, marker.getNodeId(), marker.getSeverity());
     }
 
-    monitor.done();
+    try {
+      batch.apply(getDiagramResource(), result.getValidatedNodeIds(), monitor);
+      return true;
+    } catch (CoreException e) {
+      e.printStackTrace();
+      return false;
+    }
+  }
 
+  /**
+   * @return the number of markers of this validator on the resource
+   */
+  private int countMarkers(final IResource resource) {
+    int result = 0;
+    final IMarker[] markers = getMarkers(resource);
+    if (markers != null) {
+      for (final IMarker marker : markers) {
+        if (getClass().getCanonicalName().equals(marker.getAttribute(ATTRIBUTE_WORKER_ID, null))) {
+          result++;
+        }
+      }
+    }
     return result;
   }
+
   private List<ProcessValidationWorkerInfo> getWorkers() {
 
     List<ProcessValidationWorkerInfo> result = new ArrayList<ProcessValidationWorkerInfo>();
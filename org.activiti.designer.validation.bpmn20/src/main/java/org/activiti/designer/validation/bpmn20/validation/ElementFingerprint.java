@@ -0,0 +1,141 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.activiti.designer.validation.bpmn20.validation;
+
+import java.io.UnsupportedEncodingException;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.activiti.bpmn.model.BaseElement;
+import org.activiti.bpmn.model.FlowElement;
+import org.activiti.bpmn.model.FlowElementsContainer;
+
+/**
+ * Computes a fingerprint of the content of a flow element, so elements that didn't change since
+ * the last validation can be recognized. The fingerprint covers the fields of the element and of
+ * the model objects it holds, such as listeners and form properties. Other flow elements and
+ * containers the element refers to, such as the elements of a sub process, are only covered by
+ * their ID, so changing an element doesn't change the fingerprint of its neighbours.
+ */
+final class ElementFingerprint {
+
+  private static final String MODEL_PACKAGE = BaseElement.class.getPackage().getName();
+
+  // model class -> its instance fields, including those of its super classes
+  private static final Map<Class< ? >, List<Field>> FIELDS = new ConcurrentHashMap<Class< ? >, List<Field>>();
+
+  private ElementFingerprint() {
+  }
+
+  /**
+   * @return the fingerprint of the element or null if no digest is available, which means the
+   *         element has to be validated every time
+   */
+  public static String of(final FlowElement flowElement) {
+    final StringBuilder content = new StringBuilder();
+    describe(flowElement, flowElement, content, new IdentityHashMap<Object, Boolean>());
+    try {
+      final byte[] digest = MessageDigest.getInstance("SHA-1").digest(content.toString().getBytes("UTF-8"));
+      return new BigInteger(1, digest).toString(16);
+    } catch (NoSuchAlgorithmException e) {
+      return null;
+    } catch (UnsupportedEncodingException e) {
+      return null;
+    }
+  }
+
+  private static void describe(final Object value, final FlowElement root, final StringBuilder content,
+          final Map<Object, Boolean> visited) {
+
+    if (value == null) {
+      content.append("null");
+    } else if (value instanceof Date) {
+      content.append(((Date) value).getTime());
+    } else if (value instanceof Enum< ? >) {
+      content.append(((Enum< ? >) value).name());
+    } else if (value != root && (value instanceof FlowElement || value instanceof FlowElementsContainer)) {
+      content.append("ref:").append(value instanceof BaseElement ? ((BaseElement) value).getId() : value.getClass().getName());
+    } else if (value instanceof Collection< ? >) {
+      content.append('[');
+      for (final Object item : (Collection< ? >) value) {
+        describe(item, root, content, visited);
+        content.append(',');
+      }
+      content.append(']');
+    } else if (value instanceof Map< ? , ? >) {
+      content.append('{');
+      for (final Entry< ? , ? > entry : ((Map< ? , ? >) value).entrySet()) {
+        describe(entry.getKey(), root, content, visited);
+        content.append('=');
+        describe(entry.getValue(), root, content, visited);
+        content.append(',');
+      }
+      content.append('}');
+    } else if (value.getClass().isArray()) {
+      content.append('[');
+      for (int i = 0; i < Array.getLength(value); i++) {
+        describe(Array.get(value, i), root, content, visited);
+        content.append(',');
+      }
+      content.append(']');
+    } else if (!value.getClass().getName().startsWith(MODEL_PACKAGE)) {
+      // strings, numbers, enums and anything else that isn't part of the model
+      content.append(value);
+    } else if (visited.put(value, Boolean.TRUE) != null) {
+      content.append("seen");
+    } else {
+      content.append(value.getClass().getSimpleName()).append('(');
+      for (final Field field : getFields(value.getClass())) {
+        content.append(field.getName()).append('=');
+        try {
+          describe(field.get(value), root, content, visited);
+        } catch (IllegalAccessException e) {
+          content.append('?');
+        }
+        content.append(';');
+      }
+      content.append(')');
+    }
+  }
+
+  private static List<Field> getFields(final Class< ? > modelClass) {
+    List<Field> result = FIELDS.get(modelClass);
+    if (result == null) {
+      result = new ArrayList<Field>();
+      for (Class< ? > current = modelClass; current != null && current != Object.class; current = current.getSuperclass()) {
+        for (final Field field : current.getDeclaredFields()) {
+          if (!Modifier.isStatic(field.getModifiers())) {
+            field.setAccessible(true);
+            result.add(field);
+          }
+        }
+      }
+      FIELDS.put(modelClass, result);
+    }
+    return result;
+  }
+
+}
@@ -0,0 +1,255 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.activiti.designer.validation.bpmn20.validation;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import org.activiti.bpmn.model.FlowElement;
+import org.activiti.bpmn.model.FlowElementsContainer;
+import org.activiti.bpmn.model.Process;
+import org.activiti.designer.util.editor.BpmnMemoryModel;
+import org.activiti.designer.validation.bpmn20.validation.worker.ProcessValidationWorkerInfo;
+import org.activiti.designer.validation.bpmn20.validation.worker.ProcessValidationWorkerMarker;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.graphiti.mm.pictograms.Diagram;
+
+/**
+ * Runs the validation workers for a model. All flow elements of all processes, including those
+ * nested in sub processes, are collected once into an index by type, which is shared by the
+ * workers. The workers run in parallel.
+ *
+ * <p>
+ * When the result of the previous validation of the same diagram is provided, only the elements
+ * whose content changed since are validated again. This relies on the workers reporting the
+ * markers of an element based on the element alone. Elements without an ID or with the ID of
+ * another element are always validated.
+ */
+public class ValidationEngine {
+
+  private static final ExecutorService EXECUTOR = Executors.newFixedThreadPool(Math.max(2, Runtime.getRuntime()
+          .availableProcessors()), new ThreadFactory() {
+
+    private int count;
+
+    @Override
+    public synchronized Thread newThread(Runnable runnable) {
+      final Thread thread = new Thread(runnable, "Activiti BPMN validation " + ++count);
+      thread.setDaemon(true);
+      return thread;
+    }
+  });
+
+  /**
+   * Validates the flow elements of the model that changed since the previous validation.
+   *
+   * @param previous
+   *          the result of the previous validation of the diagram, or null to validate all
+   *          elements
+   * @return the markers of all elements, including the markers of the previous validation for the
+   *         elements that weren't validated again
+   */
+  public ValidationResult validate(final BpmnMemoryModel model, final Diagram diagram,
+          final List<ProcessValidationWorkerInfo> workers, final ValidationResult previous, final IProgressMonitor monitor) {
+
+    final List<FlowElement> flowElements = getAllFlowElements(model);
+
+    final Map<String, Integer> idCounts = new HashMap<String, Integer>();
+    for (final FlowElement flowElement : flowElements) {
+      final Integer count = idCounts.get(flowElement.getId());
+      idCounts.put(flowElement.getId(), count == null ? 1 : count + 1);
+    }
+
+    final Map<String, String> fingerprints = new HashMap<String, String>();
+    final List<FlowElement> changedElements = new ArrayList<FlowElement>();
+    final Set<String> unchangedNodeIds = new HashSet<String>();
+    for (final FlowElement flowElement : flowElements) {
+      final String id = flowElement.getId();
+      final String fingerprint = id != null && idCounts.get(id) == 1 ? ElementFingerprint.of(flowElement) : null;
+      if (fingerprint == null) {
+        changedElements.add(flowElement);
+        continue;
+      }
+      fingerprints.put(id, fingerprint);
+      if (previous != null && fingerprint.equals(previous.fingerprints.get(id))) {
+        unchangedNodeIds.add(id);
+      } else {
+        changedElements.add(flowElement);
+      }
+    }
+
+    final ValidationResult result;
+    if (previous == null) {
+      result = new ValidationResult(fingerprints, null);
+    } else {
+      // the markers of all other nodes are replaced, which drops those of removed elements
+      final Set<String> validatedNodeIds = new HashSet<String>(idCounts.keySet());
+      validatedNodeIds.addAll(previous.fingerprints.keySet());
+      validatedNodeIds.addAll(previous.markersByNode.keySet());
+      validatedNodeIds.removeAll(unchangedNodeIds);
+      result = new ValidationResult(fingerprints, validatedNodeIds);
+      for (final String nodeId : unchangedNodeIds) {
+        final List<ProcessValidationWorkerMarker> markers = previous.markersByNode.get(nodeId);
+        if (markers != null) {
+          result.markersByNode.put(nodeId, markers);
+        }
+      }
+    }
+
+    final Map<String, List<Object>> processNodes = buildTypeIndex(changedElements);
+
+    final List<Future<Collection<ProcessValidationWorkerMarker>>> futures = new ArrayList<Future<Collection<ProcessValidationWorkerMarker>>>();
+    for (final ProcessValidationWorkerInfo worker : workers) {
+      futures.add(EXECUTOR.submit(new Callable<Collection<ProcessValidationWorkerMarker>>() {
+
+        @Override
+        public Collection<ProcessValidationWorkerMarker> call() throws Exception {
+          return worker.getProcessValidationWorker().validate(diagram, processNodes);
+        }
+      }));
+    }
+
+    try {
+      for (int i = 0; i < futures.size(); i++) {
+        if (monitor.isCanceled()) {
+          throw new OperationCanceledException();
+        }
+        for (final ProcessValidationWorkerMarker marker : futures.get(i).get()) {
+          result.add(marker);
+        }
+        monitor.worked(workers.get(i).getWork());
+      }
+
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new OperationCanceledException();
+    } catch (ExecutionException e) {
+      throw new IllegalStateException("A validation worker failed", e.getCause());
+    } finally {
+      for (final Future<Collection<ProcessValidationWorkerMarker>> future : futures) {
+        future.cancel(true);
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * @return the flow elements of all processes, including the elements of sub processes
+   */
+  List<FlowElement> getAllFlowElements(final BpmnMemoryModel model) {
+    final List<FlowElement> result = new ArrayList<FlowElement>();
+    for (final Process process : model.getBpmnModel().getProcesses()) {
+      addFlowElements(process.getFlowElements(), result);
+    }
+    return result;
+  }
+
+  private void addFlowElements(final Collection<FlowElement> flowElements, final List<FlowElement> result) {
+    for (final FlowElement flowElement : flowElements) {
+      result.add(flowElement);
+      if (flowElement instanceof FlowElementsContainer) {
+        addFlowElements(((FlowElementsContainer) flowElement).getFlowElements(), result);
+      }
+    }
+  }
+
+  private Map<String, List<Object>> buildTypeIndex(final Collection<FlowElement> flowElements) {
+    final Map<String, List<Object>> result = new HashMap<String, List<Object>>();
+    for (final FlowElement flowElement : flowElements) {
+      final String nodeType = flowElement.getClass().getCanonicalName();
+      List<Object> nodes = result.get(nodeType);
+      if (nodes == null) {
+        nodes = new ArrayList<Object>();
+        result.put(nodeType, nodes);
+      }
+      nodes.add(flowElement);
+    }
+    return result;
+  }
+
+  /**
+   * The outcome of a validation: the markers of all elements and the content of the elements they
+   * were determined for.
+   */
+  public static class ValidationResult {
+
+    // node ID -> fingerprint of the element's content
+    private final Map<String, String> fingerprints;
+    private final Set<String> validatedNodeIds;
+    // node ID -> its markers, in the order the workers reported them
+    private final Map<String, List<ProcessValidationWorkerMarker>> markersByNode = new HashMap<String, List<ProcessValidationWorkerMarker>>();
+
+    private ValidationResult(final Map<String, String> fingerprints, final Set<String> validatedNodeIds) {
+      this.fingerprints = fingerprints;
+      this.validatedNodeIds = validatedNodeIds;
+    }
+
+    private void add(final ProcessValidationWorkerMarker marker) {
+      List<ProcessValidationWorkerMarker> markers = markersByNode.get(marker.getNodeId());
+      if (markers == null) {
+        markers = new ArrayList<ProcessValidationWorkerMarker>();
+        markersByNode.put(marker.getNodeId(), markers);
+      }
+      markers.add(marker);
+    }
+
+    /**
+     * @return the IDs of the nodes that were validated again, whose markers have to be replaced, or
+     *         null if all nodes were validated
+     */
+    public Set<String> getValidatedNodeIds() {
+      return validatedNodeIds != null ? Collections.unmodifiableSet(validatedNodeIds) : null;
+    }
+
+    /**
+     * @return the markers of the nodes that were validated again
+     */
+    public List<ProcessValidationWorkerMarker> getValidatedMarkers() {
+      final List<ProcessValidationWorkerMarker> result = new ArrayList<ProcessValidationWorkerMarker>();
+      for (final Entry<String, List<ProcessValidationWorkerMarker>> entry : markersByNode.entrySet()) {
+        if (validatedNodeIds == null || validatedNodeIds.contains(entry.getKey())) {
+          result.addAll(entry.getValue());
+        }
+      }
+      return result;
+    }
+
+    /**
+     * @return the markers of all nodes
+     */
+    public List<ProcessValidationWorkerMarker> getMarkers() {
+      final List<ProcessValidationWorkerMarker> result = new ArrayList<ProcessValidationWorkerMarker>();
+      for (final List<ProcessValidationWorkerMarker> markers : markersByNode.values()) {
+        result.addAll(markers);
+      }
+      return result;
+    }
+  }
+
+}